@@ -0,0 +1,133 @@
+package com.bqomis.benchmark;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.bqomis.model.Appointment;
+import com.bqomis.repository.AppointmentDailyRollupRepository;
+import com.bqomis.repository.BucketCountView;
+import com.bqomis.repository.StatusCountView;
+import com.bqomis.service.AnalyticsService;
+import com.bqomis.util.LookupUtil;
+
+// The Java-side work of the /api/analytics endpoints. Counts come from the
+// appointment_daily_rollup table, so the repository is stubbed with the grouped rows it would
+// return for the synthetic dataset and only response assembly is measured.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyticsServiceBenchmark {
+
+    @Param({ "10000", "1000000" })
+    public int appointments;
+
+    @Param({ "50", "500" })
+    public int branches;
+
+    private AnalyticsService analyticsService;
+    private final LocalDate startDate = BenchmarkData.FIRST_DAY;
+    private final LocalDate endDate = BenchmarkData.FIRST_DAY.plusDays(BenchmarkData.DAYS - 1);
+
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData(branches, appointments);
+        LookupUtil lookupUtil = data.newLookupUtil();
+
+        Map<Long, Map<String, Long>> statusCounts = new HashMap<>();
+        Map<Integer, Long> hourCounts = new HashMap<>();
+        Map<Integer, Long> dayOfWeekCounts = new HashMap<>();
+        for (Appointment appointment : data.appointments) {
+            statusCounts.computeIfAbsent(appointment.getBranchServiceId(), id -> new HashMap<>())
+                    .merge(appointment.getStatus(), 1L, Long::sum);
+            hourCounts.merge(appointment.getTime().getHour(), 1L, Long::sum);
+            dayOfWeekCounts.merge(appointment.getDate().getDayOfWeek().getValue(), 1L, Long::sum);
+        }
+        // Branch 1 is what appointmentsByBranch queries
+        List<StatusCountView> branchStatusCounts = new ArrayList<>();
+        for (Long branchServiceId : lookupUtil.getBranchServiceIdsByBranchId(1L)) {
+            statusCounts.getOrDefault(branchServiceId, Map.of()).forEach((status, count) -> branchStatusCounts
+                    .add(statusCount(branchServiceId, status, count)));
+        }
+
+        AppointmentDailyRollupRepository repository = mock(AppointmentDailyRollupRepository.class, withSettings().stubOnly());
+        when(repository.countByBranchServiceAndStatus(any(), any(), anyList())).thenReturn(branchStatusCounts);
+        when(repository.countByHour(any(), any())).thenReturn(bucketCounts(hourCounts));
+        when(repository.countByDayOfWeek(any(), any())).thenReturn(bucketCounts(dayOfWeekCounts));
+
+        analyticsService = new AnalyticsService();
+        ReflectionTestUtils.setField(analyticsService, "lookupUtil", lookupUtil);
+        ReflectionTestUtils.setField(analyticsService, "rollupRepository", repository);
+    }
+
+    private static StatusCountView statusCount(Long branchServiceId, String status, Long count) {
+        return new StatusCountView() {
+            public Long getBranchServiceId() {
+                return branchServiceId;
+            }
+
+            public String getStatus() {
+                return status;
+            }
+
+            public Long getCount() {
+                return count;
+            }
+        };
+    }
+
+    private static List<BucketCountView> bucketCounts(Map<Integer, Long> counts) {
+        List<BucketCountView> views = new ArrayList<>();
+        counts.forEach((bucket, count) -> views.add(new BucketCountView() {
+            public Integer getBucket() {
+                return bucket;
+            }
+
+            public Long getCount() {
+                return count;
+            }
+        }));
+        return views;
+    }
+
+    @Benchmark
+    public JSONObject appointmentsByBranch() {
+        return analyticsService.getAppointmentsByBranch(1L, startDate, endDate);
+    }
+
+    @Benchmark
+    public JSONObject peakTimesByHour() {
+        return analyticsService.getPeakTimes(startDate, endDate, "hour");
+    }
+
+    @Benchmark
+    public JSONObject peakTimesByDayOfWeek() {
+        return analyticsService.getPeakTimes(startDate, endDate, "dayOfWeek");
+    }
+}
@@ -0,0 +1,107 @@
+package com.bqomis.benchmark;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.bqomis.model.Appointment;
+import com.bqomis.model.Branch;
+import com.bqomis.model.BranchService;
+import com.bqomis.model.District;
+import com.bqomis.model.Service;
+import com.bqomis.util.LookupUtil;
+
+// Deterministic synthetic reference data and appointments for the benchmarks.
+// Shapes follow V2__first_inserts.sql: 30 districts in 5 provinces, a dozen
+// services, every branch offering most services.
+public class BenchmarkData {
+
+    public static final int DISTRICTS = 30;
+    public static final int SERVICES = 12;
+    public static final int USERS = 20_000;
+    public static final int DAYS = 365;
+    public static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    private static final String[] PROVINCES = { "Kigali", "East", "North", "South", "West" };
+    private static final String[] STATUSES = { "SCHEDULED", "CHECKED_IN", "COMPLETED", "CANCELLED", "NO_SHOW" };
+
+    public final List<District> districts = new ArrayList<>();
+    public final List<Branch> branches = new ArrayList<>();
+    public final List<Service> services = new ArrayList<>();
+    public final List<BranchService> branchServices = new ArrayList<>();
+    public final List<Appointment> appointments = new ArrayList<>();
+
+    public BenchmarkData(int branchCount, int appointmentCount) {
+        Random random = new Random(42);
+
+        for (int i = 1; i <= DISTRICTS; i++) {
+            District district = new District();
+            district.setId((long) i);
+            district.setName(districtName(i));
+            district.setProvince(PROVINCES[i % PROVINCES.length]);
+            districts.add(district);
+        }
+
+        for (int i = 1; i <= SERVICES; i++) {
+            Service service = new Service();
+            service.setId((long) i);
+            service.setName("Service " + i);
+            services.add(service);
+        }
+
+        long branchServiceId = 1;
+        for (int i = 1; i <= branchCount; i++) {
+            Branch branch = new Branch();
+            branch.setId((long) i);
+            branch.setName("Branch " + i);
+            branch.setDistrict(districtName(1 + random.nextInt(DISTRICTS)));
+            branches.add(branch);
+            for (Service service : services) {
+                if (random.nextInt(10) < 8) {
+                    BranchService bs = new BranchService();
+                    bs.setId(branchServiceId++);
+                    bs.setBranchId(branch.getId());
+                    bs.setServiceId(service.getId());
+                    branchServices.add(bs);
+                }
+            }
+        }
+
+        // Reuse date, time and user id instances so the fixture stays small at
+        // millions of rows
+        LocalDate[] dates = new LocalDate[DAYS];
+        for (int d = 0; d < DAYS; d++) {
+            dates[d] = FIRST_DAY.plusDays(d);
+        }
+        LocalTime[] times = new LocalTime[16];
+        for (int t = 0; t < times.length; t++) {
+            times[t] = LocalTime.of(9, 0).plusMinutes(30L * t);
+        }
+        Long[] userIds = new Long[USERS];
+        for (int u = 0; u < USERS; u++) {
+            userIds[u] = (long) u + 1;
+        }
+        for (int i = 0; i < appointmentCount; i++) {
+            Appointment appointment = new Appointment();
+            appointment.setId((long) i + 1);
+            appointment.setUserId(userIds[random.nextInt(USERS)]);
+            appointment.setBranchServiceId(branchServices.get(random.nextInt(branchServices.size())).getId());
+            appointment.setDate(dates[random.nextInt(DAYS)]);
+            appointment.setTime(times[random.nextInt(times.length)]);
+            appointment.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+            appointments.add(appointment);
+        }
+    }
+
+    public LookupUtil newLookupUtil() {
+        LookupUtil lookupUtil = new LookupUtil();
+        lookupUtil.load(districts, branches, services, branchServices);
+        return lookupUtil;
+    }
+
+    public static String districtName(int i) {
+        return "District" + i;
+    }
+}
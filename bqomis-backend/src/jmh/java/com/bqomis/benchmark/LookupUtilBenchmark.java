@@ -0,0 +1,119 @@
+package com.bqomis.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.bqomis.model.Branch;
+import com.bqomis.model.BranchService;
+import com.bqomis.util.LookupUtil;
+
+// Per-call cost of the LookupUtil accessors used on request hot paths
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupUtilBenchmark {
+
+    @Param({ "50", "500" })
+    public int branches;
+
+    private LookupUtil lookupUtil;
+    private StringKeyedIndex stringKeyedIndex;
+    private long[] branchServiceIds;
+    private Long[] boxedBranchServiceIds;
+    private String[] districtNames;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData(branches, 0);
+        lookupUtil = data.newLookupUtil();
+        stringKeyedIndex = new StringKeyedIndex(data.branchServices);
+        branchServiceIds = new long[data.branchServices.size()];
+        boxedBranchServiceIds = new Long[data.branchServices.size()];
+        for (int i = 0; i < branchServiceIds.length; i++) {
+            branchServiceIds[i] = data.branchServices.get(i).getId();
+            boxedBranchServiceIds[i] = data.branchServices.get(i).getId();
+        }
+        districtNames = new String[BenchmarkData.DISTRICTS];
+        for (int i = 0; i < districtNames.length; i++) {
+            // Mixed case, as district names arrive from URL paths
+            districtNames[i] = BenchmarkData.districtName(i + 1).toUpperCase();
+        }
+    }
+
+    private int next(int bound) {
+        cursor = cursor + 1 == Integer.MAX_VALUE ? 0 : cursor + 1;
+        return cursor % bound;
+    }
+
+    @Benchmark
+    public void branchAndServiceByBranchServiceId(Blackhole bh) {
+        long branchServiceId = branchServiceIds[next(branchServiceIds.length)];
+        bh.consume(lookupUtil.getBranchIdByBranchServiceId(branchServiceId));
+        bh.consume(lookupUtil.getServiceIdByBranchServiceId(branchServiceId));
+    }
+
+    @Benchmark
+    public Long[] branchAndServiceByBranchServiceIdStringKeyed() {
+        return stringKeyedIndex.getBranchIdAndServiceIdByBranchServiceId(
+                boxedBranchServiceIds[next(boxedBranchServiceIds.length)]);
+    }
+
+    @Benchmark
+    public long branchServiceIdByBranchAndService() {
+        return lookupUtil.getBranchServiceId(1 + next(branches), 1 + next(BenchmarkData.SERVICES));
+    }
+
+    @Benchmark
+    public Long branchServiceIdByBranchAndServiceStringKeyed() {
+        return stringKeyedIndex.getBranchServiceId((long) 1 + next(branches), (long) 1 + next(BenchmarkData.SERVICES));
+    }
+
+    @Benchmark
+    public List<Branch> branchesByDistrict() {
+        return lookupUtil.findBranchesByDistrictName(districtNames[next(districtNames.length)]);
+    }
+
+    @Benchmark
+    public List<Long> branchServiceIdsByDistrict() {
+        return lookupUtil.getBranchServiceIdsByDistrict(districtNames[next(districtNames.length)]);
+    }
+
+    @Benchmark
+    public List<Long> branchServiceIdsByDistrictAndService() {
+        return lookupUtil.getBranchServiceIdsByDistrictAndService(districtNames[next(districtNames.length)],
+                (long) 1 + next(BenchmarkData.SERVICES));
+    }
+
+    @Benchmark
+    public List<Long> branchServiceIdsByServiceId() {
+        return lookupUtil.getBranchServiceIdsByServiceId((long) 1 + next(BenchmarkData.SERVICES));
+    }
+
+    @Benchmark
+    public void updateBranchService(Blackhole bh) {
+        // Cost of a copy-on-write snapshot rebuild, paid by every reference data write
+        BranchService bs = new BranchService();
+        bs.setId(branchServiceIds[next(branchServiceIds.length)]);
+        bs.setBranchId(lookupUtil.getBranchIdByBranchServiceId(bs.getId()));
+        bs.setServiceId(lookupUtil.getServiceIdByBranchServiceId(bs.getId()));
+        lookupUtil.updateBranchService(bs);
+        bh.consume(lookupUtil.getVersion());
+    }
+}
@@ -0,0 +1,96 @@
+package com.bqomis.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.bqomis.dto.AppointmentDTO;
+import com.bqomis.model.Appointment;
+import com.bqomis.repository.AppointmentRow;
+import com.bqomis.util.LookupUtil;
+import com.bqomis.util.MapperUtil;
+
+// Appointment -> AppointmentDTO mapping as done by every list endpoint
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class MapperUtilBenchmark {
+
+    @Param({ "10000", "100000", "1000000", "5000000" })
+    public int appointments;
+
+    @Param({ "50", "500" })
+    public int branches;
+
+    private List<Appointment> appointmentList;
+    private List<AppointmentRow> rowList;
+    private LookupUtil lookupUtil;
+    private MapperUtil mapperUtil;
+    private StringKeyedIndex stringKeyedIndex;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData(branches, appointments);
+        appointmentList = data.appointments;
+        rowList = new ArrayList<>(appointmentList.size());
+        for (Appointment appointment : appointmentList) {
+            rowList.add(new AppointmentRow(appointment.getId(), appointment.getUserId(),
+                    appointment.getBranchServiceId(), appointment.getDate(), appointment.getTime(),
+                    appointment.getStatus()));
+        }
+        lookupUtil = data.newLookupUtil();
+        mapperUtil = new MapperUtil();
+        ReflectionTestUtils.setField(mapperUtil, "lookupUtil", lookupUtil);
+        stringKeyedIndex = new StringKeyedIndex(data.branchServices);
+    }
+
+    @Benchmark
+    public List<AppointmentDTO> toAppointmentDTOList() {
+        return mapperUtil.toAppointmentDTOList(appointmentList);
+    }
+
+    // Projected rows, as the paged and per-day endpoints now load them
+    @Benchmark
+    public List<AppointmentDTO> toAppointmentDTOs() {
+        return mapperUtil.toAppointmentDTOs(rowList);
+    }
+
+    // Baseline: the mapping as it was with the string-keyed index
+    @Benchmark
+    public List<AppointmentDTO> toAppointmentDTOListStringKeyed() {
+        List<AppointmentDTO> dtos = new ArrayList<>(appointmentList.size());
+        for (Appointment appointment : appointmentList) {
+            AppointmentDTO appointmentDTO = new AppointmentDTO();
+            appointmentDTO.setId(appointment.getId());
+            appointmentDTO.setUserId(appointment.getUserId());
+            appointmentDTO.setBranchServiceId(appointment.getBranchServiceId());
+            Long[] branchIdAndServiceId = stringKeyedIndex
+                    .getBranchIdAndServiceIdByBranchServiceId(appointment.getBranchServiceId());
+            appointmentDTO.setBranchId(branchIdAndServiceId[0]);
+            appointmentDTO.setBranchName(lookupUtil.getBranchNameById(branchIdAndServiceId[0]));
+            appointmentDTO.setServiceId(branchIdAndServiceId[1]);
+            appointmentDTO.setServiceName(lookupUtil.getServiceNameById(branchIdAndServiceId[1]));
+            appointmentDTO.setDate(appointment.getDate().toString());
+            appointmentDTO.setTime(appointment.getTime().toString());
+            appointmentDTO.setStatus(appointment.getStatus());
+            dtos.add(appointmentDTO);
+        }
+        return dtos;
+    }
+}
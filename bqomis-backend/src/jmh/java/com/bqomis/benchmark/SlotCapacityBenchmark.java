@@ -0,0 +1,70 @@
+package com.bqomis.benchmark;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.bqomis.dto.AvailabilityDTO;
+import com.bqomis.repository.AppointmentRepository;
+import com.bqomis.service.SlotCapacityService;
+import com.bqomis.util.AppSettingsUtil;
+import com.bqomis.util.EffectiveBranchConfig;
+
+// A 30-day /availability answer once the days are in memory
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlotCapacityBenchmark {
+
+    private SlotCapacityService slotCapacityService;
+    private final LocalDate from = BenchmarkData.FIRST_DAY;
+    private final LocalDate to = BenchmarkData.FIRST_DAY.plusDays(29);
+
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData(50, 0);
+
+        AppointmentRepository repository = mock(AppointmentRepository.class, withSettings().stubOnly());
+        when(repository.countActiveByDateAndTime(anyLong(), any(), any())).thenReturn(List.of());
+        AppSettingsUtil appSettingsUtil = mock(AppSettingsUtil.class, withSettings().stubOnly());
+        when(appSettingsUtil.getEffectiveConfig(anyLong()))
+                .thenReturn(new EffectiveBranchConfig(30, null, null, 3, null, null));
+
+        slotCapacityService = new SlotCapacityService();
+        ReflectionTestUtils.setField(slotCapacityService, "appointmentRepository", repository);
+        ReflectionTestUtils.setField(slotCapacityService, "appSettingsUtil", appSettingsUtil);
+        ReflectionTestUtils.setField(slotCapacityService, "lookupUtil", data.newLookupUtil());
+        ReflectionTestUtils.setField(slotCapacityService, "occupancyTtlSeconds", 3600L);
+        ReflectionTestUtils.setField(slotCapacityService, "openingTime", "09:00");
+        ReflectionTestUtils.setField(slotCapacityService, "closingTime", "17:00");
+        ReflectionTestUtils.setField(slotCapacityService, "availabilityMaxDays", 31);
+        slotCapacityService.init();
+        slotCapacityService.getAvailability(1L, from, to);
+    }
+
+    @Benchmark
+    public AvailabilityDTO availability30Days() {
+        return slotCapacityService.getAvailability(1L, from, to);
+    }
+}
@@ -0,0 +1,38 @@
+package com.bqomis.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bqomis.model.BranchService;
+
+// The "branchId-serviceId" string-keyed lookup LookupUtil used before the
+// primitive indexes, kept as a baseline for comparison.
+public class StringKeyedIndex {
+
+    private final Map<String, Long> bsIdByBranchIdAndServiceId = new HashMap<>();
+    private final Map<Long, String> branchIdAndServiceIdByBsId = new HashMap<>();
+
+    public StringKeyedIndex(List<BranchService> branchServices) {
+        for (BranchService bs : branchServices) {
+            String key = bs.getBranchId() + "-" + bs.getServiceId();
+            bsIdByBranchIdAndServiceId.put(key, bs.getId());
+            branchIdAndServiceIdByBsId.put(bs.getId(), key);
+        }
+    }
+
+    public Long[] getBranchIdAndServiceIdByBranchServiceId(Long branchServiceId) {
+        Long[] ids = new Long[2];
+        String key = branchIdAndServiceIdByBsId.get(branchServiceId);
+        if (key != null) {
+            String[] parts = key.split("-");
+            ids[0] = Long.parseLong(parts[0]); // Branch ID
+            ids[1] = Long.parseLong(parts[1]); // Service ID
+        }
+        return ids;
+    }
+
+    public Long getBranchServiceId(Long branchId, Long serviceId) {
+        return bsIdByBranchIdAndServiceId.get(branchId + "-" + serviceId);
+    }
+}
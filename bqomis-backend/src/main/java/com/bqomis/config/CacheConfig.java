@@ -0,0 +1,10 @@
+package com.bqomis.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+// Caffeine caches are declared in application.properties (spring.cache.*)
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
@@ -0,0 +1,96 @@
+package com.bqomis.config;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+
+// Caps how many threads use the database at once (see application-virtual.properties).
+// With virtual threads every request gets its own thread, so without a limit a burst
+// would park thousands of them inside HikariCP waiting for a connection; here they
+// queue on a fair semaphore sized below the pool instead.
+//
+// A permit is taken at the outermost repository call or @Transactional service
+// method and held until it returns. Calls made while a transaction is already bound
+// to the thread (including TransactionTemplate blocks) already hold a connection
+// and pass straight through.
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "bqomis.db.concurrency-limit.enabled", havingValue = "true")
+public class DatabaseConcurrencyLimiter implements MeterBinder {
+
+    private static final ThreadLocal<Boolean> HOLDING_PERMIT = new ThreadLocal<>();
+
+    @Value("${bqomis.db.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int maxConcurrency;
+
+    @Value("${bqomis.db.acquire-timeout-ms:${spring.datasource.hikari.connection-timeout:30000}}")
+    private long acquireTimeoutMs;
+
+    private Semaphore permits;
+    private Timer waitTimer;
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrency, true);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        waitTimer = Timer.builder("bqomis.db.permits.wait")
+                .description("Time spent waiting for a database permit")
+                .publishPercentileHistogram()
+                .register(registry);
+        rejected = Counter.builder("bqomis.db.permits.rejected")
+                .description("Calls refused after waiting acquire-timeout-ms for a permit")
+                .register(registry);
+        Gauge.builder("bqomis.db.permits.available", permits, Semaphore::availablePermits).register(registry);
+        Gauge.builder("bqomis.db.permits.waiting", permits, Semaphore::getQueueLength).register(registry);
+    }
+
+    @Around("target(org.springframework.data.repository.Repository)"
+            + " || @within(org.springframework.stereotype.Repository)"
+            + " || @within(org.springframework.transaction.annotation.Transactional)"
+            + " || @annotation(org.springframework.transaction.annotation.Transactional)")
+    public Object limit(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (HOLDING_PERMIT.get() != null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+        long start = System.nanoTime();
+        if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+            if (rejected != null) {
+                rejected.increment();
+            }
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Database busy, please retry");
+        }
+        if (waitTimer != null) {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        HOLDING_PERMIT.set(Boolean.TRUE);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            HOLDING_PERMIT.remove();
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.bqomis.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Repository call timers come from Spring Boot (spring.data.repository.invocations)
+// and HikariCP pool metrics are bound automatically; this adds @Timed support.
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
@@ -0,0 +1,183 @@
+package com.bqomis.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// Connections for read-only transactions when a replica is configured (see
+// ReplicaDataSourceConfig). Replica connections are handed out to @ReplicaReadOnly
+// transactions while the replica is reachable and at most max-lag-ms behind the
+// primary; every other read-only transaction, and all of them while the replica
+// is unusable, gets a read-only primary connection, so reads slow down rather
+// than fail or go stale. The replica pool belongs to this class rather than
+// being a bean, so a replica outage does not fail the database health check.
+//
+// Lag is measured against the primary's WAL position rather than with
+// pg_last_xact_replay_timestamp(), which keeps ageing while the primary is idle:
+// each check records the primary's flushed LSN with the time it was read, and
+// the replica is as far behind as the oldest recorded position it has not yet
+// replayed.
+public class ReplicaDataSource extends AbstractDataSource implements MeterBinder, AutoCloseable {
+
+    public static final String REPLICA_LABEL = "replica";
+
+    // Set by ReplicaRoutingTransactionManager while a @ReplicaReadOnly transaction is open
+    private static final ThreadLocal<Boolean> REPLICA_TRANSACTION = ThreadLocal.withInitial(() -> false);
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaDataSource.class);
+
+    // Dropping the oldest samples only overstates the lag
+    private static final int MAX_SAMPLES = 1000;
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final JdbcTemplate primaryJdbc;
+    private final JdbcTemplate replicaJdbc;
+    private final long maxLagMs;
+
+    // {nanoTime, lsn} of primary positions the replica had not replayed yet
+    private final ArrayDeque<long[]> pending = new ArrayDeque<>();
+    // When the newest position the replica has replayed was read on the primary
+    private long caughtUpAt = System.nanoTime();
+
+    // Unknown, and so unusable, until the first check
+    private volatile long lagMs = Long.MAX_VALUE;
+    private volatile boolean usable;
+
+    private Counter replicaConnections;
+    private Counter primaryConnections;
+
+    public ReplicaDataSource(DataSource primary, DataSource replica, long maxLagMs) {
+        this.primary = primary;
+        this.replica = replica;
+        this.primaryJdbc = new JdbcTemplate(primary);
+        this.replicaJdbc = new JdbcTemplate(replica);
+        this.maxLagMs = maxLagMs;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        replicaConnections = Counter.builder("bqomis.datasource.read.connections").tag("target", "replica")
+                .description("Connections handed out for read-only transactions").register(registry);
+        primaryConnections = Counter.builder("bqomis.datasource.read.connections").tag("target", "primary")
+                .description("Connections handed out for read-only transactions").register(registry);
+        Gauge.builder("bqomis.datasource.replica.lag", this, ds -> ds.lagMs == Long.MAX_VALUE ? Double.NaN : ds.lagMs)
+                .description("Replica lag in milliseconds at the last check; NaN when unreachable")
+                .register(registry);
+        Gauge.builder("bqomis.datasource.replica.usable", this, ds -> ds.usable ? 1 : 0).register(registry);
+    }
+
+    static void setReplicaTransaction(boolean replica) {
+        if (replica) {
+            REPLICA_TRANSACTION.set(true);
+        } else {
+            REPLICA_TRANSACTION.remove();
+        }
+    }
+
+    static boolean isReplicaTransaction() {
+        return REPLICA_TRANSACTION.get();
+    }
+
+    public boolean isUsable() {
+        return usable;
+    }
+
+    @Scheduled(fixedDelayString = "${bqomis.datasource.replica.check-interval-ms:1000}")
+    public synchronized void checkLag() {
+        Long primaryLsn;
+        try {
+            primaryLsn = primaryJdbc.queryForObject(
+                    "SELECT pg_wal_lsn_diff(pg_current_wal_flush_lsn(), '0/0')::BIGINT", Long.class);
+        } catch (DataAccessException e) {
+            // Nothing to measure against; keep the last verdict
+            log.debug("Could not read the primary WAL position", e);
+            return;
+        }
+        long now = System.nanoTime();
+        pending.addLast(new long[] { now, primaryLsn });
+        if (pending.size() > MAX_SAMPLES) {
+            pending.removeFirst();
+        }
+        try {
+            // A server that is not in recovery has no replay position and counts as current
+            Long replayedLsn = replicaJdbc.queryForObject(
+                    "SELECT pg_wal_lsn_diff(COALESCE(pg_last_wal_replay_lsn(), pg_current_wal_lsn()), '0/0')::BIGINT",
+                    Long.class);
+            while (!pending.isEmpty() && pending.peekFirst()[1] <= replayedLsn) {
+                caughtUpAt = pending.removeFirst()[0];
+            }
+            lagMs = TimeUnit.NANOSECONDS.toMillis(now - caughtUpAt);
+        } catch (DataAccessException e) {
+            log.debug("Could not read the replica WAL position", e);
+            lagMs = Long.MAX_VALUE;
+        }
+
+        boolean nowUsable = lagMs <= maxLagMs;
+        if (nowUsable != usable) {
+            if (nowUsable) {
+                log.info("Replica is {} ms behind, sending read-only transactions to it", lagMs);
+            } else {
+                log.warn("Replica is unreachable or more than {} ms behind, reading from the primary", maxLagMs);
+            }
+        }
+        usable = nowUsable;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (usable && isReplicaTransaction()) {
+            try {
+                Connection connection = replica.getConnection();
+                count(replicaConnections);
+                return connection;
+            } catch (SQLException e) {
+                // Until the next check says otherwise
+                usable = false;
+                log.warn("Replica connection failed, reading from the primary", e);
+            }
+        }
+        return readOnly(primary.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return readOnly(primary.getConnection(username, password));
+    }
+
+    // The replica pool is read-only; keep the same guarantee on the primary.
+    // HikariCP resets the flag when the connection is returned.
+    private Connection readOnly(Connection connection) throws SQLException {
+        connection.setReadOnly(true);
+        count(primaryConnections);
+        return connection;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (replica instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private static void count(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
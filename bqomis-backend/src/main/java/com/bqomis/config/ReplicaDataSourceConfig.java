@@ -0,0 +1,86 @@
+package com.bqomis.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import jakarta.persistence.EntityManagerFactory;
+
+// Sends @ReplicaReadOnly work to a streaming replica when
+// bqomis.datasource.replica.url is set; without it Spring Boot's single pool is
+// used as before. The application DataSource becomes a LazyConnectionDataSourceProxy
+// over the primary pool: it only fetches a real connection at the first statement,
+// by which point the transaction has marked it read-only, and read-only connections
+// come from ReplicaDataSource. Only @ReplicaReadOnly transactions get the replica
+// (see ReplicaRoutingTransactionManager); everything else, including Flyway, the
+// read-only transactions of Spring Data repository methods and read-write
+// transactions, stays on the primary, so a read-modify-write outside a service
+// transaction never reads a stale row.
+@Configuration
+@ConditionalOnProperty(name = "bqomis.datasource.replica.url")
+public class ReplicaDataSourceConfig {
+
+    // The pool Spring Boot would have created from spring.datasource.*
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    // The replica pool is not a bean of its own: the database health check
+    // would report the application down whenever the replica is
+    @Bean
+    public ReplicaDataSource replicaDataSource(@Qualifier("primaryDataSource") DataSource primary,
+            DataSourceProperties properties, Environment environment,
+            @Value("${bqomis.datasource.replica.url}") String url,
+            @Value("${bqomis.datasource.replica.username:${spring.datasource.username:}}") String username,
+            @Value("${bqomis.datasource.replica.password:${spring.datasource.password:}}") String password,
+            @Value("${bqomis.datasource.replica.max-lag-ms:5000}") long maxLagMs) {
+        HikariDataSource replica = DataSourceBuilder.create().type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        Binder.get(environment).bind("bqomis.datasource.replica.hikari", Bindable.ofInstance(replica));
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+        return new ReplicaDataSource(primary, replica, maxLagMs);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+            ReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+
+    // Replaces Spring Boot's JpaTransactionManager, with the same customizers
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+            ObjectProvider<TransactionManagerCustomizers> customizers) {
+        ReplicaRoutingTransactionManager transactionManager = new ReplicaRoutingTransactionManager(
+                entityManagerFactory);
+        customizers.ifAvailable(customizer -> customizer.customize(transactionManager));
+        return transactionManager;
+    }
+}
@@ -0,0 +1,20 @@
+package com.bqomis.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.transaction.annotation.Transactional;
+
+// A read-only transaction that may be served by the read replica (see
+// ReplicaDataSourceConfig). Plain @Transactional(readOnly = true), including the
+// one every Spring Data repository method starts on its own, stays on the
+// primary: only work that tolerates max-lag-ms of staleness opts in here.
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Transactional(readOnly = true, label = ReplicaDataSource.REPLICA_LABEL)
+public @interface ReplicaReadOnly {
+}
@@ -0,0 +1,53 @@
+package com.bqomis.config;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+
+import jakarta.persistence.EntityManagerFactory;
+
+// Marks the thread while a @ReplicaReadOnly transaction is open, so
+// ReplicaDataSource hands it a replica connection. The mark follows the
+// transaction through suspension by an inner REQUIRES_NEW.
+public class ReplicaRoutingTransactionManager extends JpaTransactionManager {
+
+    public ReplicaRoutingTransactionManager(EntityManagerFactory entityManagerFactory) {
+        super(entityManagerFactory);
+    }
+
+    private record Suspended(Object resources, boolean replica) {
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        ReplicaDataSource.setReplicaTransaction(definition.isReadOnly()
+                && definition instanceof TransactionAttribute attribute
+                && attribute.getLabels().contains(ReplicaDataSource.REPLICA_LABEL));
+        try {
+            super.doBegin(transaction, definition);
+        } catch (RuntimeException e) {
+            ReplicaDataSource.setReplicaTransaction(false);
+            throw e;
+        }
+    }
+
+    @Override
+    protected Object doSuspend(Object transaction) {
+        Suspended suspended = new Suspended(super.doSuspend(transaction), ReplicaDataSource.isReplicaTransaction());
+        ReplicaDataSource.setReplicaTransaction(false);
+        return suspended;
+    }
+
+    @Override
+    protected void doResume(Object transaction, Object suspendedResources) {
+        Suspended suspended = (Suspended) suspendedResources;
+        super.doResume(transaction, suspended.resources());
+        ReplicaDataSource.setReplicaTransaction(suspended.replica());
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        ReplicaDataSource.setReplicaTransaction(false);
+        super.doCleanupAfterCompletion(transaction);
+    }
+}
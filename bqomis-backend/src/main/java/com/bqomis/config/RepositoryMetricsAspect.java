@@ -0,0 +1,58 @@
+package com.bqomis.config;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Records how many rows each AppointmentRepository method returns, so the
+// metrics show which endpoints load how much data. Call timings are recorded
+// by Spring Boot as spring.data.repository.invocations.
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final ConcurrentHashMap<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    @AfterReturning(pointcut = "target(com.bqomis.repository.AppointmentRepository)", returning = "result")
+    public void recordRows(JoinPoint joinPoint, Object result) {
+        long rows = rowCount(result);
+        if (rows < 0) {
+            return;
+        }
+        String method = joinPoint.getSignature().getName();
+        summaries.computeIfAbsent(method, name -> DistributionSummary.builder("bqomis.repository.rows")
+                .description("Rows returned per repository call")
+                .tag("repository", "AppointmentRepository")
+                .tag("method", name)
+                .publishPercentileHistogram()
+                .register(registry))
+                .record(rows);
+    }
+
+    // -1 for results that are not rows (counts, saves, void)
+    private static long rowCount(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Slice<?> slice) {
+            return slice.getNumberOfElements();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        return -1;
+    }
+}
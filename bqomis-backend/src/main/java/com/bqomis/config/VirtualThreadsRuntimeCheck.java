@@ -0,0 +1,28 @@
+package com.bqomis.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+// spring.threads.virtual.enabled (the virtual profile) needs a Java 21+ runtime.
+// On older runtimes Spring Boot silently keeps platform threads, leaving the
+// profile with only DatabaseConcurrencyLimiter's semaphore, so refuse to start.
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadsRuntimeCheck {
+
+    static final int MIN_JAVA_VERSION = 21;
+
+    @PostConstruct
+    public void check() {
+        check(Runtime.version().feature());
+    }
+
+    static void check(int javaVersion) {
+        if (javaVersion < MIN_JAVA_VERSION) {
+            throw new IllegalStateException("spring.threads.virtual.enabled needs Java " + MIN_JAVA_VERSION
+                    + " or later; this runtime is Java " + javaVersion);
+        }
+    }
+}
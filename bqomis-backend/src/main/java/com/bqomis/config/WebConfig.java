@@ -6,6 +6,8 @@ import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+import com.bqomis.util.Paging;
+
 @Configuration
 public class WebConfig {
 
@@ -16,7 +18,9 @@ public class WebConfig {
             public void addCorsMappings(CorsRegistry registry) {
                 registry.addMapping("/api/**")
                         .allowedOrigins("*") // http://localhost:3000
-                        .allowedMethods("GET", "POST", "PUT", "DELETE", "PATCH");
+                        .allowedMethods("GET", "POST", "PUT", "DELETE", "PATCH")
+                        // Lets browser clients read the next-page cursor of list endpoints
+                        .exposedHeaders(Paging.NEXT_AFTER_ID_HEADER);
             }
         };
     }
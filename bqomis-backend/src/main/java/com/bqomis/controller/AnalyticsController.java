@@ -3,6 +3,7 @@ package com.bqomis.controller;
 import com.bqomis.model.Appointment;
 import com.bqomis.service.AppointmentService;
 import com.bqomis.service.AnalyticsService;
+import com.bqomis.service.AppointmentRollupService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -21,6 +22,9 @@ public class AnalyticsController {
     @Autowired
     private AnalyticsService analyticsService;
 
+    @Autowired
+    private AppointmentRollupService appointmentRollupService;
+
     // GET
     // /api/analytics/appointments-by-branch?branchId=...&period=YYYY-MM-DD_to_YYYY-MM-DD
     @GetMapping("/appointments-by-branch")
@@ -74,4 +78,16 @@ public class AnalyticsController {
         return ResponseEntity.ok(
                 analyticsService.getPeakTimes(district, startDate, endDate, groupBy).toMap());
     }
+
+    // POST
+    // /api/analytics/rollup/rebuild?period=YYYY-MM-DD_to_YYYY-MM-DD
+    // Recomputes the daily rollup for the period from the appointments table
+    @PostMapping("/rollup/rebuild")
+    public ResponseEntity<?> rebuildRollup(@RequestParam String period) {
+        String[] dates = period.split("_to_");
+        LocalDate startDate = LocalDate.parse(dates[0]);
+        LocalDate endDate = LocalDate.parse(dates[1]);
+        int rows = appointmentRollupService.rebuild(startDate, endDate);
+        return ResponseEntity.ok(Map.of("rollupRows", rows));
+    }
 }
@@ -2,14 +2,20 @@ package com.bqomis.controller;
 
 import com.bqomis.dto.AppointmentDTO;
 import com.bqomis.dto.BatchAppointmentResponseDTO;
-import com.bqomis.model.Appointment;
+import com.bqomis.service.AppointmentExportService;
 import com.bqomis.service.AppointmentService;
+import com.bqomis.service.AppointmentStreamService;
+import com.bqomis.util.Paging;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -22,10 +28,56 @@ public class AppointmentController {
 
     @Autowired
     private AppointmentService appointmentService;
+    @Autowired
+    private AppointmentStreamService appointmentStreamService;
+    @Autowired
+    private AppointmentExportService appointmentExportService;
 
+    // GET /api/appointments?page=&size=&afterId=
+    // At most Paging.MAX_SIZE rows, ordered by id; X-Next-After-Id is set while more remain
     @GetMapping
-    public ResponseEntity<List<AppointmentDTO>> getAllAppointments() {
-        return ResponseEntity.ok(appointmentService.findAll());
+    public ResponseEntity<List<AppointmentDTO>> getAllAppointments(@RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "" + Paging.DEFAULT_SIZE) int size,
+            @RequestParam(required = false) Long afterId) {
+        return Paging.toResponse(appointmentService.findAll(page, size, afterId), AppointmentDTO::getId);
+    }
+
+    // GET /api/appointments/stream?branchId=... or ?district=...
+    // Server-Sent Events: CREATED, UPDATED, DELETED and RESYNC (reload your view)
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAppointmentChanges(@RequestParam(required = false) Long branchId,
+            @RequestParam(required = false) String district) {
+        return appointmentStreamService.subscribe(branchId, district);
+    }
+
+    // GET /api/appointments/export?format=csv|ndjson&dateFrom=&dateTo=&branchId=
+    // Streamed as it is read, gzip-compressed when the client accepts it
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAppointments(
+            @RequestParam(defaultValue = AppointmentExportService.CSV) String format,
+            @RequestParam(required = false) String dateFrom,
+            @RequestParam(required = false) String dateTo,
+            @RequestParam(required = false) Long branchId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean csv = AppointmentExportService.CSV.equalsIgnoreCase(format);
+        if (!csv && !AppointmentExportService.NDJSON.equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        LocalDate from = dateFrom != null ? LocalDate.parse(dateFrom) : null;
+        LocalDate to = dateTo != null ? LocalDate.parse(dateTo) : null;
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        StreamingResponseBody body = out -> appointmentExportService.export(
+                csv ? AppointmentExportService.CSV : AppointmentExportService.NDJSON, from, to, branchId, gzip, out);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv") : new MediaType("application", "x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"appointments." + (csv ? "csv" : "ndjson") + "\"");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 
     @GetMapping("/{id}")
@@ -54,10 +106,10 @@ public class AppointmentController {
     }
 
     @PutMapping("/{id}/status")
-    public ResponseEntity<Appointment> updateAppointmentStatus(@PathVariable Long id,
+    public ResponseEntity<AppointmentDTO> updateAppointmentStatus(@PathVariable Long id,
             @RequestBody Map<String, String> payload) {
         String status = payload.get("status");
-        Appointment updatedAppointment = appointmentService.updateStatus(id, status);
+        AppointmentDTO updatedAppointment = appointmentService.updateStatus(id, status);
         if (updatedAppointment != null) {
             return ResponseEntity.ok(updatedAppointment);
         } else {
@@ -68,76 +120,88 @@ public class AppointmentController {
     // MY OWN METHODS THAT DEALS WITH SPECIFIC APPOINTMENTS ACTIONS
 
     @GetMapping("/date/{date}")
-    public ResponseEntity<List<Appointment>> getAppointmentsByDate(@PathVariable String date) {
+    public ResponseEntity<List<AppointmentDTO>> getAppointmentsByDate(@PathVariable String date,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "" + Paging.DEFAULT_SIZE) int size,
+            @RequestParam(required = false) Long afterId) {
         // Assuming date is in the format "yyyy-MM-dd"
         LocalDate parsedDate = LocalDate.parse(date); // Uncomment if you want to parse the date
-        List<Appointment> appointments = appointmentService.findAppointmentsByDate(parsedDate);
-        return ResponseEntity.ok(appointments);
+        return Paging.toResponse(appointmentService.findAppointmentsByDate(parsedDate, page, size, afterId),
+                AppointmentDTO::getId);
     }
 
     @GetMapping("/today/district/{districtName}")
-    public ResponseEntity<List<Appointment>> getTodayAppointmentsByDistrict(@PathVariable String districtName) {
-        List<Appointment> appointments = appointmentService.findTodayAppointmentsByDistrict(districtName);
+    public ResponseEntity<List<AppointmentDTO>> getTodayAppointmentsByDistrict(@PathVariable String districtName) {
+        List<AppointmentDTO> appointments = appointmentService.findTodayAppointmentsByDistrict(districtName);
         return ResponseEntity.ok(appointments);
     }
 
     @GetMapping("/today/branch/{branchId}")
-    public ResponseEntity<List<Appointment>> getTodayAppointmentsByBranch(@PathVariable Long branchId) {
-        List<Appointment> appointments = appointmentService.findTodayAppointmentsByBranch(branchId);
+    public ResponseEntity<List<AppointmentDTO>> getTodayAppointmentsByBranch(@PathVariable Long branchId) {
+        List<AppointmentDTO> appointments = appointmentService.findTodayAppointmentsByBranch(branchId);
         return ResponseEntity.ok(appointments);
     }
 
     @GetMapping("/today/district/{districtName}/service/{serviceId}")
-    public ResponseEntity<List<Appointment>> getTodayAppointmentsByService(@PathVariable String districtName,
+    public ResponseEntity<List<AppointmentDTO>> getTodayAppointmentsByService(@PathVariable String districtName,
             @PathVariable Long serviceId) {
-        List<Appointment> appointments = appointmentService.findTodayAppointmentsByDistrictAndService(districtName,
+        List<AppointmentDTO> appointments = appointmentService.findTodayAppointmentsByDistrictAndService(districtName,
                 serviceId);
         return ResponseEntity.ok(appointments);
     }
 
     @GetMapping("/branch/{branchId}/")
-    public ResponseEntity<List<Appointment>> getAppointmentsByBranchAndDate(@PathVariable Long branchId) {
-        List<Appointment> appointments = appointmentService.findTodayAppointmentsByBranch(branchId);
+    public ResponseEntity<List<AppointmentDTO>> getAppointmentsByBranchAndDate(@PathVariable Long branchId) {
+        List<AppointmentDTO> appointments = appointmentService.findTodayAppointmentsByBranch(branchId);
         return ResponseEntity.ok(appointments);
     }
 
     @GetMapping("/date/branchServiceId/")
-    public ResponseEntity<List<Appointment>> getAppointmentsByDateAndBranchServiceId(@RequestParam String date,
+    public ResponseEntity<List<AppointmentDTO>> getAppointmentsByDateAndBranchServiceId(@RequestParam String date,
             @RequestParam Long branchServiceId) {
         LocalDate parsedDate = LocalDate.parse(date);
-        List<Appointment> appointments = appointmentService.findAppointmentsByDateAndBranchServiceId(parsedDate,
+        List<AppointmentDTO> appointments = appointmentService.findAppointmentsByDateAndBranchServiceId(parsedDate,
                 branchServiceId);
         return ResponseEntity.ok(appointments);
     }
 
     @GetMapping("/date/branchId/")
-    public ResponseEntity<List<Appointment>> getAppointmentsByDateAndBranchId(@RequestParam String date,
+    public ResponseEntity<List<AppointmentDTO>> getAppointmentsByDateAndBranchId(@RequestParam String date,
             @RequestParam Long branchId) {
         LocalDate parsedDate = LocalDate.parse(date);
-        List<Appointment> appointments = appointmentService.findAppointmentsByDateAndBranchId(parsedDate,
+        List<AppointmentDTO> appointments = appointmentService.findAppointmentsByDateAndBranchId(parsedDate,
                 branchId);
         return ResponseEntity.ok(appointments);
     }
 
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<AppointmentDTO>> getAppointmentsByUserId(@PathVariable Long userId) {
-        List<AppointmentDTO> appointmentDTOs = appointmentService.findAppointmentsByUserId(userId);
-        return ResponseEntity.ok(appointmentDTOs);
+    public ResponseEntity<List<AppointmentDTO>> getAppointmentsByUserId(@PathVariable Long userId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "" + Paging.DEFAULT_SIZE) int size,
+            @RequestParam(required = false) Long afterId) {
+        return Paging.toResponse(appointmentService.findAppointmentsByUserId(userId, page, size, afterId),
+                AppointmentDTO::getId);
     }
 
     @GetMapping("/filtered")
-    public ResponseEntity<Page<AppointmentDTO>> getFilteredAppointments(
+    public ResponseEntity<Slice<AppointmentDTO>> getFilteredAppointments(
             @RequestParam(required = false) String dateFrom,
             @RequestParam(required = false) String dateTo,
             @RequestParam(required = false) Long branchId,
             @RequestParam(required = false) Long serviceId,
             @RequestParam(required = false) String status,
             @RequestParam(required = false) String districtName,
+            // Keyset cursor: date, time and id of the last row of the previous page
+            @RequestParam(required = false) String afterDate,
+            @RequestParam(required = false) String afterTime,
+            @RequestParam(required = false) Long afterId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size) {
         Pageable pageable = PageRequest.of(page, size);
-        Page<AppointmentDTO> appointments = appointmentService.findFilteredAppointments(
-                dateFrom, dateTo, branchId, serviceId, status, districtName, pageable);
+        // Totals only without a cursor: a keyset request gets a Slice (content, last)
+        Slice<AppointmentDTO> appointments = appointmentService.findFilteredAppointments(
+                dateFrom, dateTo, branchId, serviceId, status, districtName, afterDate, afterTime, afterId,
+                pageable);
         return ResponseEntity.ok(appointments);
     }
 
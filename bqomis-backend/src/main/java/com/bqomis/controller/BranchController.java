@@ -1,8 +1,10 @@
 package com.bqomis.controller;
 
 import com.bqomis.dto.BranchDTO;
+import com.bqomis.dto.BranchLoadDTO;
 import com.bqomis.model.Branch;
 import com.bqomis.model.BranchConfigurationOverrides;
+import com.bqomis.service.BranchLoadService;
 import com.bqomis.service.BranchService;
 import com.bqomis.util.AppSettingsUtil;
 
@@ -21,6 +23,8 @@ public class BranchController {
     private BranchService branchService;
     @Autowired
     private AppSettingsUtil appSettingsUtil;
+    @Autowired
+    private BranchLoadService branchLoadService;
 
     @GetMapping
     public ResponseEntity<List<BranchDTO>> getAllBranches() {
@@ -34,6 +38,21 @@ public class BranchController {
         return ResponseEntity.ok(branchDTOs);
     }
 
+    // GET /api/branches/load?district=... (all branches when district is omitted)
+    @GetMapping("/load")
+    public ResponseEntity<List<BranchLoadDTO>> getBranchLoads(@RequestParam(required = false) String district) {
+        return ResponseEntity.ok(branchLoadService.getLoadByDistrict(district));
+    }
+
+    @GetMapping("/{id}/load")
+    public ResponseEntity<BranchLoadDTO> getBranchLoad(@PathVariable Long id) {
+        BranchLoadDTO load = branchLoadService.getLoad(id);
+        if (load == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(load);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<BranchDTO> getBranchById(@PathVariable Long id) {
         Optional<BranchDTO> branchDTOOptional = branchService.getBranchDTOById(id);
@@ -1,12 +1,16 @@
 package com.bqomis.controller;
 
+import com.bqomis.dto.AvailabilityDTO;
 import com.bqomis.dto.BranchServiceDTO;
 import com.bqomis.model.BranchService;
 import com.bqomis.service.BranchServiceService;
+import com.bqomis.service.SlotCapacityService;
+import com.bqomis.util.Paging;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,10 +21,15 @@ public class BranchServiceController {
     @Autowired
     private BranchServiceService branchServiceService;
 
+    @Autowired
+    private SlotCapacityService slotCapacityService;
+
     @GetMapping
-    public ResponseEntity<List<BranchServiceDTO>> getAllBranchServices() {
-        List<BranchServiceDTO> branchServices = branchServiceService.findAllBrancheServices();
-        return ResponseEntity.ok(branchServices);
+    public ResponseEntity<List<BranchServiceDTO>> getAllBranchServices(@RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "" + Paging.DEFAULT_SIZE) int size,
+            @RequestParam(required = false) Long afterId) {
+        return Paging.toResponse(branchServiceService.findAllBrancheServices(page, size, afterId),
+                BranchServiceDTO::getId);
     }
 
     @PostMapping
@@ -36,6 +45,16 @@ public class BranchServiceController {
         return branchService.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    // GET /api/branch-services/{id}/availability?from=YYYY-MM-DD&to=YYYY-MM-DD
+    // Booked and remaining places per slot; "to" defaults to "from"
+    @GetMapping("/{id}/availability")
+    public ResponseEntity<AvailabilityDTO> getAvailability(@PathVariable Long id, @RequestParam String from,
+            @RequestParam(required = false) String to) {
+        LocalDate startDate = LocalDate.parse(from);
+        LocalDate endDate = to != null ? LocalDate.parse(to) : startDate;
+        return ResponseEntity.ok(slotCapacityService.getAvailability(id, startDate, endDate));
+    }
+
     @GetMapping("/branch/{branchId}")
     public ResponseEntity<List<BranchServiceDTO>> getBranchServicesByBranchId(@PathVariable Long branchId) {
         List<BranchServiceDTO> branchServices = branchServiceService.findBrancheServiceByBranchId(branchId);
@@ -3,6 +3,7 @@ package com.bqomis.controller;
 import com.bqomis.dto.UserDTO;
 import com.bqomis.model.User;
 import com.bqomis.service.UserService;
+import com.bqomis.util.Paging;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -18,10 +19,12 @@ public class UserController {
     private UserService userService;
 
     @GetMapping
-    public ResponseEntity<List<UserDTO>> getAllUsers() {
-        // GET /api/users
-        // This will return all users
-        return ResponseEntity.ok(userService.findAll());
+    public ResponseEntity<List<UserDTO>> getAllUsers(@RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "" + Paging.DEFAULT_SIZE) int size,
+            @RequestParam(required = false) Long afterId) {
+        // GET /api/users?page=&size=&afterId=
+        // One page of users ordered by id; X-Next-After-Id is set while more remain
+        return Paging.toResponse(userService.findAll(page, size, afterId), UserDTO::getId);
     }
 
     @GetMapping(params = "roles")
@@ -0,0 +1,19 @@
+package com.bqomis.dto;
+
+import lombok.Data;
+
+@Data
+public class AppointmentEventDTO {
+
+    public static final String CREATED = "CREATED";
+    public static final String UPDATED = "UPDATED";
+    public static final String DELETED = "DELETED";
+    // The subscriber missed events and should reload its view
+    public static final String RESYNC = "RESYNC";
+
+    private String type;
+    private Long appointmentId;
+    private Long branchId;
+    private String date;
+    private AppointmentDTO appointment; // null for DELETED and RESYNC
+}
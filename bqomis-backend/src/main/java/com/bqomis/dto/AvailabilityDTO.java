@@ -0,0 +1,34 @@
+package com.bqomis.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+public class AvailabilityDTO {
+
+    private Long branchServiceId;
+    private int slotDurationMins;
+    private Integer maxAppointmentsPerSlot; // null means no limit
+    private List<Day> days;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Day {
+        private LocalDate date;
+        private List<Slot> slots;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Slot {
+        private String time; // HH:mm, start of the slot
+        private int booked;
+        private Integer remaining; // null when the branch has no limit
+    }
+}
@@ -0,0 +1,30 @@
+package com.bqomis.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+public class BranchLoadDTO {
+
+    private Long branchId;
+    private String branchName;
+    private String district;
+    private LocalDate date;
+    private int hour; // current hour of day
+    private int count; // appointments in the current hour
+    private String level; // LOW, MODERATE or HIGH; null when no thresholds are configured
+    private List<HourLoad> hours; // opening hours of the day; omitted in bulk responses
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class HourLoad {
+        private int hour;
+        private int count;
+        private String level;
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.List;
 
 @Data
 @NoArgsConstructor
@@ -12,8 +13,18 @@ import java.time.LocalTime;
 @Table(name = "appointments")
 public class Appointment {
 
+    // Must match the INCREMENT BY of appointments_id_seq
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Statuses that still occupy a booking slot
+    public static final List<String> ACTIVE_STATUSES = List.of("SCHEDULED", "CHECKED_IN");
+
+    // Pooled sequence (see V5 migration): ids are reserved 50 at a time so
+    // inserts can be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "appointments_id_gen")
+    @SequenceGenerator(name = "appointments_id_gen", sequenceName = "appointments_id_seq",
+            allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Column(name = "user_id", nullable = false)
@@ -30,4 +41,14 @@ public class Appointment {
 
     @Column(name = "status", nullable = false)
     private String status; // status = "SCHEDULED", "CHECKED_IN", "COMPLETED", "CANCELLED", "NO_SHOW"
-}
\ No newline at end of file
+
+    // Statuses are stored upper case (V11 enforces it), so queries can compare
+    // them as-is and use the partial index on active appointments
+    public void setStatus(String status) {
+        this.status = status != null ? status.toUpperCase() : null;
+    }
+
+    public static boolean isActiveStatus(String status) {
+        return status != null && ACTIVE_STATUSES.contains(status.toUpperCase());
+    }
+}
@@ -0,0 +1,20 @@
+package com.bqomis.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Appointment count per (date, branch service, hour, status), maintained
+// incrementally by AppointmentService
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "appointment_daily_rollup")
+public class AppointmentDailyRollup {
+
+    @EmbeddedId
+    private AppointmentDailyRollupId id;
+
+    @Column(name = "appointment_count", nullable = false)
+    private Long appointmentCount;
+}
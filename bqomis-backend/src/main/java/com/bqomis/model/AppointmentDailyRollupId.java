@@ -0,0 +1,35 @@
+package com.bqomis.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Embeddable
+public class AppointmentDailyRollupId implements Serializable {
+
+    @Column(name = "date", nullable = false)
+    private LocalDate date;
+
+    @Column(name = "branch_service_id", nullable = false)
+    private Long branchServiceId;
+
+    @Column(name = "hour", nullable = false)
+    private Integer hour;
+
+    @Column(name = "status", nullable = false)
+    private String status;
+
+    // The rollup bucket an appointment falls into
+    public static AppointmentDailyRollupId of(Appointment appointment) {
+        return new AppointmentDailyRollupId(appointment.getDate(), appointment.getBranchServiceId(),
+                appointment.getTime().getHour(), appointment.getStatus());
+    }
+}
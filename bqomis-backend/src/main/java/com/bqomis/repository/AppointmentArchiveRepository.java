@@ -0,0 +1,97 @@
+package com.bqomis.repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+// The appointment_archive catalog (V9) and the partition DDL used to archive a
+// month. Partition names come from YearMonth values, never from user input.
+@Repository
+public class AppointmentArchiveRepository {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("appointments_(\\d{4})_(\\d{2})");
+
+    public record ArchivedMonth(YearMonth month, String fileName, long rowCount) {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public static String partitionName(YearMonth month) {
+        return String.format("appointments_%04d_%02d", month.getYear(), month.getMonthValue());
+    }
+
+    private static final RowMapper<ArchivedMonth> ARCHIVED_MONTH = (rs, rowNum) -> new ArchivedMonth(
+            YearMonth.from(rs.getObject("month", LocalDate.class)), rs.getString("file_name"), rs.getLong("row_count"));
+
+    public List<ArchivedMonth> findAll() {
+        return jdbcTemplate.query("SELECT month, file_name, row_count FROM appointment_archive ORDER BY month",
+                ARCHIVED_MONTH);
+    }
+
+    public Optional<ArchivedMonth> findByMonth(YearMonth month) {
+        return jdbcTemplate.query("SELECT month, file_name, row_count FROM appointment_archive WHERE month = ?",
+                ARCHIVED_MONTH, month.atDay(1)).stream().findFirst();
+    }
+
+    public boolean isCataloged(String fileName) {
+        Boolean cataloged = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM appointment_archive WHERE file_name = ?)", Boolean.class, fileName);
+        return Boolean.TRUE.equals(cataloged);
+    }
+
+    // First day not covered by the archive: every earlier date has been moved
+    // to segments. Null when nothing has been archived.
+    public LocalDate findWatermark() {
+        Date last = jdbcTemplate.queryForObject("SELECT MAX(month) FROM appointment_archive", Date.class);
+        return last != null ? last.toLocalDate().plusMonths(1) : null;
+    }
+
+    public void insert(YearMonth month, String fileName, long rowCount) {
+        jdbcTemplate.update("INSERT INTO appointment_archive (month, file_name, row_count) VALUES (?, ?, ?)",
+                month.atDay(1), fileName, rowCount);
+    }
+
+    // Points an archived month at the segment that replaces its previous one
+    public void update(YearMonth month, String fileName, long rowCount) {
+        jdbcTemplate.update("UPDATE appointment_archive SET file_name = ?, row_count = ?, archived_at = now() "
+                + "WHERE month = ?", fileName, rowCount, month.atDay(1));
+    }
+
+    // Monthly partitions currently attached to appointments, oldest first
+    public List<YearMonth> findPartitionMonths() {
+        List<String> names = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid "
+                + "WHERE i.inhparent = 'appointments'::regclass ORDER BY c.relname", String.class);
+        List<YearMonth> months = new ArrayList<>();
+        for (String name : names) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                months.add(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+            }
+        }
+        return months;
+    }
+
+    // Blocks writes to the month but not reads, until the transaction ends.
+    // Gives up after lockTimeoutMs rather than queueing behind a long export.
+    public void lockPartition(YearMonth month, long lockTimeoutMs) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = " + lockTimeoutMs);
+        jdbcTemplate.execute("LOCK TABLE " + partitionName(month) + " IN EXCLUSIVE MODE");
+    }
+
+    public void detachAndDropPartition(YearMonth month) {
+        jdbcTemplate.execute("ALTER TABLE appointments DETACH PARTITION " + partitionName(month));
+        jdbcTemplate.execute("DROP TABLE " + partitionName(month));
+    }
+}
@@ -0,0 +1,62 @@
+package com.bqomis.repository;
+
+import com.bqomis.model.Appointment;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+// Plain JDBC batch inserts for bulk appointment ingestion, bypassing the
+// persistence context.
+@Repository
+public class AppointmentBatchRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO appointments (id, user_id, branch_service_id, date, time, status) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String RESERVE_IDS_SQL = "SELECT nextval('appointments_id_seq') FROM generate_series(1, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Inserts all rows as one JDBC batch and sets their ids; the caller owns
+    // the transaction
+    public void batchInsert(List<Appointment> appointments) {
+        assignIds(appointments);
+        jdbcTemplate.batchUpdate(INSERT_SQL, appointments, appointments.size(), (ps, appointment) -> {
+            ps.setLong(1, appointment.getId());
+            ps.setLong(2, appointment.getUserId());
+            ps.setLong(3, appointment.getBranchServiceId());
+            ps.setDate(4, Date.valueOf(appointment.getDate()));
+            ps.setTime(5, Time.valueOf(appointment.getTime()));
+            ps.setString(6, appointment.getStatus());
+        });
+    }
+
+    // Reserves ids the same way Hibernate's pooled optimizer does: each
+    // nextval() value v owns the block (v - ID_ALLOCATION_SIZE, v]. Relying on
+    // the column default instead would burn a whole block per row.
+    private void assignIds(List<Appointment> appointments) {
+        int blockSize = Appointment.ID_ALLOCATION_SIZE;
+        int blocks = (appointments.size() + blockSize - 1) / blockSize;
+        List<Long> blockEnds = new ArrayList<>(blocks);
+        while (blockEnds.size() < blocks) {
+            for (Long blockEnd : jdbcTemplate.queryForList(RESERVE_IDS_SQL, Long.class, blocks - blockEnds.size())) {
+                // A fresh sequence starts at 1, which does not end a full block;
+                // Hibernate skips it too
+                if (blockEnd >= blockSize) {
+                    blockEnds.add(blockEnd);
+                }
+            }
+        }
+        for (int i = 0; i < appointments.size(); i++) {
+            long blockEnd = blockEnds.get(i / blockSize);
+            appointments.get(i).setId(blockEnd - blockSize + 1 + (i % blockSize));
+        }
+    }
+}
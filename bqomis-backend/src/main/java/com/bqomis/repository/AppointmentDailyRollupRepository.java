@@ -0,0 +1,70 @@
+package com.bqomis.repository;
+
+import com.bqomis.model.AppointmentDailyRollup;
+import com.bqomis.model.AppointmentDailyRollupId;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AppointmentDailyRollupRepository
+                extends JpaRepository<AppointmentDailyRollup, AppointmentDailyRollupId>,
+                AppointmentDailyRollupRepositoryCustom {
+
+        @Query("SELECT r FROM AppointmentDailyRollup r WHERE r.id.date = :date")
+        List<AppointmentDailyRollup> findByDate(@Param("date") LocalDate date);
+
+        @Query("SELECT r.id.branchServiceId AS branchServiceId, r.id.status AS status, SUM(r.appointmentCount) AS count "
+                        + "FROM AppointmentDailyRollup r WHERE r.id.date BETWEEN :startDate AND :endDate "
+                        + "AND r.id.branchServiceId IN :branchServiceIds GROUP BY r.id.branchServiceId, r.id.status")
+        List<StatusCountView> countByBranchServiceAndStatus(@Param("startDate") LocalDate startDate,
+                        @Param("endDate") LocalDate endDate, @Param("branchServiceIds") List<Long> branchServiceIds);
+
+        @Query("SELECT r.id.hour AS bucket, SUM(r.appointmentCount) AS count FROM AppointmentDailyRollup r "
+                        + "WHERE r.id.date BETWEEN :startDate AND :endDate GROUP BY r.id.hour")
+        List<BucketCountView> countByHour(@Param("startDate") LocalDate startDate,
+                        @Param("endDate") LocalDate endDate);
+
+        @Query("SELECT r.id.hour AS bucket, SUM(r.appointmentCount) AS count FROM AppointmentDailyRollup r "
+                        + "WHERE r.id.date BETWEEN :startDate AND :endDate "
+                        + "AND r.id.branchServiceId IN :branchServiceIds GROUP BY r.id.hour")
+        List<BucketCountView> countByHourAndBranchServiceIds(@Param("startDate") LocalDate startDate,
+                        @Param("endDate") LocalDate endDate, @Param("branchServiceIds") List<Long> branchServiceIds);
+
+        @Query(value = "SELECT CAST(EXTRACT(ISODOW FROM r.date) AS INTEGER) AS bucket, SUM(r.appointment_count) AS count "
+                        + "FROM appointment_daily_rollup r WHERE r.date BETWEEN :startDate AND :endDate GROUP BY 1",
+                        nativeQuery = true)
+        List<BucketCountView> countByDayOfWeek(@Param("startDate") LocalDate startDate,
+                        @Param("endDate") LocalDate endDate);
+
+        @Query(value = "SELECT CAST(EXTRACT(ISODOW FROM r.date) AS INTEGER) AS bucket, SUM(r.appointment_count) AS count "
+                        + "FROM appointment_daily_rollup r WHERE r.date BETWEEN :startDate AND :endDate "
+                        + "AND r.branch_service_id IN :branchServiceIds GROUP BY 1", nativeQuery = true)
+        List<BucketCountView> countByDayOfWeekAndBranchServiceIds(@Param("startDate") LocalDate startDate,
+                        @Param("endDate") LocalDate endDate, @Param("branchServiceIds") List<Long> branchServiceIds);
+
+        // Backfill: recompute a date range from the appointments table
+
+        @Modifying
+        @Query(value = "DELETE FROM appointment_daily_rollup WHERE date BETWEEN :startDate AND :endDate",
+                        nativeQuery = true)
+        int deleteByPeriod(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+        // An upsert, since a booking committed after deleteByPeriod may already have
+        // recreated its bucket; the recount replaces that bucket's count
+        @Modifying
+        @Query(value = "INSERT INTO appointment_daily_rollup (date, branch_service_id, hour, status, appointment_count) "
+                        + "SELECT date, branch_service_id, CAST(EXTRACT(HOUR FROM time) AS INT), status, COUNT(*) "
+                        + "FROM appointments WHERE date BETWEEN :startDate AND :endDate GROUP BY 1, 2, 3, 4 "
+                        + "ON CONFLICT (date, branch_service_id, hour, status) "
+                        + "DO UPDATE SET appointment_count = EXCLUDED.appointment_count",
+                        nativeQuery = true)
+        int insertAggregatedFromAppointments(@Param("startDate") LocalDate startDate,
+                        @Param("endDate") LocalDate endDate);
+}
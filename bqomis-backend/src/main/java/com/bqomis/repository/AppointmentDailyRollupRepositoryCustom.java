@@ -0,0 +1,11 @@
+package com.bqomis.repository;
+
+import com.bqomis.model.AppointmentDailyRollupId;
+
+import java.util.Map;
+
+public interface AppointmentDailyRollupRepositoryCustom {
+
+    // Adds each delta to its rollup row, creating missing rows
+    void applyDeltas(Map<AppointmentDailyRollupId, Long> deltas);
+}
@@ -0,0 +1,52 @@
+package com.bqomis.repository;
+
+import com.bqomis.model.AppointmentDailyRollupId;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class AppointmentDailyRollupRepositoryImpl implements AppointmentDailyRollupRepositoryCustom {
+
+    private static final String UPSERT_SQL = "INSERT INTO appointment_daily_rollup "
+            + "(date, branch_service_id, hour, status, appointment_count) VALUES (?, ?, ?, ?, ?) "
+            + "ON CONFLICT (date, branch_service_id, hour, status) "
+            + "DO UPDATE SET appointment_count = appointment_daily_rollup.appointment_count + EXCLUDED.appointment_count";
+
+    // Rows are always locked in this order so concurrent writers cannot deadlock
+    private static final Comparator<AppointmentDailyRollupId> KEY_ORDER = Comparator
+            .comparing(AppointmentDailyRollupId::getDate)
+            .thenComparing(AppointmentDailyRollupId::getBranchServiceId)
+            .thenComparing(AppointmentDailyRollupId::getHour)
+            .thenComparing(AppointmentDailyRollupId::getStatus);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void applyDeltas(Map<AppointmentDailyRollupId, Long> deltas) {
+        List<Map.Entry<AppointmentDailyRollupId, Long>> rows = new ArrayList<>();
+        for (Map.Entry<AppointmentDailyRollupId, Long> entry : deltas.entrySet()) {
+            if (entry.getValue() != 0) {
+                rows.add(entry);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        rows.sort(Map.Entry.comparingByKey(KEY_ORDER));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows, rows.size(), (ps, row) -> {
+            AppointmentDailyRollupId key = row.getKey();
+            ps.setDate(1, Date.valueOf(key.getDate()));
+            ps.setLong(2, key.getBranchServiceId());
+            ps.setInt(3, key.getHour());
+            ps.setString(4, key.getStatus());
+            ps.setLong(5, row.getValue());
+        });
+    }
+}
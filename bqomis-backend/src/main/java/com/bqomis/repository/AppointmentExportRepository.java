@@ -0,0 +1,77 @@
+package com.bqomis.repository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PostConstruct;
+
+// Forward-only reads of appointments for exports. Rows are fetched from a
+// server-side cursor in fetch-size chunks and never enter a persistence
+// context, so memory stays flat however many rows match.
+@Repository
+public class AppointmentExportRepository {
+
+    private static final String SELECT_SQL = "SELECT id, user_id, branch_service_id, date, time, status "
+            + "FROM appointments";
+
+    private static final RowMapper<AppointmentRow> ROW_MAPPER = (rs, rowNum) -> new AppointmentRow(
+            rs.getLong("id"),
+            rs.getLong("user_id"),
+            rs.getLong("branch_service_id"),
+            rs.getObject("date", LocalDate.class),
+            rs.getObject("time", LocalTime.class),
+            rs.getString("status"));
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${bqomis.export.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate cursorTemplate;
+
+    @PostConstruct
+    public void init() {
+        // PostgreSQL only uses a cursor when a fetch size is set and the
+        // connection is not in auto-commit, i.e. inside a transaction
+        cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(fetchSize);
+    }
+
+    // Appointments in (date, time, id) order. Null arguments are not filtered on.
+    // The stream must be closed and consumed inside a transaction.
+    public Stream<AppointmentRow> stream(LocalDate dateFrom, LocalDate dateTo, Collection<Long> branchServiceIds) {
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        List<Object> args = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        if (dateFrom != null) {
+            conditions.add("date >= ?");
+            args.add(dateFrom);
+        }
+        if (dateTo != null) {
+            conditions.add("date <= ?");
+            args.add(dateTo);
+        }
+        if (branchServiceIds != null) {
+            conditions.add("branch_service_id = ANY (?)");
+            args.add(branchServiceIds.toArray(new Long[0]));
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY date, time, id");
+        return cursorTemplate.queryForStream(sql.toString(), ROW_MAPPER, args.toArray());
+    }
+}
@@ -4,32 +4,49 @@ import com.bqomis.model.Appointment;
 
 import java.time.LocalDate;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
+public interface AppointmentRepository extends JpaRepository<Appointment, Long>, JpaSpecificationExecutor<Appointment> {
         // Additional query methods can be defined here if needed
 
-        @Query("SELECT a FROM Appointment a WHERE a.date = :anyDate AND a.branchServiceId IN :branchServiceIds")
-        List<Appointment> findAppointmentsByDateAndBranchServiceIds(
+        // Day views: projected rows rather than managed entities
+        @Query(AppointmentRow.SELECT + " WHERE a.date = :anyDate AND a.branchServiceId IN :branchServiceIds")
+        List<AppointmentRow> findAppointmentsByDateAndBranchServiceIds(
                         @Param("anyDate") LocalDate anyDate,
                         @Param("branchServiceIds") List<Long> branchServiceIds);
 
         @Query("SELECT a FROM Appointment a WHERE a.date = :anyDate")
         List<Appointment> findAppointmentsByDate(@Param("anyDate") LocalDate anyDate);
 
-        @Query("SELECT a FROM Appointment a WHERE a.date = :anyDate AND a.branchServiceId = :branchServiceId")
-        List<Appointment> findAppointmentsByDateAndBranchServiceId(
+        @Query(AppointmentRow.SELECT + " WHERE a.date = :anyDate AND a.branchServiceId = :branchServiceId")
+        List<AppointmentRow> findAppointmentsByDateAndBranchServiceId(
                         @Param("anyDate") LocalDate anyDate,
                         @Param("branchServiceId") Long branchServiceId);
 
         @Query("SELECT a FROM Appointment a WHERE a.userId = :userId")
         List<Appointment> findAppointmentsByUserId(@Param("userId") Long userId);
 
+        // Paged list endpoints: afterId is the keyset cursor (0 for the first page)
+        // and the Pageable supplies the limit and ORDER BY id
+        @Query(AppointmentRow.SELECT + " WHERE a.id > :afterId")
+        Slice<AppointmentRow> findPageAfterId(@Param("afterId") Long afterId, Pageable pageable);
+
+        @Query(AppointmentRow.SELECT + " WHERE a.date = :anyDate AND a.id > :afterId")
+        Slice<AppointmentRow> findPageByDateAfterId(@Param("anyDate") LocalDate anyDate,
+                        @Param("afterId") Long afterId, Pageable pageable);
+
+        @Query(AppointmentRow.SELECT + " WHERE a.userId = :userId AND a.id > :afterId")
+        Slice<AppointmentRow> findPageByUserIdAfterId(@Param("userId") Long userId,
+                        @Param("afterId") Long afterId, Pageable pageable);
+
         @Query("SELECT a FROM Appointment a WHERE a.date BETWEEN :startDate AND :endDate")
         List<Appointment> findAppointmentsByPeriod(@Param("startDate") LocalDate startDate,
                         @Param("endDate") LocalDate endDate);
@@ -58,4 +75,12 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Long>
         List<Appointment> findAppointmentsByDateRange(
                         @Param("startDate") LocalDate startDate,
                         @Param("endDate") LocalDate endDate);
+
+        // Active appointments per (date, time) for one branch service, used to
+        // warm the in-memory slot occupancy. Statuses are stored upper case (V11).
+        @Query("SELECT a.date AS date, a.time AS time, COUNT(a) AS count FROM Appointment a "
+                        + "WHERE a.branchServiceId = :branchServiceId AND a.date BETWEEN :startDate AND :endDate "
+                        + "AND a.status IN ('SCHEDULED', 'CHECKED_IN') GROUP BY a.date, a.time")
+        List<SlotCountView> countActiveByDateAndTime(@Param("branchServiceId") Long branchServiceId,
+                        @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 }
\ No newline at end of file
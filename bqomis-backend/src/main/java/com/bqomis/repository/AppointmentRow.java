@@ -0,0 +1,14 @@
+package com.bqomis.repository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Read-only appointment columns for list endpoints and exports. Selected with a
+// JPQL constructor expression (or a JDBC row mapper), so rows are never managed
+// entities and carry no dirty-checking snapshot.
+public record AppointmentRow(Long id, Long userId, Long branchServiceId, LocalDate date, LocalTime time,
+        String status) {
+
+    public static final String SELECT = "SELECT new com.bqomis.repository.AppointmentRow("
+            + "a.id, a.userId, a.branchServiceId, a.date, a.time, a.status) FROM Appointment a";
+}
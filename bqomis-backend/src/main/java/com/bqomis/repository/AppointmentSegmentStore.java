@@ -0,0 +1,443 @@
+package com.bqomis.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+// Archived appointment months as compressed segment files, one per month.
+// A segment is a sequence of row groups of up to row-group-size rows; each
+// group stores every column as its own deflated block, so similar values sit
+// together and compress well:
+//
+//   header   magic "BQAS", format version, year, month
+//   groups   row count, first and last day of month, statuses dictionary
+//            (count, then length-prefixed UTF-8 names), then the columns
+//            id (delta from the previous row), user_id, branch_service_id,
+//            day of month, second of day, status (dictionary index); each
+//            as raw length, compressed length, deflated bytes
+//   trailer  a row count of 0, then the segment's total row count
+//
+// Rows are kept in (date, time, id) order, the order exports use. Every write
+// gets a new file name, so a segment the catalog points at is never replaced;
+// files are written to a temporary name, synced and renamed, so a segment is
+// either complete or absent. Writes and reads hold one row group on the heap
+// at a time: reads map the file and inflate a group only once the rows before
+// it have been consumed, skipping groups outside the requested dates unread.
+//
+// The directory has no default: the catalog is shared, so it must be a volume
+// every backend node mounts (see AppointmentArchiveService.checkDirectory).
+@Repository
+public class AppointmentSegmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(AppointmentSegmentStore.class);
+
+    private static final int MAGIC = 0x42514153; // "BQAS"
+    private static final int FORMAT_VERSION = 2;
+
+    @Value("${bqomis.archive.directory:}")
+    private String directory;
+    @Value("${bqomis.archive.row-group-size:8192}")
+    private int rowGroupSize;
+
+    // A name no earlier write has used: the month, then the time of the attempt
+    // and a random suffix
+    public static String newFileName(YearMonth month) {
+        return String.format("appointments_%04d_%02d_%d_%04x.seg", month.getYear(), month.getMonthValue(),
+                System.currentTimeMillis(), ThreadLocalRandom.current().nextInt(0x10000));
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public boolean isConfigured() {
+        return directory != null && !directory.isBlank();
+    }
+
+    public boolean exists(String fileName) throws IOException {
+        return Files.isRegularFile(resolve(fileName));
+    }
+
+    // Writes the month's rows, which must be in (date, time, id) order, to a
+    // new segment and returns how many were written. Fails rather than
+    // replace an existing file.
+    public long write(String fileName, YearMonth month, Iterator<AppointmentRow> rows) throws IOException {
+        Path target = resolve(fileName);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(fileName + ".tmp");
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        long total = 0;
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(month.getYear());
+            out.writeByte(month.getMonthValue());
+            Columns columns = new Columns(rowGroupSize);
+            while (rows.hasNext()) {
+                columns.add(rows.next());
+                if (columns.size == rowGroupSize || !rows.hasNext()) {
+                    writeGroup(out, columns);
+                    total += columns.size;
+                    columns = new Columns(rowGroupSize);
+                }
+            }
+            out.writeInt(0);
+            out.writeLong(total);
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return total;
+    }
+
+    // Rows of one segment in (date, time, id) order, decoded a row group at a
+    // time as the stream is consumed. Null arguments are not filtered on.
+    public Stream<AppointmentRow> read(String fileName, LocalDate dateFrom, LocalDate dateTo,
+            Set<Long> branchServiceIds) throws IOException {
+        Path path = resolve(fileName);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not an appointment segment: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported segment format " + version + ": " + path);
+        }
+        YearMonth month = YearMonth.of(buffer.getInt(), buffer.get());
+        Reader reader = new Reader(buffer, path, month, dateFrom, dateTo, branchServiceIds);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    public void delete(String fileName) {
+        try {
+            Files.deleteIfExists(resolve(fileName));
+        } catch (IOException e) {
+            log.warn("Could not delete archive segment {}", fileName, e);
+        }
+    }
+
+    private Path resolve(String fileName) throws IOException {
+        if (!isConfigured()) {
+            throw new IOException("bqomis.archive.directory is not set; archived appointments live on the "
+                    + "archive volume shared by the backend nodes");
+        }
+        return Paths.get(directory).resolve(fileName);
+    }
+
+    private static void writeGroup(DataOutputStream out, Columns columns) throws IOException {
+        out.writeInt(columns.size);
+        out.writeByte(columns.days[0]);
+        out.writeByte(columns.days[columns.size - 1]);
+        out.writeByte(columns.statuses.size());
+        for (String status : columns.statuses) {
+            byte[] name = status.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+        }
+        writeBlock(out, columns.encodeIds());
+        writeBlock(out, encodeLongs(columns.userIds, columns.size));
+        writeBlock(out, encodeLongs(columns.branchServiceIds, columns.size));
+        writeBlock(out, Arrays.copyOf(columns.days, columns.size));
+        writeBlock(out, encodeInts(columns.seconds, columns.size));
+        writeBlock(out, Arrays.copyOf(columns.statusIndexes, columns.size));
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] raw) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                compressed.write(chunk, 0, length);
+            }
+            out.writeInt(raw.length);
+            out.writeInt(compressed.size());
+            compressed.writeTo(out);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Inflates the block at the buffer's position straight from the mapping
+    private static ByteBuffer readBlock(ByteBuffer buffer, Path path) throws IOException {
+        int rawLength = buffer.getInt();
+        int compressedLength = buffer.getInt();
+        ByteBuffer input = buffer.slice(buffer.position(), compressedLength);
+        buffer.position(buffer.position() + compressedLength);
+        ByteBuffer output = ByteBuffer.allocate(rawLength);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            while (output.hasRemaining()) {
+                if (inflater.inflate(output) == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated segment: " + path);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt segment: " + path, e);
+        } finally {
+            inflater.end();
+        }
+        return output.flip();
+    }
+
+    private static void skipBlock(ByteBuffer buffer) {
+        buffer.getInt();
+        int compressedLength = buffer.getInt();
+        buffer.position(buffer.position() + compressedLength);
+    }
+
+    private static byte[] encodeLongs(long[] values, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size * Long.BYTES);
+        buffer.asLongBuffer().put(values, 0, size);
+        return buffer.array();
+    }
+
+    private static byte[] encodeInts(int[] values, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size * Integer.BYTES);
+        buffer.asIntBuffer().put(values, 0, size);
+        return buffer.array();
+    }
+
+    // Column arrays for the row group being written
+    private static final class Columns {
+        int size;
+        final long[] ids;
+        final long[] userIds;
+        final long[] branchServiceIds;
+        final byte[] days;
+        // Appointment times are whole minutes; seconds are kept, fractions are not
+        final int[] seconds;
+        final byte[] statusIndexes;
+        final List<String> statuses = new ArrayList<>();
+        final Map<String, Integer> statusIndex = new HashMap<>();
+
+        Columns(int capacity) {
+            ids = new long[capacity];
+            userIds = new long[capacity];
+            branchServiceIds = new long[capacity];
+            days = new byte[capacity];
+            seconds = new int[capacity];
+            statusIndexes = new byte[capacity];
+        }
+
+        void add(AppointmentRow row) {
+            ids[size] = row.id();
+            userIds[size] = row.userId();
+            branchServiceIds[size] = row.branchServiceId();
+            days[size] = (byte) row.date().getDayOfMonth();
+            seconds[size] = row.time().toSecondOfDay();
+            statusIndexes[size] = (byte) (int) statusIndex.computeIfAbsent(row.status(), status -> {
+                if (statuses.size() == 255) {
+                    throw new IllegalStateException("Too many distinct appointment statuses for a segment");
+                }
+                // Null is stored as an empty name
+                statuses.add(status != null ? status : "");
+                return statuses.size() - 1;
+            });
+            size++;
+        }
+
+        byte[] encodeIds() {
+            ByteBuffer buffer = ByteBuffer.allocate(size * Long.BYTES);
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                buffer.putLong(ids[i] - previous);
+                previous = ids[i];
+            }
+            return buffer.array();
+        }
+    }
+
+    // Walks a mapped segment row by row, holding only the current group's columns
+    private static final class Reader implements Iterator<AppointmentRow> {
+        private final ByteBuffer buffer;
+        private final Path path;
+        private final YearMonth month;
+        private final LocalDate dateFrom;
+        private final LocalDate dateTo;
+        private final Set<Long> branchServiceIds;
+        // Days of this month the requested dates cover
+        private final int firstDay;
+        private final int lastDay;
+
+        private RowGroup group;
+        private int index;
+        private AppointmentRow next;
+        private boolean done;
+
+        Reader(ByteBuffer buffer, Path path, YearMonth month, LocalDate dateFrom, LocalDate dateTo,
+                Set<Long> branchServiceIds) {
+            this.buffer = buffer;
+            this.path = path;
+            this.month = month;
+            this.dateFrom = dateFrom;
+            this.dateTo = dateTo;
+            this.branchServiceIds = branchServiceIds;
+            this.firstDay = dateFrom == null || dateFrom.isBefore(month.atDay(1)) ? 1
+                    : month.equals(YearMonth.from(dateFrom)) ? dateFrom.getDayOfMonth() : 32;
+            this.lastDay = dateTo == null || dateTo.isAfter(month.atEndOfMonth()) ? 31
+                    : month.equals(YearMonth.from(dateTo)) ? dateTo.getDayOfMonth() : 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !done) {
+                if (group == null || index == group.size) {
+                    group = nextGroup();
+                    index = 0;
+                    done = group == null;
+                    continue;
+                }
+                int i = index++;
+                if (branchServiceIds != null && !branchServiceIds.contains(group.branchServiceIds[i])) {
+                    continue;
+                }
+                AppointmentRow row = group.row(i);
+                if ((dateFrom == null || !row.date().isBefore(dateFrom))
+                        && (dateTo == null || !row.date().isAfter(dateTo))) {
+                    next = row;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public AppointmentRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            AppointmentRow row = next;
+            next = null;
+            return row;
+        }
+
+        // The next group with rows on the requested days, or null at the trailer
+        private RowGroup nextGroup() {
+            try {
+                while (true) {
+                    int size = buffer.getInt();
+                    if (size == 0) {
+                        return null;
+                    }
+                    int groupFirstDay = buffer.get();
+                    int groupLastDay = buffer.get();
+                    String[] statuses = new String[buffer.get() & 0xFF];
+                    for (int i = 0; i < statuses.length; i++) {
+                        byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                        buffer.get(name);
+                        statuses[i] = name.length > 0 ? new String(name, StandardCharsets.UTF_8) : null;
+                    }
+                    if (groupLastDay < firstDay || groupFirstDay > lastDay) {
+                        for (int i = 0; i < 6; i++) {
+                            skipBlock(buffer);
+                        }
+                        continue;
+                    }
+                    return load(size, statuses);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new UncheckedIOException(new IOException("Truncated segment: " + path, e));
+            }
+        }
+
+        private RowGroup load(int size, String[] statuses) throws IOException {
+            RowGroup loaded = new RowGroup(month, size, statuses);
+            ByteBuffer ids = readBlock(buffer, path);
+            long id = 0;
+            for (int i = 0; i < size; i++) {
+                id += ids.getLong();
+                loaded.ids[i] = id;
+            }
+            readBlock(buffer, path).asLongBuffer().get(loaded.userIds);
+            readBlock(buffer, path).asLongBuffer().get(loaded.branchServiceIds);
+            readBlock(buffer, path).get(loaded.days);
+            readBlock(buffer, path).asIntBuffer().get(loaded.seconds);
+            readBlock(buffer, path).get(loaded.statusIndexes);
+            return loaded;
+        }
+    }
+
+    private static final class RowGroup {
+        final YearMonth month;
+        final int size;
+        final String[] statuses;
+        final long[] ids;
+        final long[] userIds;
+        final long[] branchServiceIds;
+        final byte[] days;
+        final int[] seconds;
+        final byte[] statusIndexes;
+
+        RowGroup(YearMonth month, int size, String[] statuses) {
+            this.month = month;
+            this.size = size;
+            this.statuses = statuses;
+            this.ids = new long[size];
+            this.userIds = new long[size];
+            this.branchServiceIds = new long[size];
+            this.days = new byte[size];
+            this.seconds = new int[size];
+            this.statusIndexes = new byte[size];
+        }
+
+        AppointmentRow row(int i) {
+            return new AppointmentRow(ids[i], userIds[i], branchServiceIds[i], month.atDay(days[i]),
+                    LocalTime.ofSecondOfDay(seconds[i]), statuses[statusIndexes[i] & 0xFF]);
+        }
+    }
+}
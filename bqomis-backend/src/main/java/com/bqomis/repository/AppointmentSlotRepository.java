@@ -0,0 +1,40 @@
+package com.bqomis.repository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+// Database-side guard for slot capacity. Both calls must run inside the
+// booking transaction.
+@Repository
+public class AppointmentSlotRepository {
+
+    private static final String LOCK_SQL = "SELECT pg_advisory_xact_lock(?, ?)";
+
+    // Served by idx_appointments_active_bs_date_time; statuses are stored upper
+    // case (V11)
+    private static final String COUNT_ACTIVE_SQL = "SELECT COUNT(*) FROM appointments "
+            + "WHERE branch_service_id = ? AND date = ? AND time >= ? AND time < ? "
+            + "AND status IN ('SCHEDULED', 'CHECKED_IN') AND id <> ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Serialises bookings of one slot across all backend nodes until the
+    // transaction ends. The key is (branch service, minute since epoch day 0).
+    public void lockSlot(long branchServiceId, LocalDate date, int slotStartMinute) {
+        int slotKey = Math.toIntExact(date.toEpochDay() * 1440 + slotStartMinute);
+        jdbcTemplate.query(LOCK_SQL, rs -> null, Math.toIntExact(branchServiceId), slotKey);
+    }
+
+    // Active appointments in [slotStart, slotEnd), not counting excludeId
+    public long countActiveInSlot(long branchServiceId, LocalDate date, LocalTime slotStart, LocalTime slotEnd,
+            Long excludeId) {
+        Long count = jdbcTemplate.queryForObject(COUNT_ACTIVE_SQL, Long.class, branchServiceId, date,
+                slotStart, slotEnd, excludeId != null ? excludeId : -1L);
+        return count != null ? count : 0;
+    }
+}
@@ -0,0 +1,55 @@
+package com.bqomis.repository;
+
+import com.bqomis.model.Appointment;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+// Composable filters for AppointmentRepository. A null argument means "no
+// filter" so callers can pass request parameters straight through.
+public final class AppointmentSpecifications {
+
+    // Stable ordering used for both offset and keyset (seek) pagination
+    public static final Sort KEYSET_SORT = Sort.by("date", "time", "id");
+
+    private AppointmentSpecifications() {
+    }
+
+    public static Specification<Appointment> dateOnOrAfter(LocalDate date) {
+        return (root, query, cb) -> date == null ? null : cb.greaterThanOrEqualTo(root.get("date"), date);
+    }
+
+    public static Specification<Appointment> dateOnOrBefore(LocalDate date) {
+        return (root, query, cb) -> date == null ? null : cb.lessThanOrEqualTo(root.get("date"), date);
+    }
+
+    // Case-insensitive, as before: stored statuses are upper case (V11), so only
+    // the requested one is converted
+    public static Specification<Appointment> hasStatus(String status) {
+        return (root, query, cb) -> status == null ? null
+                : cb.equal(root.get("status"), status.toUpperCase());
+    }
+
+    public static Specification<Appointment> branchServiceIdIn(Collection<Long> branchServiceIds) {
+        return (root, query, cb) -> branchServiceIds == null ? null
+                : root.get("branchServiceId").in(branchServiceIds);
+    }
+
+    // Rows strictly after (date, time, id) in KEYSET_SORT order
+    public static Specification<Appointment> after(LocalDate date, LocalTime time, Long id) {
+        return (root, query, cb) -> {
+            if (date == null || time == null || id == null) {
+                return null;
+            }
+            return cb.or(
+                    cb.greaterThan(root.get("date"), date),
+                    cb.and(cb.equal(root.get("date"), date), cb.greaterThan(root.get("time"), time)),
+                    cb.and(cb.equal(root.get("date"), date), cb.equal(root.get("time"), time),
+                            cb.greaterThan(root.get("id"), id)));
+        };
+    }
+}
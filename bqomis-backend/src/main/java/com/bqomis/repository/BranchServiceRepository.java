@@ -4,7 +4,11 @@ import com.bqomis.model.BranchService;
 
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -13,4 +17,7 @@ public interface BranchServiceRepository extends JpaRepository<BranchService, Lo
     // For example, if you want to find BranchService by branchId
     // List<BranchService> findByBranchId(Long branchId);
     List<BranchService> findByIdIn(List<Long> ids);
+
+    @Query("SELECT bs FROM BranchService bs WHERE bs.id > :afterId")
+    Slice<BranchService> findPageAfterId(@Param("afterId") Long afterId, Pageable pageable);
 }
\ No newline at end of file
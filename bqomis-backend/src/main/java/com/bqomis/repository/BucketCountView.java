@@ -0,0 +1,9 @@
+package com.bqomis.repository;
+
+// Appointment count per time bucket (hour of day or ISO day of week)
+public interface BucketCountView {
+
+    Integer getBucket();
+
+    Long getCount();
+}
@@ -0,0 +1,14 @@
+package com.bqomis.repository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Active appointment count at one date and time
+public interface SlotCountView {
+
+    LocalDate getDate();
+
+    LocalTime getTime();
+
+    Long getCount();
+}
@@ -0,0 +1,11 @@
+package com.bqomis.repository;
+
+// Appointment count per branch service and status, from a GROUP BY query
+public interface StatusCountView {
+
+    Long getBranchServiceId();
+
+    String getStatus();
+
+    Long getCount();
+}
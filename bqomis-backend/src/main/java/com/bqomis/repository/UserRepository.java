@@ -1,12 +1,23 @@
 package com.bqomis.repository;
 
 import com.bqomis.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     User findByEmail(String email);
 
     List<User> findByRoleIn(List<String> roles);
+
+    @Query("SELECT u.id FROM User u WHERE u.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT u FROM User u WHERE u.id > :afterId")
+    Slice<User> findPageAfterId(@Param("afterId") Long afterId, Pageable pageable);
 }
\ No newline at end of file
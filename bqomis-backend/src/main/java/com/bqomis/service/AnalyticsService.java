@@ -8,17 +8,24 @@ import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.annotation.Timed;
+
+import com.bqomis.config.ReplicaReadOnly;
 import com.bqomis.util.LookupUtil;
-import com.bqomis.model.Appointment;
-import com.bqomis.repository.AppointmentRepository;
+import com.bqomis.repository.AppointmentDailyRollupRepository;
+import com.bqomis.repository.BucketCountView;
+import com.bqomis.repository.StatusCountView;
 
+// Served from the replica when one is configured
 @Service
+@Timed("bqomis.analytics")
+@ReplicaReadOnly
 public class AnalyticsService {
 
     @Autowired
     private LookupUtil lookupUtil;
     @Autowired
-    private AppointmentRepository appointmentRepository;
+    private AppointmentDailyRollupRepository rollupRepository;
 
     // Returns overall summary stats (total appointments, by status, etc.) for the
     // given period
@@ -31,9 +38,9 @@ public class AnalyticsService {
         class ServiceStats {
             Long serviceId;
             String serviceName;
-            int completed = 0;
-            int cancelled = 0;
-            int noShow = 0;
+            long completed = 0;
+            long cancelled = 0;
+            long noShow = 0;
 
             ServiceStats(Long serviceId, String serviceName) {
                 this.serviceId = serviceId;
@@ -44,28 +51,28 @@ public class AnalyticsService {
         // Map serviceId to stats
         java.util.Map<Long, ServiceStats> serviceStatsMap = new java.util.HashMap<>();
         for (Long branchServiceId : branchServiceIds) {
-            Long[] ids = lookupUtil.getBranchIdAndServiceIdByBranchServiceId(branchServiceId);
-            Long serviceId = ids[1];
+            Long serviceId = lookupUtil.getServiceIdByBranchServiceId(branchServiceId);
             String serviceName = lookupUtil.getServiceNameById(serviceId);
             serviceStatsMap.put(serviceId, new ServiceStats(serviceId, serviceName));
         }
 
-        // Get appointments for the period and branch services
-        List<Appointment> appointmentList = appointmentRepository.findAppointmentsByPeriodAndBranchServiceIds(
-                startDate, endDate, branchServiceIds);
+        // Appointments per branch service and status, summed from the daily rollup
+        List<StatusCountView> counts = branchServiceIds.isEmpty() ? List.of()
+                : rollupRepository.countByBranchServiceAndStatus(startDate, endDate, branchServiceIds);
 
-        for (Appointment appointment : appointmentList) {
-            Long[] ids = lookupUtil.getBranchIdAndServiceIdByBranchServiceId(appointment.getBranchServiceId());
-            Long serviceId = ids[1];
+        long appointmentCount = 0;
+        for (StatusCountView count : counts) {
+            appointmentCount += count.getCount();
+            long serviceId = lookupUtil.getServiceIdByBranchServiceId(count.getBranchServiceId());
             ServiceStats stats = serviceStatsMap.get(serviceId);
             if (stats != null) {
-                String status = appointment.getStatus();
+                String status = count.getStatus();
                 if ("COMPLETED".equals(status)) {
-                    stats.completed++;
+                    stats.completed += count.getCount();
                 } else if ("CANCELLED".equals(status)) {
-                    stats.cancelled++;
+                    stats.cancelled += count.getCount();
                 } else if ("NO_SHOW".equals(status)) {
-                    stats.noShow++;
+                    stats.noShow += count.getCount();
                 }
             }
         }
@@ -74,7 +81,7 @@ public class AnalyticsService {
         org.json.JSONObject result = new org.json.JSONObject();
         result.put("branchId", branchId);
         result.put("branchName", branchName);
-        result.put("appointmentCount", appointmentList.size());
+        result.put("appointmentCount", appointmentCount);
 
         org.json.JSONArray servicesArray = new org.json.JSONArray();
         for (ServiceStats stats : serviceStatsMap.values()) {
@@ -88,8 +95,6 @@ public class AnalyticsService {
         }
         result.put("services", servicesArray);
 
-        // You can return or log result.toString()
-        // System.out.println(result.toString());
         return result;
     }
 
@@ -99,23 +104,24 @@ public class AnalyticsService {
         // Get all branchServiceIds for this service in the district
         List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByDistrictAndService(district, serviceId);
 
-        // Get appointments for the period and these branchServiceIds
-        List<Appointment> appointmentList = appointmentRepository.findAppointmentsByPeriodAndBranchServiceIds(
-                startDate, endDate, branchServiceIds);
+        // Count appointment statuses from the daily rollup
+        List<StatusCountView> counts = branchServiceIds.isEmpty() ? List.of()
+                : rollupRepository.countByBranchServiceAndStatus(startDate, endDate, branchServiceIds);
 
-        int completed = 0;
-        int cancelled = 0;
-        int noShow = 0;
+        long appointmentCount = 0;
+        long completed = 0;
+        long cancelled = 0;
+        long noShow = 0;
 
-        // Count appointment statuses
-        for (Appointment appointment : appointmentList) {
-            String status = appointment.getStatus();
+        for (StatusCountView count : counts) {
+            appointmentCount += count.getCount();
+            String status = count.getStatus();
             if ("COMPLETED".equals(status)) {
-                completed++;
+                completed += count.getCount();
             } else if ("CANCELLED".equals(status)) {
-                cancelled++;
+                cancelled += count.getCount();
             } else if ("NO_SHOW".equals(status)) {
-                noShow++;
+                noShow += count.getCount();
             }
         }
 
@@ -124,7 +130,7 @@ public class AnalyticsService {
         result.put("district", district);
         result.put("serviceId", serviceId);
         result.put("serviceName", lookupUtil.getServiceNameById(serviceId));
-        result.put("appointmentCount", appointmentList.size());
+        result.put("appointmentCount", appointmentCount);
         result.put("completed", completed);
         result.put("cancelled", cancelled);
         result.put("no_show", noShow);
@@ -132,43 +138,50 @@ public class AnalyticsService {
         return result;
     }
 
-    // Shared private method for grouping and counting appointments
-    private org.json.JSONArray getPeakTimesArray(List<Appointment> appointmentList, String groupBy) {
-        java.util.Map<Integer, Integer> countMap = new java.util.HashMap<>();
-        if ("hour".equalsIgnoreCase(groupBy)) {
-            for (Appointment appointment : appointmentList) {
-                int hour = appointment.getTime().getHour();
-                countMap.put(hour, countMap.getOrDefault(hour, 0) + 1);
-            }
-        } else if ("dayOfWeek".equalsIgnoreCase(groupBy)) {
-            for (Appointment appointment : appointmentList) {
-                int dayOfWeek = appointment.getDate().getDayOfWeek().getValue();
-                countMap.put(dayOfWeek, countMap.getOrDefault(dayOfWeek, 0) + 1);
-            }
-        }
-        List<java.util.Map.Entry<Integer, Integer>> sortedList = new ArrayList<>(countMap.entrySet());
-        sortedList.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+    // Shared private method that orders grouped counts, busiest first
+    private org.json.JSONArray getPeakTimesArray(List<BucketCountView> counts, String groupBy) {
+        List<BucketCountView> sortedList = new ArrayList<>(counts);
+        sortedList.sort((a, b) -> b.getCount().compareTo(a.getCount()));
         org.json.JSONArray resultArray = new org.json.JSONArray();
-        for (java.util.Map.Entry<Integer, Integer> entry : sortedList) {
+        for (BucketCountView count : sortedList) {
             org.json.JSONObject obj = new org.json.JSONObject();
             if ("hour".equalsIgnoreCase(groupBy)) {
-                obj.put("hour", entry.getKey());
+                obj.put("hour", count.getBucket());
             } else {
-                obj.put("dayOfWeek", entry.getKey());
+                obj.put("dayOfWeek", count.getBucket());
             }
-            obj.put("count", entry.getValue());
+            obj.put("count", count.getCount());
             resultArray.put(obj);
         }
         return resultArray;
     }
 
+    // Groups the daily rollup by hour of day or ISO day of week (1 = Monday).
+    // A null branchServiceIds list means the whole network.
+    private List<BucketCountView> countPeakTimes(LocalDate startDate, LocalDate endDate, String groupBy,
+            List<Long> branchServiceIds) {
+        if (branchServiceIds != null && branchServiceIds.isEmpty()) {
+            return List.of();
+        }
+        if ("hour".equalsIgnoreCase(groupBy)) {
+            return branchServiceIds == null
+                    ? rollupRepository.countByHour(startDate, endDate)
+                    : rollupRepository.countByHourAndBranchServiceIds(startDate, endDate, branchServiceIds);
+        } else if ("dayOfWeek".equalsIgnoreCase(groupBy)) {
+            return branchServiceIds == null
+                    ? rollupRepository.countByDayOfWeek(startDate, endDate)
+                    : rollupRepository.countByDayOfWeekAndBranchServiceIds(startDate, endDate,
+                            branchServiceIds);
+        }
+        return List.of();
+    }
+
     // Returns appointment counts grouped by hour or day of week for the given
     // period
     public JSONObject getPeakTimes(LocalDate startDate,
             LocalDate endDate, String groupBy) {
-        List<Appointment> appointmentList = appointmentRepository
-                .findAppointmentsByPeriod(startDate, endDate);
-        org.json.JSONArray resultArray = getPeakTimesArray(appointmentList, groupBy);
+        List<BucketCountView> counts = countPeakTimes(startDate, endDate, groupBy, null);
+        org.json.JSONArray resultArray = getPeakTimesArray(counts, groupBy);
         org.json.JSONObject result = new org.json.JSONObject();
         result.put("groupBy", groupBy);
         result.put("peakTimes", resultArray);
@@ -180,9 +193,8 @@ public class AnalyticsService {
     public JSONObject getPeakTimes(String district, LocalDate startDate,
             LocalDate endDate, String groupBy) {
         List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByDistrict(district);
-        List<Appointment> appointmentList = appointmentRepository.findAppointmentsByPeriodAndBranchServiceIds(
-                startDate, endDate, branchServiceIds);
-        org.json.JSONArray resultArray = getPeakTimesArray(appointmentList, groupBy);
+        List<BucketCountView> counts = countPeakTimes(startDate, endDate, groupBy, branchServiceIds);
+        org.json.JSONArray resultArray = getPeakTimesArray(counts, groupBy);
         org.json.JSONObject result = new org.json.JSONObject();
         result.put("district", district);
         result.put("groupBy", groupBy);
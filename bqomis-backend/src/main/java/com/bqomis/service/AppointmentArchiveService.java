@@ -0,0 +1,248 @@
+package com.bqomis.service;
+
+import com.bqomis.repository.AppointmentArchiveRepository;
+import com.bqomis.repository.AppointmentArchiveRepository.ArchivedMonth;
+import com.bqomis.repository.AppointmentExportRepository;
+import com.bqomis.repository.AppointmentRow;
+import com.bqomis.repository.AppointmentSegmentStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Moves months of appointments older than the horizon out of PostgreSQL into
+// segment files (see AppointmentSegmentStore), oldest first, and reads them
+// back for exports. Each month is written, recorded in appointment_archive and
+// its partition dropped in one transaction; the partition is locked against
+// writes throughout, so no row can change between being copied and dropped.
+// Every attempt writes a new segment, so a failed one never touches a
+// segment the catalog already points at.
+// The daily rollup keeps archived months, so analytics still covers them.
+@Service
+public class AppointmentArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(AppointmentArchiveService.class);
+
+    private static final Comparator<AppointmentRow> ROW_ORDER = Comparator.comparing(AppointmentRow::date)
+            .thenComparing(AppointmentRow::time).thenComparing(AppointmentRow::id);
+
+    @Autowired
+    private AppointmentArchiveRepository archiveRepository;
+    @Autowired
+    private AppointmentSegmentStore segmentStore;
+    @Autowired
+    private AppointmentExportRepository appointmentExportRepository;
+    @Autowired
+    private AppointmentPartitionService partitionService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${bqomis.archive.enabled:false}")
+    private boolean enabled;
+    // Whole months older than this many months before the current one are archived
+    @Value("${bqomis.archive.horizon-months:12}")
+    private int horizonMonths;
+    @Value("${bqomis.archive.lock-timeout-ms:5000}")
+    private long lockTimeoutMs;
+
+    // The catalog is shared by every node, so each node must see the segments
+    // it lists. Refuses to start a node that archives without a configured
+    // directory, or that cannot read archived months from the one it has.
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkDirectory() throws IOException {
+        List<ArchivedMonth> archived = archiveRepository.findAll();
+        if (!segmentStore.isConfigured()) {
+            if (enabled || !archived.isEmpty()) {
+                throw new IllegalStateException("bqomis.archive.directory must be set to the archive volume shared "
+                        + "by every backend node" + (enabled ? " to enable archiving" : "; months are archived"));
+            }
+            return;
+        }
+        List<String> missing = new ArrayList<>();
+        for (ArchivedMonth month : archived) {
+            if (!segmentStore.exists(month.fileName())) {
+                missing.add(month.fileName());
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("bqomis.archive.directory " + segmentStore.getDirectory()
+                    + " lacks the archived segments " + missing + "; it must be the volume shared by every node");
+        }
+    }
+
+    @Scheduled(cron = "${bqomis.archive.cron:0 45 3 * * *}")
+    public void archiveExpiredMonths() {
+        if (!enabled) {
+            return;
+        }
+        // Rows of old months stranded in the default partition get their own first
+        partitionService.ensurePartitions();
+        YearMonth cutoff = YearMonth.now().minusMonths(horizonMonths);
+        for (YearMonth month : archiveRepository.findPartitionMonths()) {
+            if (!month.isBefore(cutoff)) {
+                break;
+            }
+            try {
+                long rows = archiveMonth(month);
+                log.info("Archived {} appointments of {}", rows, month);
+            } catch (RuntimeException e) {
+                // Stop here: later months must not be archived ahead of this one
+                log.warn("Archiving appointments of {} failed, retrying on the next run", month, e);
+                return;
+            }
+        }
+    }
+
+    // Rows that reach an already archived month's partition (a late booking
+    // moved out of the default partition) are merged with its segment into a
+    // new one, which the catalog then points at instead.
+    public long archiveMonth(YearMonth month) {
+        String fileName = AppointmentSegmentStore.newFileName(month);
+        Archived outcome;
+        try {
+            outcome = transactionTemplate.execute(status -> {
+                archiveRepository.lockPartition(month, lockTimeoutMs);
+                // Read under the lock, so an archiver on another node has committed or given up
+                ArchivedMonth archived = archiveRepository.findByMonth(month).orElse(null);
+                long count;
+                try (Stream<AppointmentRow> hot = appointmentExportRepository.stream(month.atDay(1),
+                        month.atEndOfMonth(), null);
+                        Stream<AppointmentRow> previous = archived != null
+                                ? segmentStore.read(archived.fileName(), null, null, null)
+                                : Stream.empty()) {
+                    count = segmentStore.write(fileName, month, merge(previous.iterator(), hot.iterator()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (archived != null) {
+                    archiveRepository.update(month, fileName, count);
+                } else {
+                    archiveRepository.insert(month, fileName, count);
+                }
+                archiveRepository.detachAndDropPartition(month);
+                return new Archived(count, archived);
+            });
+        } catch (RuntimeException e) {
+            deleteIfUncataloged(fileName);
+            throw e;
+        }
+        if (outcome.replaced() != null) {
+            // An export that read the catalog before the commit and has not
+            // opened this file yet fails and can be retried
+            segmentStore.delete(outcome.replaced().fileName());
+            log.info("Merged appointments of {} into the archived segment {}", month, fileName);
+        }
+        return outcome.rows();
+    }
+
+    private record Archived(long rows, ArchivedMonth replaced) {
+    }
+
+    // Only this attempt's own file, and only while the catalog does not point
+    // at it: a commit that failed in flight may still have recorded it
+    private void deleteIfUncataloged(String fileName) {
+        try {
+            if (!archiveRepository.isCataloged(fileName)) {
+                segmentStore.delete(fileName);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not check the archive catalog; keeping segment {}", fileName, e);
+        }
+    }
+
+    // Merges two (date, time, id) ordered row sequences into one
+    static Iterator<AppointmentRow> merge(Iterator<AppointmentRow> first, Iterator<AppointmentRow> second) {
+        return new Iterator<>() {
+            private AppointmentRow nextFirst = first.hasNext() ? first.next() : null;
+            private AppointmentRow nextSecond = second.hasNext() ? second.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextFirst != null || nextSecond != null;
+            }
+
+            @Override
+            public AppointmentRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                AppointmentRow row;
+                if (nextSecond == null || (nextFirst != null && ROW_ORDER.compare(nextFirst, nextSecond) <= 0)) {
+                    row = nextFirst;
+                    nextFirst = first.hasNext() ? first.next() : null;
+                } else {
+                    row = nextSecond;
+                    nextSecond = second.hasNext() ? second.next() : null;
+                }
+                return row;
+            }
+        };
+    }
+
+    // Archived appointments in (date, time, id) order, all of them before any
+    // row still in the database. Null arguments are not filtered on. Segments
+    // are opened one month at a time, and each is decoded a row group at a
+    // time, as the stream is consumed. Not flatMap: pulling through iterator()
+    // would buffer a whole month on the heap.
+    public Stream<AppointmentRow> stream(LocalDate dateFrom, LocalDate dateTo, Collection<Long> branchServiceIds) {
+        Set<Long> branchServiceIdSet = branchServiceIds != null ? new HashSet<>(branchServiceIds) : null;
+        Iterator<ArchivedMonth> months = archiveRepository.findAll().stream()
+                .filter(archived -> (dateFrom == null || !archived.month().atEndOfMonth().isBefore(dateFrom))
+                        && (dateTo == null || !archived.month().atDay(1).isAfter(dateTo)))
+                .iterator();
+        Iterator<AppointmentRow> rows = new Iterator<>() {
+            private Iterator<AppointmentRow> month = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!month.hasNext() && months.hasNext()) {
+                    month = read(months.next(), dateFrom, dateTo, branchServiceIdSet).iterator();
+                }
+                return month.hasNext();
+            }
+
+            @Override
+            public AppointmentRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return month.next();
+            }
+        };
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private Stream<AppointmentRow> read(ArchivedMonth archived, LocalDate dateFrom, LocalDate dateTo,
+            Set<Long> branchServiceIds) {
+        try {
+            return segmentStore.read(archived.fileName(), dateFrom, dateTo, branchServiceIds);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
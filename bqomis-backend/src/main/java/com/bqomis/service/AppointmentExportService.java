@@ -0,0 +1,156 @@
+package com.bqomis.service;
+
+import com.bqomis.dto.AppointmentDTO;
+import com.bqomis.repository.AppointmentExportRepository;
+import com.bqomis.repository.AppointmentRow;
+import com.bqomis.util.LookupUtil;
+import com.bqomis.util.MapperUtil;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+// Writes appointment exports row by row straight to the response, so an
+// export of any size needs only a buffer's worth of heap. Archived months are
+// read from their segments ahead of the rows still in the database.
+@Service
+public class AppointmentExportService {
+
+    public static final String CSV = "csv";
+    public static final String NDJSON = "ndjson";
+
+    private static final String CSV_HEADER = "id,userId,branchServiceId,branchId,branchName,serviceId,serviceName,"
+            + "date,time,status";
+
+    @Autowired
+    private AppointmentExportRepository appointmentExportRepository;
+    @Autowired
+    private AppointmentArchiveService appointmentArchiveService;
+    @Autowired
+    private LookupUtil lookupUtil;
+    @Autowired
+    private MapperUtil mapperUtil;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // The transaction keeps the database cursor open while rows are written. It
+    // is not @ReplicaReadOnly: it runs on the primary, where the locks below hold.
+    // With gzip the output is compressed and the gzip trailer written, leaving
+    // out open.
+    @Transactional(readOnly = true)
+    public void export(String format, LocalDate dateFrom, LocalDate dateTo, Long branchId, boolean gzip,
+            OutputStream out) throws IOException {
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, 64 * 1024) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(compressed != null ? compressed : out,
+                StandardCharsets.UTF_8), 64 * 1024);
+        List<Long> branchServiceIds = branchId != null ? lookupUtil.getBranchServiceIdsByBranchId(branchId) : null;
+        if (branchServiceIds != null && branchServiceIds.isEmpty()) {
+            // Unknown branch or no services: an empty export
+            if (CSV.equals(format)) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+            }
+            finish(writer, compressed);
+            return;
+        }
+        // The database query is started first: it holds locks on the partitions it
+        // reads, so none of them can be dropped by the archiver before the catalog
+        // is read. A replica would not see those locks, hence the primary.
+        try (Stream<AppointmentRow> hot = appointmentExportRepository.stream(dateFrom, dateTo, branchServiceIds);
+                Stream<AppointmentRow> rows = Stream.concat(
+                        appointmentArchiveService.stream(dateFrom, dateTo, branchServiceIds), hot)) {
+            Iterator<AppointmentRow> iterator = rows.iterator();
+            if (CSV.equals(format)) {
+                writeCsv(iterator, writer);
+            } else {
+                writeNdjson(iterator, writer);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        finish(writer, compressed);
+    }
+
+    private static void finish(Writer writer, GZIPOutputStream compressed) throws IOException {
+        writer.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+    }
+
+    private void writeCsv(Iterator<AppointmentRow> rows, Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        while (rows.hasNext()) {
+            AppointmentDTO dto = mapperUtil.toAppointmentDTO(rows.next());
+            writer.write(String.valueOf(dto.getId()));
+            writer.write(',');
+            writer.write(String.valueOf(dto.getUserId()));
+            writer.write(',');
+            writer.write(String.valueOf(dto.getBranchServiceId()));
+            writer.write(',');
+            writeCsvValue(writer, dto.getBranchId());
+            writer.write(',');
+            writeCsvValue(writer, dto.getBranchName());
+            writer.write(',');
+            writeCsvValue(writer, dto.getServiceId());
+            writer.write(',');
+            writeCsvValue(writer, dto.getServiceName());
+            writer.write(',');
+            writer.write(dto.getDate());
+            writer.write(',');
+            writer.write(dto.getTime());
+            writer.write(',');
+            writeCsvValue(writer, dto.getStatus());
+            writer.write('\n');
+        }
+    }
+
+    private void writeNdjson(Iterator<AppointmentRow> rows, Writer writer) throws IOException {
+        // One JSON object per line; the response stream stays open for the caller
+        try (SequenceWriter sequence = objectMapper.writer().withRootValueSeparator("\n")
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValues(writer)) {
+            boolean empty = true;
+            while (rows.hasNext()) {
+                sequence.write(mapperUtil.toAppointmentDTO(rows.next()));
+                empty = false;
+            }
+            if (!empty) {
+                sequence.flush();
+                writer.write('\n');
+            }
+        }
+    }
+
+    // RFC 4180 quoting for values that need it
+    private static void writeCsvValue(Writer writer, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
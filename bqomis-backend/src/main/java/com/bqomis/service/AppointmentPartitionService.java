@@ -0,0 +1,60 @@
+package com.bqomis.service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Keeps monthly appointments partitions (see V8) created ahead of the dates
+// being booked, so new rows never land in appointments_default. Runs on
+// startup and nightly; ensure_appointment_partitions only creates what is missing
+// and, since V10, holds an advisory lock so nodes running it together take turns.
+@Service
+public class AppointmentPartitionService {
+
+    private static final Logger log = LoggerFactory.getLogger(AppointmentPartitionService.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${bqomis.partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        ensurePartitions();
+    }
+
+    @Scheduled(cron = "${bqomis.partitions.maintenance-cron:0 15 3 * * *}")
+    public void ensurePartitions() {
+        LocalDate today = LocalDate.now();
+        int created = ensure(today, today.plusMonths(monthsAhead));
+
+        // Bookings further ahead than months-ahead fall into the default
+        // partition; give their months a partition too, which moves them out
+        Map<String, Object> stray = jdbcTemplate.queryForMap(
+                "SELECT MIN(date) AS first_date, MAX(date) AS last_date FROM appointments_default");
+        if (stray.get("first_date") != null) {
+            created += ensure(((Date) stray.get("first_date")).toLocalDate(),
+                    ((Date) stray.get("last_date")).toLocalDate());
+        }
+        if (created > 0) {
+            log.info("Created {} appointments partition(s)", created);
+        }
+    }
+
+    private int ensure(LocalDate from, LocalDate through) {
+        Integer created = jdbcTemplate.queryForObject("SELECT ensure_appointment_partitions(?, ?)", Integer.class,
+                from, through);
+        return created != null ? created : 0;
+    }
+}
@@ -0,0 +1,92 @@
+package com.bqomis.service;
+
+import com.bqomis.model.Appointment;
+import com.bqomis.model.AppointmentDailyRollupId;
+import com.bqomis.repository.AppointmentArchiveRepository;
+import com.bqomis.repository.AppointmentDailyRollupRepository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+// Keeps appointment_daily_rollup in step with the appointments table. The record*
+// methods must run inside the transaction that writes the appointments, so the
+// counts commit or roll back together with them.
+@Service
+public class AppointmentRollupService {
+
+    @Autowired
+    private AppointmentDailyRollupRepository rollupRepository;
+    @Autowired
+    private BranchLoadService branchLoadService;
+    @Autowired
+    private AppointmentArchiveRepository archiveRepository;
+
+    // Days re-derived from appointments by the nightly reconcile
+    @Value("${bqomis.rollup.reconcile-days:7}")
+    private int reconcileDays;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordCreated(Collection<Appointment> appointments) {
+        Map<AppointmentDailyRollupId, Long> deltas = new HashMap<>();
+        for (Appointment appointment : appointments) {
+            deltas.merge(AppointmentDailyRollupId.of(appointment), 1L, Long::sum);
+        }
+        apply(deltas);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordDeleted(Appointment appointment) {
+        apply(Map.of(AppointmentDailyRollupId.of(appointment), -1L));
+    }
+
+    // before is the bucket the appointment was counted in prior to the update
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordUpdated(AppointmentDailyRollupId before, Appointment after) {
+        AppointmentDailyRollupId current = AppointmentDailyRollupId.of(after);
+        if (current.equals(before)) {
+            return;
+        }
+        Map<AppointmentDailyRollupId, Long> deltas = new HashMap<>();
+        deltas.put(before, -1L);
+        deltas.put(current, 1L);
+        apply(deltas);
+    }
+
+    private void apply(Map<AppointmentDailyRollupId, Long> deltas) {
+        rollupRepository.applyDeltas(deltas);
+        branchLoadService.applyAfterCommit(deltas);
+    }
+
+    // Recomputes the rollup for a date range from the appointments table. Used to
+    // backfill history and to repair drift from writes that bypass the service.
+    // Archived days are left alone: their appointments are no longer in the
+    // table, and the rollup is all that analytics has of them.
+    @Transactional
+    public int rebuild(LocalDate startDate, LocalDate endDate) {
+        LocalDate watermark = archiveRepository.findWatermark();
+        if (watermark != null && startDate.isBefore(watermark)) {
+            startDate = watermark;
+        }
+        if (startDate.isAfter(endDate)) {
+            return 0;
+        }
+        rollupRepository.deleteByPeriod(startDate, endDate);
+        return rollupRepository.insertAggregatedFromAppointments(startDate, endDate);
+    }
+
+    @Scheduled(cron = "${bqomis.rollup.reconcile-cron:0 30 2 * * *}")
+    @Transactional
+    public void reconcileRecentDays() {
+        LocalDate today = LocalDate.now();
+        rebuild(today.minusDays(reconcileDays), today.plusDays(reconcileDays));
+    }
+}
@@ -1,243 +1,469 @@
 package com.bqomis.service;
 
+import com.bqomis.config.ReplicaReadOnly;
 import com.bqomis.model.Appointment;
+import com.bqomis.model.AppointmentDailyRollupId;
 import com.bqomis.dto.AppointmentDTO;
+import com.bqomis.dto.AppointmentEventDTO;
 import com.bqomis.dto.BatchAppointmentResponseDTO;
+import com.bqomis.repository.AppointmentBatchRepository;
 import com.bqomis.repository.AppointmentRepository;
+import com.bqomis.repository.AppointmentRow;
+import com.bqomis.repository.AppointmentSpecifications;
+import com.bqomis.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.RequestBody;
 
 import com.bqomis.util.LookupUtil;
 import com.bqomis.util.MapperUtil;
+import com.bqomis.util.Paging;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.ResponseEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 public class AppointmentService {
 
+    private static final Logger log = LoggerFactory.getLogger(AppointmentService.class);
+
+    // Rows written per JDBC batch and transaction by saveBatchAppointments
+    private static final int BATCH_CHUNK_SIZE = 1000;
+
     @Autowired
     private AppointmentRepository appointmentRepository;
     @Autowired
+    private AppointmentBatchRepository appointmentBatchRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AppointmentRollupService appointmentRollupService;
+    @Autowired
+    private SlotCapacityService slotCapacityService;
+    @Autowired
+    private AppointmentStreamService appointmentStreamService;
+    @Autowired
+    private AppointmentViewCache appointmentViewCache;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
     private LookupUtil lookupUtil;
     @Autowired
     private MapperUtil mapperUtil;
+    @Autowired
+    private MeterRegistry meterRegistry;
 
-    public List<AppointmentDTO> findAll() {
-        List<Appointment> appointments = appointmentRepository.findAll();
-        return mapperUtil.toAppointmentDTOList(appointments);
+    public Slice<AppointmentDTO> findAll(int page, int size, Long afterId) {
+        Slice<AppointmentRow> rows = appointmentRepository.findPageAfterId(Paging.afterId(afterId),
+                Paging.byId(page, size, afterId));
+        return toDTOSlice(rows);
     }
 
+    @Transactional
     public Optional<AppointmentDTO> findById(Long id) {
         return appointmentRepository.findById(id).map(mapperUtil::toAppointmentDTO);
     }
 
+    @Transactional
     public AppointmentDTO save(AppointmentDTO appointmentDTO) {
         Appointment appointment = mapperUtil.toAppointment(appointmentDTO);
+        // An existing id is an update: take its rollup bucket and slot before merge overwrites them
+        Optional<Appointment> existing = appointment.getId() == null ? Optional.empty()
+                : appointmentRepository.findById(appointment.getId());
+        AppointmentDailyRollupId before = existing.map(AppointmentDailyRollupId::of).orElse(null);
+        SlotCapacityService.SlotRef slotBefore = existing.map(SlotCapacityService.SlotRef::of).orElse(null);
+        Long branchServiceIdBefore = existing.map(Appointment::getBranchServiceId).orElse(null);
+        LocalDate dateBefore = existing.map(Appointment::getDate).orElse(null);
+        slotCapacityService.applyChange(slotBefore, appointment);
         Appointment savedAppointment = appointmentRepository.save(appointment);
+        if (before == null) {
+            appointmentRollupService.recordCreated(List.of(savedAppointment));
+        } else {
+            appointmentRollupService.recordUpdated(before, savedAppointment);
+        }
+        appointmentViewCache.evictAfterCommit(branchServiceIdBefore, dateBefore);
+        publishChange(before == null ? AppointmentEventDTO.CREATED : AppointmentEventDTO.UPDATED, savedAppointment,
+                branchServiceIdBefore);
         return mapperUtil.toAppointmentDTO(savedAppointment);
     }
 
+    @Transactional
     public List<AppointmentDTO> saveAll(List<AppointmentDTO> appointmentDTOs) {
-        Set<Appointment> appointments = new HashSet<>();
+        List<AppointmentDTO> savedAppointments = new ArrayList<>();
         for (AppointmentDTO appointmentDTO : appointmentDTOs) {
-            appointments.add(mapperUtil.toAppointment(appointmentDTO));
+            savedAppointments.add(save(appointmentDTO));
         }
-        List<Appointment> savedAppointments = appointmentRepository.saveAll(appointments);
-        return mapperUtil.toAppointmentDTOList(savedAppointments);
+        return savedAppointments;
     }
 
+    @Transactional
     public void deleteById(Long id) {
-        appointmentRepository.deleteById(id);
+        Optional<Appointment> appointment = appointmentRepository.findById(id);
+        if (appointment.isPresent()) {
+            appointmentRepository.delete(appointment.get());
+            appointmentRollupService.recordDeleted(appointment.get());
+            slotCapacityService.releaseAfterCommit(SlotCapacityService.SlotRef.of(appointment.get()));
+            publishChange(AppointmentEventDTO.DELETED, appointment.get(), null);
+        }
     }
 
-    public Appointment updateStatus(Long id, String status) {
+    @Transactional
+    public AppointmentDTO updateStatus(Long id, String status) {
         Optional<Appointment> optionalAppointment = appointmentRepository.findById(id);
         if (optionalAppointment.isPresent()) {
             Appointment appointment = optionalAppointment.get();
+            AppointmentDailyRollupId before = AppointmentDailyRollupId.of(appointment);
+            SlotCapacityService.SlotRef slotBefore = SlotCapacityService.SlotRef.of(appointment);
             appointment.setStatus(status);
-            return appointmentRepository.save(appointment);
+            slotCapacityService.applyChange(slotBefore, appointment);
+            Appointment savedAppointment = appointmentRepository.save(appointment);
+            appointmentRollupService.recordUpdated(before, savedAppointment);
+            publishChange(AppointmentEventDTO.UPDATED, savedAppointment, null);
+            return mapperUtil.toAppointmentDTO(savedAppointment);
         } else {
             return null;
         }
     }
 
     // MY OWN METHODS THAT DEALS WITH SPECIFIC APPOINTMENTS ACTIONS
-    public List<Appointment> findAppointmentsByDate(LocalDate date) {
-        return appointmentRepository.findAppointmentsByDate(date);
+
+    // The day views and the filtered search may be served from the replica when
+    // one is configured (see ReplicaDataSourceConfig). A user's own appointments
+    // stay on the primary, where a booking just made is always visible.
+    @ReplicaReadOnly
+    public Slice<AppointmentDTO> findAppointmentsByDate(LocalDate date, int page, int size, Long afterId) {
+        Slice<AppointmentRow> rows = appointmentRepository.findPageByDateAfterId(date, Paging.afterId(afterId),
+                Paging.byId(page, size, afterId));
+        return toDTOSlice(rows);
     }
 
-    public List<Appointment> findTodayAppointmentsByDistrict(String districtName) {
-        List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByDistrict(districtName);
+    @ReplicaReadOnly
+    public List<AppointmentDTO> findTodayAppointmentsByDistrict(String districtName) {
         LocalDate today = LocalDate.now();
-        return appointmentRepository.findAppointmentsByDateAndBranchServiceIds(today, branchServiceIds);
+        return appointmentViewCache.get(AppointmentViewCache.districtKey(today, districtName), () -> {
+            List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByDistrict(districtName);
+            return mapperUtil.toAppointmentDTOs(
+                    appointmentRepository.findAppointmentsByDateAndBranchServiceIds(today, branchServiceIds));
+        });
     }
 
-    public List<Appointment> findTodayAppointmentsByDistrictAndService(String districtName, Long serviceId) {
-        List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByDistrictAndService(districtName, serviceId);
-        return appointmentRepository.findAppointmentsByDateAndBranchServiceIds(LocalDate.now(), branchServiceIds);
+    @ReplicaReadOnly
+    public List<AppointmentDTO> findTodayAppointmentsByDistrictAndService(String districtName, Long serviceId) {
+        LocalDate today = LocalDate.now();
+        return appointmentViewCache.get(AppointmentViewCache.districtAndServiceKey(today, districtName, serviceId),
+                () -> {
+                    List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByDistrictAndService(districtName,
+                            serviceId);
+                    return mapperUtil.toAppointmentDTOs(
+                            appointmentRepository.findAppointmentsByDateAndBranchServiceIds(today, branchServiceIds));
+                });
     }
 
-    public List<Appointment> findTodayAppointmentsByBranchAndService(Long branchId, Long serviceId) {
-        List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByBranchAndService(branchId, serviceId);
-        return appointmentRepository.findAppointmentsByDateAndBranchServiceIds(LocalDate.now(), branchServiceIds);
+    @ReplicaReadOnly
+    public List<AppointmentDTO> findTodayAppointmentsByBranchAndService(Long branchId, Long serviceId) {
+        LocalDate today = LocalDate.now();
+        return appointmentViewCache.get(AppointmentViewCache.branchAndServiceKey(today, branchId, serviceId), () -> {
+            List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByBranchAndService(branchId, serviceId);
+            return mapperUtil.toAppointmentDTOs(
+                    appointmentRepository.findAppointmentsByDateAndBranchServiceIds(today, branchServiceIds));
+        });
     }
 
-    public List<Appointment> findTodayAppointmentsByBranch(Long branchId) {
-        List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByBranchId(branchId);
-        return appointmentRepository.findAppointmentsByDateAndBranchServiceIds(LocalDate.now(), branchServiceIds);
+    @ReplicaReadOnly
+    public List<AppointmentDTO> findTodayAppointmentsByBranch(Long branchId) {
+        return findAppointmentsByDateAndBranchId(LocalDate.now(), branchId);
     }
 
-    public List<Appointment> findAppointmentsByDateAndBranchServiceId(LocalDate date, Long branchServiceId) {
-        return appointmentRepository.findAppointmentsByDateAndBranchServiceId(date, branchServiceId);
+    @ReplicaReadOnly
+    public List<AppointmentDTO> findAppointmentsByDateAndBranchServiceId(LocalDate date, Long branchServiceId) {
+        return appointmentViewCache.get(AppointmentViewCache.branchServiceKey(date, branchServiceId),
+                () -> mapperUtil.toAppointmentDTOs(
+                        appointmentRepository.findAppointmentsByDateAndBranchServiceId(date, branchServiceId)));
     }
 
-    public List<Appointment> findAppointmentsByDateAndBranchId(LocalDate date, Long branchId) {
-        List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByBranchId(branchId);
-        return appointmentRepository.findAppointmentsByDateAndBranchServiceIds(date, branchServiceIds);
+    @ReplicaReadOnly
+    public List<AppointmentDTO> findAppointmentsByDateAndBranchId(LocalDate date, Long branchId) {
+        return appointmentViewCache.get(AppointmentViewCache.branchKey(date, branchId), () -> {
+            List<Long> branchServiceIds = lookupUtil.getBranchServiceIdsByBranchId(branchId);
+            return mapperUtil.toAppointmentDTOs(
+                    appointmentRepository.findAppointmentsByDateAndBranchServiceIds(date, branchServiceIds));
+        });
     }
 
-    public List<AppointmentDTO> findAppointmentsByUserId(Long userId) {
-        List<Appointment> appointments = appointmentRepository.findAppointmentsByUserId(userId);
-        return mapperUtil.toAppointmentDTOList(appointments);
+    public Slice<AppointmentDTO> findAppointmentsByUserId(Long userId, int page, int size, Long afterId) {
+        Slice<AppointmentRow> rows = appointmentRepository.findPageByUserIdAfterId(userId,
+                Paging.afterId(afterId), Paging.byId(page, size, afterId));
+        return toDTOSlice(rows);
     }
 
-    public Page<AppointmentDTO> findFilteredAppointments(String dateFrom, String dateTo, Long branchId, Long serviceId,
-            String status, String districtName, Pageable pageable) {
-
-        List<Appointment> allAppointments = getOptimalAppointmentList(dateFrom, dateTo, branchId,
-                serviceId, districtName);
-        System.out.println("All Appointments pulled optimally: " + allAppointments.size());
-
-        List<Appointment> filtered = allAppointments.stream()
-                .filter(a -> {
-                    boolean matches = true;
-                    if (dateFrom != null) {
-                        matches &= !a.getDate().isBefore(LocalDate.parse(dateFrom));
-                    }
-                    if (dateTo != null) {
-                        matches &= !a.getDate().isAfter(LocalDate.parse(dateTo));
-                    }
-                    if (branchId != null) {
-                        Long[] ids = lookupUtil.getBranchIdAndServiceIdByBranchServiceId(a.getBranchServiceId());
-                        matches &= ids[0].equals(branchId);
-                    }
-                    if (serviceId != null) {
-                        Long[] ids = lookupUtil.getBranchIdAndServiceIdByBranchServiceId(a.getBranchServiceId());
-                        matches &= ids[1].equals(serviceId);
-                    }
-                    if (status != null) {
-                        matches &= status.equalsIgnoreCase(a.getStatus());
-                    }
-                    if (districtName != null) {
-                        String district = lookupUtil.getDistrictByBranchId(
-                                lookupUtil.getBranchIdAndServiceIdByBranchServiceId(a.getBranchServiceId())[0]);
-                        matches &= districtName.equalsIgnoreCase(district);
-                    }
-                    return matches;
-                })
-                .collect(Collectors.toList());
-
-        System.out.println("Filtered Appointments: " + filtered.size());
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), filtered.size());
-        List<AppointmentDTO> dtos = mapperUtil.toAppointmentDTOList(filtered.subList(start, end));
-        return new PageImpl<>(dtos, pageable, filtered.size());
+    private Slice<AppointmentDTO> toDTOSlice(Slice<AppointmentRow> rows) {
+        return new SliceImpl<>(mapperUtil.toAppointmentDTOs(rows.getContent()), rows.getPageable(),
+                rows.hasNext());
     }
 
-    private List<Appointment> getOptimalAppointmentList(String dateFrom, String dateTo, Long branchId, Long serviceId,
-            String districtName) {
-        LocalDate startDate = dateFrom != null ? LocalDate.parse(dateFrom) : null;
-        LocalDate endDate = dateTo != null ? LocalDate.parse(dateTo) : null;
-
-        List<Long> branchServiceIds = new ArrayList<>();
-
-        if (branchId != null && serviceId != null) {
-            branchServiceIds = lookupUtil.getBranchServiceIdsByBranchAndService(branchId, serviceId);
+    // A Page with totals for offset requests; a Slice for keyset requests,
+    // which would otherwise need the full COUNTs that seeking avoids
+    @ReplicaReadOnly
+    public Slice<AppointmentDTO> findFilteredAppointments(String dateFrom, String dateTo, Long branchId, Long serviceId,
+            String status, String districtName, String afterDate, String afterTime, Long afterId,
+            Pageable pageable) {
+
+        List<Long> branchServiceIds = resolveBranchServiceIds(branchId, serviceId, districtName);
+        if (branchServiceIds != null && branchServiceIds.isEmpty()) {
+            // The branch/service/district combination matches nothing
+            return Page.empty(pageable);
         }
 
-        if (branchServiceIds.isEmpty() && (districtName != null && serviceId != null)) {
-            branchServiceIds = lookupUtil.getBranchServiceIdsByDistrictAndService(districtName, serviceId);
+        Specification<Appointment> filter = Specification.allOf(
+                AppointmentSpecifications.dateOnOrAfter(dateFrom != null ? LocalDate.parse(dateFrom) : null),
+                AppointmentSpecifications.dateOnOrBefore(dateTo != null ? LocalDate.parse(dateTo) : null),
+                AppointmentSpecifications.hasStatus(status),
+                AppointmentSpecifications.branchServiceIdIn(branchServiceIds));
+
+        if (afterDate == null || afterTime == null || afterId == null) {
+            // Offset pagination: LIMIT/OFFSET plus a separate COUNT, both run in the database
+            Pageable sortedPageable = PageRequest.of(pageable.getPageNumber(),
+                    Paging.clampSize(pageable.getPageSize()), AppointmentSpecifications.KEYSET_SORT);
+            return appointmentRepository.findAll(filter, sortedPageable).map(mapperUtil::toAppointmentDTO);
         }
 
-        if (branchServiceIds.isEmpty() && branchId != null) {
-            branchServiceIds = lookupUtil.getBranchServiceIdsByBranchId(branchId);
-        }
+        // Keyset pagination for deep pages: seek past the last row the client saw
+        // instead of making the database skip over every earlier row. One row
+        // past the page says whether another follows; the page number the
+        // client sent is ignored.
+        Specification<Appointment> seek = filter.and(AppointmentSpecifications.after(
+                LocalDate.parse(afterDate), LocalTime.parse(afterTime), afterId));
+        int size = Paging.clampSize(pageable.getPageSize());
+        List<Appointment> rows = appointmentRepository.findBy(seek,
+                query -> query.sortBy(AppointmentSpecifications.KEYSET_SORT).limit(size + 1).all());
+        boolean hasNext = rows.size() > size;
+        List<Appointment> content = hasNext ? rows.subList(0, size) : rows;
+        return new SliceImpl<>(mapperUtil.toAppointmentDTOList(content),
+                PageRequest.of(0, size, AppointmentSpecifications.KEYSET_SORT), hasNext);
+    }
 
-        if (branchServiceIds.isEmpty() && serviceId != null) {
-            branchServiceIds = lookupUtil.getBranchServiceIdsByServiceId(serviceId);
+    // Resolves the branch/service/district filters to the branch service ids they
+    // cover. Returns null when none of them is set, i.e. no restriction.
+    private List<Long> resolveBranchServiceIds(Long branchId, Long serviceId, String districtName) {
+        if (branchId != null) {
+            if (districtName != null && !districtName.equalsIgnoreCase(lookupUtil.getDistrictByBranchId(branchId))) {
+                return List.of();
+            }
+            return serviceId != null
+                    ? lookupUtil.getBranchServiceIdsByBranchAndService(branchId, serviceId)
+                    : lookupUtil.getBranchServiceIdsByBranchId(branchId);
         }
-
-        if (branchServiceIds.isEmpty() && districtName != null) {
-            branchServiceIds = lookupUtil.getBranchServiceIdsByDistrict(districtName);
+        if (districtName != null) {
+            return serviceId != null
+                    ? lookupUtil.getBranchServiceIdsByDistrictAndService(districtName, serviceId)
+                    : lookupUtil.getBranchServiceIdsByDistrict(districtName);
         }
-
-        if (branchServiceIds.isEmpty()) {
-            if (startDate != null && endDate != null) {
-                return appointmentRepository.findAppointmentsByPeriod(startDate, endDate);
-            } else if (startDate != null) {
-                return appointmentRepository.findAppointmentsAfterOrEqualDate(startDate);
-            } else if (endDate != null) {
-                return appointmentRepository.findAppointmentsBeforeOrEqualDate(endDate);
-            }
-        } else {
-            System.out.println("Branch Service IDs: " + branchServiceIds.size());
-            if (startDate != null && endDate != null) {
-                return appointmentRepository.findAppointmentsByPeriodAndBranchServiceIds(startDate, endDate,
-                        branchServiceIds);
-            } else if (startDate != null) {
-                return appointmentRepository.findAppointmentsByDateAfterAndBranchServiceIds(startDate,
-                        branchServiceIds);
-            } else if (endDate != null) {
-                return appointmentRepository.findAppointmentsByDateBeforeAndBranchServiceIds(endDate,
-                        branchServiceIds);
-            }
+        if (serviceId != null) {
+            return lookupUtil.getBranchServiceIdsByServiceId(serviceId);
         }
-
-        System.out.println("HAVE TO FIND ALL!");
-
-        return appointmentRepository.findAll();
+        return null;
     }
 
     public BatchAppointmentResponseDTO saveBatchAppointments(List<AppointmentDTO> appointmentDTOs) {
+        Timer.Sample sample = Timer.start(meterRegistry);
         BatchAppointmentResponseDTO response = new BatchAppointmentResponseDTO();
         List<BatchAppointmentResponseDTO.Failure> failures = new ArrayList<>();
         int totalSubmitted = appointmentDTOs.size();
         int successfullyCreated = 0;
 
+        // Validate every row up front so the inserts below rarely fail
+        List<Appointment> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        Set<Long> userIds = new HashSet<>();
+        for (AppointmentDTO appointmentDTO : appointmentDTOs) {
+            if (appointmentDTO != null && appointmentDTO.getUserId() != null) {
+                userIds.add(appointmentDTO.getUserId());
+            }
+        }
+        Set<Long> existingUserIds = userIds.isEmpty() ? Set.of()
+                : new HashSet<>(userRepository.findExistingIds(userIds));
         for (int i = 0; i < appointmentDTOs.size(); i++) {
             AppointmentDTO appointmentDTO = appointmentDTOs.get(i);
             try {
-                Appointment appointment = mapperUtil.toAppointment(appointmentDTO);
-                appointmentRepository.save(appointment);
-                successfullyCreated++;
+                String error = validateForInsert(appointmentDTO, existingUserIds);
+                if (error != null) {
+                    failures.add(batchFailure(i, appointmentDTO, error));
+                    continue;
+                }
+                valid.add(mapperUtil.toAppointment(appointmentDTO));
+                validIndexes.add(i);
             } catch (Exception e) {
-                HashMap<String, Object> data = new HashMap<>();
-                data.put("userId", appointmentDTO.getUserId());
-                data.put("branchServiceId", appointmentDTO.getBranchServiceId());
-                data.put("date", appointmentDTO.getDate());
-                data.put("time", appointmentDTO.getTime());
-                data.put("status", appointmentDTO.getStatus());
-                failures.add(new BatchAppointmentResponseDTO.Failure(i, data, e.getMessage()));
+                failures.add(batchFailure(i, appointmentDTO, e.getMessage()));
+            }
+        }
+
+        // Write valid rows as JDBC batches, one transaction per chunk. Rows
+        // whose slot is full are reported as failures.
+        for (int start = 0; start < valid.size(); start += BATCH_CHUNK_SIZE) {
+            int end = Math.min(start + BATCH_CHUNK_SIZE, valid.size());
+            List<Appointment> chunk = valid.subList(start, end);
+            try {
+                BitSet refused = transactionTemplate.execute(status -> insertAndCount(chunk));
+                successfullyCreated += chunk.size() - refused.cardinality();
+                for (int j = refused.nextSetBit(0); j >= 0; j = refused.nextSetBit(j + 1)) {
+                    int inputIndex = validIndexes.get(start + j);
+                    failures.add(slotFullFailure(inputIndex, appointmentDTOs.get(inputIndex), chunk.get(j)));
+                }
+            } catch (DataAccessException e) {
+                // Something slipped past validation (e.g. a user deleted meanwhile):
+                // retry this chunk row by row to report exactly which rows failed
+                for (int j = start; j < end; j++) {
+                    Appointment appointment = valid.get(j);
+                    int inputIndex = validIndexes.get(j);
+                    try {
+                        BitSet refused = transactionTemplate.execute(
+                                status -> insertAndCount(List.of(appointment)));
+                        if (refused.isEmpty()) {
+                            successfullyCreated++;
+                        } else {
+                            failures.add(slotFullFailure(inputIndex, appointmentDTOs.get(inputIndex), appointment));
+                        }
+                    } catch (DataAccessException rowError) {
+                        failures.add(batchFailure(inputIndex, appointmentDTOs.get(inputIndex),
+                                rowError.getMostSpecificCause().getMessage()));
+                    }
+                }
             }
         }
+        failures.sort(Comparator.comparingInt(BatchAppointmentResponseDTO.Failure::getInputIndex));
 
         response.setTotalSubmitted(totalSubmitted);
         response.setSuccessfullyCreated(successfullyCreated);
         response.setFailedCount(failures.size());
         response.setFailures(failures);
 
+        // Throughput = rows created / batch duration
+        sample.stop(meterRegistry.timer("bqomis.appointments.batch"));
+        meterRegistry.counter("bqomis.appointments.batch.rows", "outcome", "created").increment(successfullyCreated);
+        meterRegistry.counter("bqomis.appointments.batch.rows", "outcome", "failed").increment(failures.size());
+        log.info("Batch appointments: {} submitted, {} created, {} failed", totalSubmitted, successfullyCreated,
+                failures.size());
+
         return response;
     }
-}
\ No newline at end of file
+
+    // Inserts the rows whose slots have room and returns the positions of the
+    // ones refused
+    private BitSet insertAndCount(List<Appointment> appointments) {
+        BitSet refused = slotCapacityService.reserveBatch(appointments);
+        List<Appointment> admitted = appointments;
+        if (!refused.isEmpty()) {
+            admitted = new ArrayList<>();
+            for (int i = refused.nextClearBit(0); i < appointments.size(); i = refused.nextClearBit(i + 1)) {
+                admitted.add(appointments.get(i));
+            }
+            if (admitted.isEmpty()) {
+                return refused;
+            }
+        }
+        appointmentBatchRepository.batchInsert(admitted);
+        appointmentRollupService.recordCreated(admitted);
+        slotCapacityService.invalidateAfterCommit(admitted);
+        appointmentViewCache.evictAfterCommit(admitted);
+        // One reload per branch instead of an event per imported row
+        Set<Long> branchIds = new HashSet<>();
+        for (Appointment appointment : admitted) {
+            branchIds.add(lookupUtil.getBranchIdByBranchServiceId(appointment.getBranchServiceId()));
+        }
+        appointmentStreamService.resyncAfterCommit(branchIds);
+        return refused;
+    }
+
+    // Evicts the cached day views the change touches and streams it to
+    // subscribed dashboards, both once the transaction commits.
+    // branchServiceIdBefore is where the appointment was before an update, so
+    // the branch it moved away from hears about it too.
+    private void publishChange(String type, Appointment appointment, Long branchServiceIdBefore) {
+        appointmentViewCache.evictAfterCommit(appointment.getBranchServiceId(), appointment.getDate());
+        Set<Long> branchIds = new HashSet<>();
+        long branchId = lookupUtil.getBranchIdByBranchServiceId(appointment.getBranchServiceId());
+        if (branchId != LookupUtil.NO_ID) {
+            branchIds.add(branchId);
+        }
+        if (branchServiceIdBefore != null) {
+            long previousBranchId = lookupUtil.getBranchIdByBranchServiceId(branchServiceIdBefore);
+            if (previousBranchId != LookupUtil.NO_ID) {
+                branchIds.add(previousBranchId);
+            }
+        }
+        if (branchIds.isEmpty()) {
+            return;
+        }
+        AppointmentEventDTO event = new AppointmentEventDTO();
+        event.setType(type);
+        event.setAppointmentId(appointment.getId());
+        event.setBranchId(branchId != LookupUtil.NO_ID ? branchId : null);
+        event.setDate(appointment.getDate().toString());
+        if (!AppointmentEventDTO.DELETED.equals(type)) {
+            event.setAppointment(mapperUtil.toAppointmentDTO(appointment));
+        }
+        appointmentStreamService.publishAfterCommit(event, branchIds);
+    }
+
+    // Returns why the row cannot be inserted, or null if it is valid
+    private String validateForInsert(AppointmentDTO appointmentDTO, Set<Long> existingUserIds) {
+        if (appointmentDTO == null) {
+            return "Appointment is null";
+        }
+        if (appointmentDTO.getUserId() == null || !existingUserIds.contains(appointmentDTO.getUserId())) {
+            return "Unknown userId: " + appointmentDTO.getUserId();
+        }
+        if (appointmentDTO.getBranchServiceId() == null
+                || lookupUtil.getBranchIdByBranchServiceId(appointmentDTO.getBranchServiceId()) == LookupUtil.NO_ID) {
+            return "Unknown branchServiceId: " + appointmentDTO.getBranchServiceId();
+        }
+        if (appointmentDTO.getDate() == null || appointmentDTO.getTime() == null) {
+            return "Date and time are required";
+        }
+        if (appointmentDTO.getStatus() == null) {
+            return "Status is required";
+        }
+        return null;
+    }
+
+    private BatchAppointmentResponseDTO.Failure slotFullFailure(int index, AppointmentDTO appointmentDTO,
+            Appointment appointment) {
+        return batchFailure(index, appointmentDTO,
+                SlotCapacityService.slotFullMessage(SlotCapacityService.SlotRef.of(appointment)));
+    }
+
+    private BatchAppointmentResponseDTO.Failure batchFailure(int index, AppointmentDTO appointmentDTO, String error) {
+        HashMap<String, Object> data = new HashMap<>();
+        if (appointmentDTO != null) {
+            data.put("userId", appointmentDTO.getUserId());
+            data.put("branchServiceId", appointmentDTO.getBranchServiceId());
+            data.put("date", appointmentDTO.getDate());
+            data.put("time", appointmentDTO.getTime());
+            data.put("status", appointmentDTO.getStatus());
+        }
+        return new BatchAppointmentResponseDTO.Failure(index, data, error);
+    }
+}
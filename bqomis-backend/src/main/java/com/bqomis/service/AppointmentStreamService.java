@@ -0,0 +1,339 @@
+package com.bqomis.service;
+
+import com.bqomis.dto.AppointmentEventDTO;
+import com.bqomis.util.LookupUtil;
+import com.bqomis.util.TransactionCallbacks;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Pushes appointment changes to staff dashboards over Server-Sent Events.
+// Every subscriber has a bounded queue drained by a sender pool, so a slow
+// client never blocks the request that changed the appointment; when its
+// queue overflows the backlog is dropped and it gets one RESYNC event telling
+// it to reload.
+//
+// SseEmitter.send blocks while the client's socket buffer is full. A
+// subscriber occupies at most one sender thread at a time and the pool grows
+// past sender-threads on demand, so a stalled client only holds its own
+// thread; one whose send has not returned within send-timeout-ms is dropped
+// and its emitter completed once the write gives up. Once max-sender-threads
+// are busy, e.g. fanning one event out to hundreds of screens, further drains
+// wait in a queue that every sender thread works through after its own drain,
+// and that is resubmitted every retry-ms in case all of them went idle first.
+@Service
+public class AppointmentStreamService {
+
+    @Autowired
+    private LookupUtil lookupUtil;
+
+    @Value("${bqomis.stream.buffer-size:256}")
+    private int bufferSize;
+    @Value("${bqomis.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+    @Value("${bqomis.stream.sender-threads:2}")
+    private int senderThreads;
+    @Value("${bqomis.stream.max-sender-threads:64}")
+    private int maxSenderThreads;
+    @Value("${bqomis.stream.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    private ThreadPoolExecutor sender;
+    // Subscribers whose drain found every sender thread busy; their draining
+    // flag stays set, so each is queued at most once
+    private final ConcurrentLinkedQueue<Subscriber> pending = new ConcurrentLinkedQueue<>();
+
+    // Subscribers indexed by scope, so a change only visits interested screens
+    private final ConcurrentHashMap<Long, Set<Subscriber>> byBranch = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Subscriber>> byDistrict = new ConcurrentHashMap<>();
+    private final Set<Subscriber> networkWide = ConcurrentHashMap.newKeySet();
+    private final Set<Subscriber> everything = ConcurrentHashMap.newKeySet();
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final Long branchId;
+        final String district;
+        final ArrayBlockingQueue<AppointmentEventDTO> queue = new ArrayBlockingQueue<>(bufferSize);
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile boolean overflowed;
+        volatile boolean heartbeatDue;
+        volatile boolean closed;
+        // System.nanoTime() when the send in progress started, 0 when idle
+        volatile long sendingSince;
+
+        Subscriber(SseEmitter emitter, Long branchId, String district) {
+            this.emitter = emitter;
+            this.branchId = branchId;
+            this.district = district;
+        }
+
+        void offer(AppointmentEventDTO event) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                // Too far behind: drop the backlog, a RESYNC replaces it
+                overflowed = true;
+                queue.clear();
+            }
+            scheduleDrain();
+        }
+
+        void scheduleDrain() {
+            if (draining.compareAndSet(false, true) && !submit(this)) {
+                pending.offer(this);
+            }
+        }
+
+        boolean hasWork() {
+            return !queue.isEmpty() || overflowed || heartbeatDue;
+        }
+
+        void drain() {
+            try {
+                if (overflowed) {
+                    overflowed = false;
+                    AppointmentEventDTO resync = new AppointmentEventDTO();
+                    resync.setType(AppointmentEventDTO.RESYNC);
+                    resync.setBranchId(branchId);
+                    send(SseEmitter.event().name(resync.getType()).data(resync));
+                }
+                AppointmentEventDTO event;
+                while (!closed && (event = queue.poll()) != null) {
+                    send(SseEmitter.event().name(event.getType()).data(event));
+                }
+                if (!closed && heartbeatDue) {
+                    heartbeatDue = false;
+                    send(SseEmitter.event().comment("heartbeat"));
+                }
+            } catch (IOException | IllegalStateException e) {
+                remove(this);
+            } finally {
+                draining.set(false);
+            }
+            if (closed) {
+                // Dropped for stalling while a send was blocked; the emitter
+                // could not be completed until that send returned
+                try {
+                    emitter.complete();
+                } catch (IllegalStateException e) {
+                    // Already completed
+                }
+                return;
+            }
+            // Events offered after the last poll but before the flag was cleared
+            if (hasWork()) {
+                scheduleDrain();
+            }
+        }
+
+        void send(SseEmitter.SseEventBuilder event) throws IOException {
+            sendingSince = System.nanoTime();
+            try {
+                emitter.send(event);
+            } finally {
+                sendingSince = 0;
+            }
+        }
+
+        boolean isStalled(long now) {
+            long since = sendingSince;
+            return since != 0 && now - since > TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Hands each drain straight to a thread, starting one when all are busy
+        sender = new ThreadPoolExecutor(senderThreads, Math.max(senderThreads, maxSenderThreads),
+                60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "appointment-stream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // Runs the subscriber's drain, then any that were queued while every
+    // thread was busy. False when the pool is at max-sender-threads.
+    private boolean submit(Subscriber subscriber) {
+        try {
+            sender.execute(() -> {
+                subscriber.drain();
+                Subscriber next;
+                while ((next = pending.poll()) != null) {
+                    next.drain();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    // Picks up drains queued just as the last busy thread stopped looking
+    @Scheduled(fixedDelayString = "${bqomis.stream.retry-ms:200}")
+    public void resubmitPending() {
+        Subscriber subscriber;
+        while ((subscriber = pending.poll()) != null) {
+            if (!submit(subscriber)) {
+                pending.offer(subscriber);
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        for (Subscriber subscriber : everything) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    // A stream of changes for one branch, one district, or (neither) the whole network
+    public SseEmitter subscribe(Long branchId, String district) {
+        return subscribe(new SseEmitter(timeoutMs), branchId, district);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, Long branchId, String district) {
+        Subscriber subscriber = new Subscriber(emitter, branchId, districtKey(district));
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        everything.add(subscriber);
+        if (subscriber.branchId != null) {
+            add(byBranch, subscriber.branchId, subscriber);
+        } else if (subscriber.district != null) {
+            add(byDistrict, subscriber.district, subscriber);
+        } else {
+            networkWide.add(subscriber);
+        }
+        return emitter;
+    }
+
+    // Fans the event out to every subscriber of the given branches once the
+    // current transaction commits. An appointment moved between branches is
+    // published to both.
+    public void publishAfterCommit(AppointmentEventDTO event, Collection<Long> branchIds) {
+        TransactionCallbacks.afterCommit(() -> publish(event, branchIds));
+    }
+
+    // Tells the subscribers of these branches to reload, e.g. after a bulk import
+    public void resyncAfterCommit(Collection<Long> branchIds) {
+        TransactionCallbacks.afterCommit(() -> {
+            for (Long branchId : branchIds) {
+                AppointmentEventDTO resync = new AppointmentEventDTO();
+                resync.setType(AppointmentEventDTO.RESYNC);
+                resync.setBranchId(branchId);
+                publish(resync, Set.of(branchId));
+            }
+        });
+    }
+
+    public int getSubscriberCount() {
+        return everything.size();
+    }
+
+    // Keeps idle connections open through proxies and finds dead clients
+    @Scheduled(fixedDelayString = "${bqomis.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : everything) {
+            subscriber.heartbeatDue = true;
+            subscriber.scheduleDrain();
+        }
+    }
+
+    // Drops subscribers whose send has been blocked for longer than send-timeout-ms
+    @Scheduled(fixedDelayString = "${bqomis.stream.stall-check-ms:1000}")
+    public void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : everything) {
+            if (subscriber.isStalled(now)) {
+                remove(subscriber);
+                subscriber.queue.clear();
+            }
+        }
+    }
+
+    private void publish(AppointmentEventDTO event, Collection<Long> branchIds) {
+        if (everything.isEmpty()) {
+            return;
+        }
+        // Both branches of a move can be in the same district
+        Set<String> districts = new HashSet<>();
+        for (Long branchId : branchIds) {
+            deliver(byBranch.get(branchId), event);
+            String district = districtKey(lookupUtil.getDistrictByBranchId(branchId));
+            if (district != null) {
+                districts.add(district);
+            }
+        }
+        for (String district : districts) {
+            deliver(byDistrict.get(district), event);
+        }
+        deliver(networkWide, event);
+    }
+
+    private static void deliver(Set<Subscriber> subscribers, AppointmentEventDTO event) {
+        if (subscribers != null) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscriber.closed = true;
+        everything.remove(subscriber);
+        if (subscriber.branchId != null) {
+            remove(byBranch, subscriber.branchId, subscriber);
+        } else if (subscriber.district != null) {
+            remove(byDistrict, subscriber.district, subscriber);
+        } else {
+            networkWide.remove(subscriber);
+        }
+    }
+
+    // Adding and removing under the map's per-key lock keeps a subscriber from
+    // joining a set just as its last member's removal unmaps it
+    private static <K> void add(ConcurrentHashMap<K, Set<Subscriber>> index, K key, Subscriber subscriber) {
+        index.compute(key, (k, subscribers) -> {
+            Set<Subscriber> set = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            set.add(subscriber);
+            return set;
+        });
+    }
+
+    private static <K> void remove(ConcurrentHashMap<K, Set<Subscriber>> index, K key, Subscriber subscriber) {
+        index.computeIfPresent(key, (k, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private static String districtKey(String district) {
+        return district == null ? null : district.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,200 @@
+package com.bqomis.service;
+
+import com.bqomis.dto.AppointmentDTO;
+import com.bqomis.model.Appointment;
+import com.bqomis.util.LookupUtil;
+import com.bqomis.util.TransactionCallbacks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+// Per-day appointment DTO lists for a branch, district or branch service, as served
+// by the /today and /date endpoints. Entries are keyed by scope and date and
+// evicted by AppointmentService whenever an appointment in that scope and date
+// changes; the TTL in spring.cache.caffeine.spec only bounds what a read racing
+// a commit can leave behind.
+//
+// Other backend nodes hear about a change through a NOTIFY on the
+// appointment_views channel, sent in the writing transaction so it is only
+// delivered if that commits. ReferenceDataSyncService listens for it next to
+// the reference data channel. With bqomis.sync.enabled=false (a single node)
+// nothing is sent.
+//
+// With a read replica (see ReplicaDataSource) a view reloaded right after an
+// eviction may be read from a replica that has not replayed the write yet, so
+// evicted keys are evicted again once the replica is bound to have caught up.
+@Component
+public class AppointmentViewCache {
+
+    public static final String CACHE_NAME = "appointmentViews";
+    public static final String CHANNEL = "appointment_views";
+
+    private static final String NOTIFY_SQL = "SELECT pg_notify(?, ?)";
+    // NOTIFY payloads must stay under 8000 bytes
+    private static final int MAX_PAYLOAD = 7000;
+
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private LookupUtil lookupUtil;
+    @Autowired
+    private TaskScheduler taskScheduler;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${bqomis.sync.enabled:true}")
+    private boolean notifyOtherNodes;
+
+    @Value("${bqomis.datasource.replica.url:}")
+    private String replicaUrl;
+    @Value("${bqomis.datasource.replica.max-lag-ms:5000}")
+    private long replicaMaxLagMs;
+    @Value("${bqomis.datasource.replica.check-interval-ms:1000}")
+    private long replicaCheckIntervalMs;
+
+    private Cache cache;
+    // Null without a replica
+    private Duration replicaEvictionDelay;
+
+    @PostConstruct
+    public void init() {
+        cache = cacheManager.getCache(CACHE_NAME);
+        if (!replicaUrl.isEmpty()) {
+            // Lag is only checked every interval, so it can exceed max-lag by that much
+            replicaEvictionDelay = Duration.ofMillis(replicaMaxLagMs + replicaCheckIntervalMs);
+        }
+    }
+
+    public static String branchKey(LocalDate date, long branchId) {
+        return "branch:" + date + ":" + branchId;
+    }
+
+    public static String branchServiceKey(LocalDate date, long branchServiceId) {
+        return "bs:" + date + ":" + branchServiceId;
+    }
+
+    public static String branchAndServiceKey(LocalDate date, long branchId, long serviceId) {
+        return "branch-service:" + date + ":" + branchId + ":" + serviceId;
+    }
+
+    public static String districtKey(LocalDate date, String district) {
+        return "district:" + date + ":" + normalise(district);
+    }
+
+    public static String districtAndServiceKey(LocalDate date, String district, long serviceId) {
+        return "district-service:" + date + ":" + normalise(district) + ":" + serviceId;
+    }
+
+    // Cached lists are shared between requests and must not be modified
+    public List<AppointmentDTO> get(String key, Supplier<List<AppointmentDTO>> loader) {
+        return cache.get(key, () -> List.copyOf(loader.get()));
+    }
+
+    // Evicts every view containing appointments of this branch service on this
+    // date, here and on the other nodes, once the current transaction commits
+    public void evictAfterCommit(Long branchServiceId, LocalDate date) {
+        if (branchServiceId == null || date == null) {
+            return;
+        }
+        evictAfterCommit(Set.of(branchServiceId + "@" + date));
+    }
+
+    public void evictAfterCommit(Collection<Appointment> appointments) {
+        Set<String> changes = new HashSet<>();
+        for (Appointment appointment : appointments) {
+            changes.add(appointment.getBranchServiceId() + "@" + appointment.getDate());
+        }
+        evictAfterCommit(changes);
+    }
+
+    // Applies an appointment_views notification from another node
+    public void evictNotified(String payload) {
+        evict(keys(List.of(payload.split(","))));
+    }
+
+    // After the listener reconnects: notifications may have been missed
+    public void evictAll() {
+        cache.clear();
+    }
+
+    // Each change is "branchServiceId@date"
+    private void evictAfterCommit(Set<String> changes) {
+        if (notifyOtherNodes) {
+            notifyOtherNodes(changes);
+        }
+        Set<String> keys = keys(changes);
+        TransactionCallbacks.afterCommit(() -> evict(keys));
+    }
+
+    private void notifyOtherNodes(Set<String> changes) {
+        StringBuilder payload = new StringBuilder();
+        for (String change : changes) {
+            if (payload.length() + change.length() >= MAX_PAYLOAD) {
+                jdbcTemplate.query(NOTIFY_SQL, rs -> null, CHANNEL, payload.toString());
+                payload.setLength(0);
+            }
+            if (payload.length() > 0) {
+                payload.append(',');
+            }
+            payload.append(change);
+        }
+        if (payload.length() > 0) {
+            jdbcTemplate.query(NOTIFY_SQL, rs -> null, CHANNEL, payload.toString());
+        }
+    }
+
+    private Set<String> keys(Collection<String> changes) {
+        Set<String> keys = new HashSet<>();
+        for (String change : changes) {
+            int at = change.indexOf('@');
+            if (at > 0) {
+                addKeys(keys, Long.parseLong(change.substring(0, at)), LocalDate.parse(change.substring(at + 1)));
+            }
+        }
+        return keys;
+    }
+
+    private void evict(Set<String> keys) {
+        keys.forEach(cache::evict);
+        if (replicaEvictionDelay != null) {
+            taskScheduler.schedule(() -> keys.forEach(cache::evict), Instant.now().plus(replicaEvictionDelay));
+        }
+    }
+
+    private void addKeys(Set<String> keys, long branchServiceId, LocalDate date) {
+        keys.add(branchServiceKey(date, branchServiceId));
+        long branchId = lookupUtil.getBranchIdByBranchServiceId(branchServiceId);
+        long serviceId = lookupUtil.getServiceIdByBranchServiceId(branchServiceId);
+        if (branchId == LookupUtil.NO_ID) {
+            return;
+        }
+        keys.add(branchKey(date, branchId));
+        keys.add(branchAndServiceKey(date, branchId, serviceId));
+        String district = lookupUtil.getDistrictByBranchId(branchId);
+        if (district != null) {
+            keys.add(districtKey(date, district));
+            keys.add(districtAndServiceKey(date, district, serviceId));
+        }
+    }
+
+    private static String normalise(String district) {
+        return district == null ? "" : district.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,187 @@
+package com.bqomis.service;
+
+import com.bqomis.dto.BranchLoadDTO;
+import com.bqomis.model.Appointment;
+import com.bqomis.model.AppointmentDailyRollup;
+import com.bqomis.model.AppointmentDailyRollupId;
+import com.bqomis.model.Branch;
+import com.bqomis.repository.AppointmentDailyRollupRepository;
+import com.bqomis.util.AppSettingsUtil;
+import com.bqomis.util.EffectiveBranchConfig;
+import com.bqomis.util.LookupUtil;
+import com.bqomis.util.TransactionCallbacks;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+
+// Live traffic level per branch and hour for today, compared against the
+// queue thresholds from AppSettingsUtil. Counters are seeded from the daily
+// rollup and then moved by the same deltas AppointmentRollupService writes,
+// so reading a level never touches the database.
+@Service
+public class BranchLoadService {
+
+    // Customers still to be served: expected (SCHEDULED) or waiting at the
+    // branch (CHECKED_IN). A check-in keeps the customer in the load; completion,
+    // cancellation or a no-show takes them out.
+    private static final List<String> LOAD_STATUSES = Appointment.ACTIVE_STATUSES;
+
+    @Autowired
+    private AppointmentDailyRollupRepository rollupRepository;
+    @Autowired
+    private AppSettingsUtil appSettingsUtil;
+    @Autowired
+    private LookupUtil lookupUtil;
+
+    @Value("${bqomis.booking.opening-time:09:00}")
+    private String openingTime;
+    @Value("${bqomis.booking.closing-time:17:00}")
+    private String closingTime;
+
+    private int openingHour;
+    private int closingHour;
+
+    private volatile DayLoad today;
+
+    // Appointment counts per branch and hour of day for one date
+    private static final class DayLoad {
+        final LocalDate date;
+        final ConcurrentHashMap<Long, AtomicIntegerArray> hourlyByBranch = new ConcurrentHashMap<>();
+
+        DayLoad(LocalDate date) {
+            this.date = date;
+        }
+
+        AtomicIntegerArray branch(long branchId) {
+            return hourlyByBranch.computeIfAbsent(branchId, id -> new AtomicIntegerArray(24));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        openingHour = LocalTime.parse(openingTime).getHour();
+        LocalTime closing = LocalTime.parse(closingTime);
+        closingHour = closing.getMinute() > 0 ? closing.getHour() + 1 : closing.getHour();
+    }
+
+    // Called with the rollup deltas of a write; applied once it commits
+    public void applyAfterCommit(Map<AppointmentDailyRollupId, Long> deltas) {
+        TransactionCallbacks.afterCommit(() -> {
+            DayLoad day = today;
+            if (day == null) {
+                return;
+            }
+            deltas.forEach((key, delta) -> {
+                if (day.date.equals(key.getDate()) && LOAD_STATUSES.contains(key.getStatus())) {
+                    long branchId = lookupUtil.getBranchIdByBranchServiceId(key.getBranchServiceId());
+                    if (branchId != LookupUtil.NO_ID) {
+                        day.branch(branchId).addAndGet(key.getHour(), delta.intValue());
+                    }
+                }
+            });
+        });
+    }
+
+    // Re-seeds from the rollup, picking up writes made on other backend nodes
+    // and rolling over at midnight
+    @Scheduled(fixedDelayString = "${bqomis.load.refresh-interval-ms:60000}")
+    public void refresh() {
+        today = load(LocalDate.now());
+    }
+
+    public BranchLoadDTO getLoad(Long branchId) {
+        Branch branch = lookupUtil.getBranchById(branchId);
+        if (branch == null) {
+            return null;
+        }
+        return toLoad(branch, day(), LocalDateTime.now().getHour());
+    }
+
+    // Current hour only, for every branch in the district (or all branches)
+    public List<BranchLoadDTO> getLoadByDistrict(String district) {
+        List<Branch> branches = district != null ? lookupUtil.findBranchesByDistrictName(district)
+                : lookupUtil.getAllBranches();
+        DayLoad day = day();
+        int hour = LocalDateTime.now().getHour();
+        List<BranchLoadDTO> loads = new ArrayList<>(branches.size());
+        for (Branch branch : branches) {
+            BranchLoadDTO load = toLoad(branch, day, hour);
+            load.setHours(null);
+            loads.add(load);
+        }
+        return loads;
+    }
+
+    private BranchLoadDTO toLoad(Branch branch, DayLoad day, int hour) {
+        AtomicIntegerArray hourly = day.hourlyByBranch.get(branch.getId());
+        EffectiveBranchConfig config = appSettingsUtil.getEffectiveConfig(branch.getId());
+        Integer low = config.queueThresholdLow();
+        Integer moderate = config.queueThresholdModerate();
+
+        List<BranchLoadDTO.HourLoad> hours = new ArrayList<>();
+        for (int h = openingHour; h < closingHour; h++) {
+            int count = hourly != null ? hourly.get(h) : 0;
+            hours.add(new BranchLoadDTO.HourLoad(h, count, level(count, low, moderate)));
+        }
+
+        int count = hourly != null ? hourly.get(hour) : 0;
+        BranchLoadDTO load = new BranchLoadDTO();
+        load.setBranchId(branch.getId());
+        load.setBranchName(branch.getName());
+        load.setDistrict(branch.getDistrict());
+        load.setDate(day.date);
+        load.setHour(hour);
+        load.setCount(count);
+        load.setLevel(level(count, low, moderate));
+        load.setHours(hours);
+        return load;
+    }
+
+    static String level(int count, Integer low, Integer moderate) {
+        if (low == null || moderate == null) {
+            return null;
+        }
+        if (count <= low) {
+            return "LOW";
+        }
+        return count <= moderate ? "MODERATE" : "HIGH";
+    }
+
+    private DayLoad day() {
+        DayLoad day = today;
+        LocalDate date = LocalDate.now();
+        if (day == null || !day.date.equals(date)) {
+            day = load(date);
+            today = day;
+        }
+        return day;
+    }
+
+    private DayLoad load(LocalDate date) {
+        DayLoad day = new DayLoad(date);
+        for (AppointmentDailyRollup row : rollupRepository.findByDate(date)) {
+            AppointmentDailyRollupId key = row.getId();
+            if (!LOAD_STATUSES.contains(key.getStatus())) {
+                continue;
+            }
+            long branchId = lookupUtil.getBranchIdByBranchServiceId(key.getBranchServiceId());
+            if (branchId != LookupUtil.NO_ID) {
+                day.branch(branchId).addAndGet(key.getHour(), row.getAppointmentCount().intValue());
+            }
+        }
+        return day;
+    }
+}
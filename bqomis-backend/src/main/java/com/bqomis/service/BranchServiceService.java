@@ -7,6 +7,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import com.bqomis.util.LookupUtil;
 import com.bqomis.util.MapperUtil;
+import com.bqomis.util.Paging;
+import org.springframework.data.domain.Slice;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,11 +21,9 @@ public class BranchServiceService {
     @Autowired
     private MapperUtil mapperUtil;
 
-    public List<BranchServiceDTO> findAllBrancheServices() {
-        List<BranchService> branchServices = branchServiceRepository.findAll();
-        return branchServices.stream()
-                .map(mapperUtil::toBranchServiceDTO)
-                .toList();
+    public Slice<BranchServiceDTO> findAllBrancheServices(int page, int size, Long afterId) {
+        return branchServiceRepository.findPageAfterId(Paging.afterId(afterId), Paging.byId(page, size, afterId))
+                .map(mapperUtil::toBranchServiceDTO);
     }
 
     public Optional<BranchServiceDTO> findBrancheServiceById(Long id) {
@@ -51,5 +51,6 @@ public class BranchServiceService {
 
     public void deleteBrancheServiceById(Long id) {
         branchServiceRepository.deleteById(id);
+        lookupUtil.removeBranchService(id);
     }
 }
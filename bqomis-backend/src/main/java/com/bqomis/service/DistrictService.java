@@ -34,5 +34,7 @@ public class DistrictService {
 
     public void deleteById(Long id) {
         districtRepository.deleteById(id);
+        // Remove the district from the lookup utility
+        lookupUtil.removeDistrict(id);
     }
 }
\ No newline at end of file
@@ -0,0 +1,225 @@
+package com.bqomis.service;
+
+import com.bqomis.repository.BranchRepository;
+import com.bqomis.repository.BranchServiceRepository;
+import com.bqomis.repository.DistrictRepository;
+import com.bqomis.repository.ServiceRepository;
+import com.bqomis.util.AppSettingsUtil;
+import com.bqomis.util.LookupUtil;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+// Keeps LookupUtil and AppSettingsUtil in step with writes made by other
+// backend nodes. The V7 triggers NOTIFY on every reference data write with the
+// table, row id and a global version; a listener thread on its own connection
+// re-reads that row and applies it. A version that skips ahead means
+// notifications were missed (e.g. while disconnected) and everything is
+// reloaded; a periodic version check catches the same case if the listener
+// is down. The same connection listens for AppointmentViewCache's evictions.
+// Rows are read in read-write transactions, which stay on the primary: a
+// replica that has not replayed the change yet would undo it locally.
+@Service
+public class ReferenceDataSyncService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReferenceDataSyncService.class);
+
+    static final String CHANNEL = "reference_data";
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private LookupUtil lookupUtil;
+    @Autowired
+    private AppSettingsUtil appSettingsUtil;
+    @Autowired
+    private DistrictRepository districtRepository;
+    @Autowired
+    private BranchRepository branchRepository;
+    @Autowired
+    private ServiceRepository serviceRepository;
+    @Autowired
+    private BranchServiceRepository branchServiceRepository;
+    @Autowired
+    private AppointmentViewCache appointmentViewCache;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${bqomis.sync.enabled:true}")
+    private boolean enabled;
+    @Value("${bqomis.sync.poll-timeout-ms:10000}")
+    private int pollTimeoutMs;
+    @Value("${bqomis.sync.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    // Version of the last change applied here; -1 until the first full load
+    private long appliedVersion = -1;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "reference-data-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    // Backstop for missed notifications: reload when the database is ahead
+    @Scheduled(fixedDelayString = "${bqomis.sync.version-check-ms:60000}",
+            initialDelayString = "${bqomis.sync.version-check-ms:60000}")
+    public void checkVersion() {
+        if (enabled) {
+            reloadIfBehind();
+        }
+    }
+
+    public synchronized long getAppliedVersion() {
+        return appliedVersion;
+    }
+
+    private void listen() {
+        while (running) {
+            // A dedicated connection rather than one held out of the Hikari pool
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                    statement.execute("LISTEN " + AppointmentViewCache.CHANNEL);
+                }
+                // Anything committed before LISTEN took effect was not notified
+                reloadIfBehind();
+                appointmentViewCache.evictAll();
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        if (AppointmentViewCache.CHANNEL.equals(notification.getName())) {
+                            appointmentViewCache.evictNotified(notification.getParameter());
+                        } else {
+                            handle(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Reference data listener failed, reconnecting in {} ms", reconnectDelayMs, e);
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    synchronized void handle(String payload) {
+        JSONObject change;
+        try {
+            change = new JSONObject(payload);
+        } catch (JSONException e) {
+            log.warn("Ignoring malformed reference data notification: {}", payload);
+            return;
+        }
+        long version = change.getLong("version");
+        if (version <= appliedVersion) {
+            // Already covered by a full reload
+            meterRegistry.counter("bqomis.sync.notifications", "outcome", "skipped").increment();
+            return;
+        }
+        if (version != appliedVersion + 1) {
+            log.info("Reference data version jumped from {} to {}, reloading", appliedVersion, version);
+            meterRegistry.counter("bqomis.sync.notifications", "outcome", "gap").increment();
+            reload(currentVersion());
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> apply(change.getString("entity"), change.getLong("id")));
+        appliedVersion = version;
+        meterRegistry.counter("bqomis.sync.notifications", "outcome", "applied").increment();
+    }
+
+    // Re-reads the row, so applying the same change twice (including our own
+    // writes, which already updated the local copy) is harmless
+    private void apply(String entity, long id) {
+        switch (entity) {
+            case "districts" -> districtRepository.findById(id)
+                    .ifPresentOrElse(lookupUtil::updateDistrict, () -> lookupUtil.removeDistrict(id));
+            case "branches" -> branchRepository.findById(id)
+                    .ifPresentOrElse(lookupUtil::updateBranch, () -> lookupUtil.removeBranchById(id));
+            case "services" -> serviceRepository.findById(id)
+                    .ifPresentOrElse(lookupUtil::updateService, () -> lookupUtil.removeService(id));
+            case "branch_services" -> branchServiceRepository.findById(id)
+                    .ifPresentOrElse(lookupUtil::updateBranchService, () -> lookupUtil.removeBranchService(id));
+            // A handful of rows each; re-read them whole
+            case "branch_configuration_overrides", "global_application_configuration" -> appSettingsUtil.refresh();
+            default -> log.debug("Ignoring reference data change for {}", entity);
+        }
+    }
+
+    private synchronized void reloadIfBehind() {
+        long current = currentVersion();
+        if (current > appliedVersion) {
+            reload(current);
+        }
+    }
+
+    // The version is read before the data, so later changes still arrive as
+    // notifications with a higher version
+    private void reload(long version) {
+        transactionTemplate.executeWithoutResult(status -> {
+            lookupUtil.reload();
+            appSettingsUtil.refresh();
+        });
+        appliedVersion = version;
+        meterRegistry.counter("bqomis.sync.reloads").increment();
+    }
+
+    private long currentVersion() {
+        Long version = jdbcTemplate.queryForObject("SELECT version FROM reference_data_version WHERE id = 1",
+                Long.class);
+        return version != null ? version : 0L;
+    }
+}
@@ -0,0 +1,375 @@
+package com.bqomis.service;
+
+import com.bqomis.dto.AvailabilityDTO;
+import com.bqomis.model.Appointment;
+import com.bqomis.repository.AppointmentRepository;
+import com.bqomis.repository.AppointmentSlotRepository;
+import com.bqomis.repository.SlotCountView;
+import com.bqomis.util.AppSettingsUtil;
+import com.bqomis.util.EffectiveBranchConfig;
+import com.bqomis.util.LookupUtil;
+import com.bqomis.util.TimeLabels;
+import com.bqomis.util.TransactionCallbacks;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PostConstruct;
+
+// Enforces max_appointments_per_slot. Admission into a capped slot takes a
+// transaction-scoped advisory lock on the slot and counts its active
+// appointments through idx_appointments_active_bs_date_time, which keeps the
+// limit correct when several backend nodes take bookings; the count reads at
+// most one slot's index entries, never the table. Occupancy per (branch
+// service, date) is also kept in memory as one atomic counter per slot, which
+// /availability reads. Every capped admission corrects its slot's counter to
+// the database count; other slots catch up when their day is re-read.
+@Service
+public class SlotCapacityService {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+    @Autowired
+    private AppointmentSlotRepository appointmentSlotRepository;
+    @Autowired
+    private AppSettingsUtil appSettingsUtil;
+    @Autowired
+    private LookupUtil lookupUtil;
+
+    // Days are re-read from the database after this long, picking up bookings
+    // and cancellations made on other nodes
+    @Value("${bqomis.booking.occupancy-ttl-seconds:60}")
+    private long occupancyTtlSeconds;
+
+    // Days held in memory; availability requests can reach any future date
+    @Value("${bqomis.booking.occupancy-max-days:10000}")
+    private long occupancyMaxDays;
+
+    // Bookable hours; slots starting outside them are not offered
+    @Value("${bqomis.booking.opening-time:09:00}")
+    private String openingTime;
+    @Value("${bqomis.booking.closing-time:17:00}")
+    private String closingTime;
+
+    // Longest range /availability answers in one call
+    @Value("${bqomis.booking.availability-max-days:31}")
+    private int availabilityMaxDays;
+
+    private int openingMinute;
+    private int closingMinute;
+
+    // Bounded by occupancy-max-days; entries expire occupancy-ttl-seconds after loading
+    private Cache<DayKey, DayOccupancy> days;
+
+    private record DayKey(long branchServiceId, LocalDate date) {
+    }
+
+    // A capped slot rows of an import fall into
+    private record BatchSlot(long branchServiceId, LocalDate date, int slotStart, int slotDurationMins,
+            int limit) {
+    }
+
+    // Slots are locked in this order, so imports sharing slots cannot deadlock
+    private static final Comparator<BatchSlot> BATCH_SLOT_ORDER = Comparator
+            .comparingLong(BatchSlot::branchServiceId)
+            .thenComparing(BatchSlot::date)
+            .thenComparingInt(BatchSlot::slotStart);
+
+    // The slot an active appointment occupies; null for inactive or incomplete rows
+    public record SlotRef(long branchServiceId, LocalDate date, LocalTime time) {
+
+        public static SlotRef of(Appointment appointment) {
+            if (appointment.getBranchServiceId() == null || appointment.getDate() == null
+                    || appointment.getTime() == null || !Appointment.isActiveStatus(appointment.getStatus())) {
+                return null;
+            }
+            return new SlotRef(appointment.getBranchServiceId(), appointment.getDate(), appointment.getTime());
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        LocalTime opening = LocalTime.parse(openingTime);
+        LocalTime closing = LocalTime.parse(closingTime);
+        openingMinute = opening.getHour() * 60 + opening.getMinute();
+        closingMinute = closing.getHour() * 60 + closing.getMinute();
+        days = Caffeine.newBuilder()
+                .maximumSize(occupancyMaxDays)
+                .expireAfterWrite(occupancyTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    static final class DayOccupancy {
+        final int slotDurationMins;
+        final AtomicIntegerArray counts;
+
+        DayOccupancy(int slotDurationMins) {
+            this.slotDurationMins = slotDurationMins;
+            this.counts = new AtomicIntegerArray((MINUTES_PER_DAY + slotDurationMins - 1) / slotDurationMins);
+        }
+
+        int slotIndex(LocalTime time) {
+            return (time.getHour() * 60 + time.getMinute()) / slotDurationMins;
+        }
+
+        int slotStartMinute(int slot) {
+            return slot * slotDurationMins;
+        }
+
+        void release(int slot) {
+            while (true) {
+                int current = counts.get(slot);
+                if (current == 0 || counts.compareAndSet(slot, current, current - 1)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Admits an appointment that is about to become active in the current
+    // transaction. Throws 409 Conflict when its slot is full; the reservation
+    // is undone if the transaction rolls back.
+    public void reserve(Appointment appointment) {
+        SlotRef ref = SlotRef.of(appointment);
+        if (ref == null) {
+            return;
+        }
+        long branchId = lookupUtil.getBranchIdByBranchServiceId(ref.branchServiceId());
+        Integer limit = appSettingsUtil.getEffectiveConfig(branchId).maxAppointmentsPerSlot();
+        DayOccupancy day = day(ref.branchServiceId(), ref.date());
+        int slot = day.slotIndex(ref.time());
+
+        if (limit == null) {
+            // Uncapped: only keep the occupancy current
+            day.counts.incrementAndGet(slot);
+            TransactionCallbacks.afterCompletion(null, () -> day.release(slot));
+            return;
+        }
+        // Rows saved earlier in this transaction must be visible to the count
+        appointmentRepository.flush();
+        long booked = lockAndCount(ref.branchServiceId(), ref.date(), day.slotStartMinute(slot),
+                day.slotDurationMins, appointment.getId());
+        // Exact while the slot lock is held
+        if (booked >= limit) {
+            day.counts.set(slot, (int) booked);
+            throw slotFull(ref);
+        }
+        day.counts.set(slot, (int) booked + 1);
+        TransactionCallbacks.afterCompletion(null, () -> day.release(slot));
+    }
+
+    // Frees a slot once the current transaction commits (cancellation,
+    // completion, deletion or a move to another slot)
+    public void releaseAfterCommit(SlotRef ref) {
+        if (ref == null) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            DayOccupancy day = days.getIfPresent(new DayKey(ref.branchServiceId(), ref.date()));
+            if (day != null) {
+                day.release(day.slotIndex(ref.time()));
+            }
+        });
+    }
+
+    // Applies an update that may move an appointment between slots or change
+    // whether it is active. before is the slot it held prior to the update.
+    public void applyChange(SlotRef before, Appointment after) {
+        SlotRef current = SlotRef.of(after);
+        if (current != null && current.equals(before)) {
+            return;
+        }
+        reserve(after);
+        releaseAfterCommit(before);
+    }
+
+    // Admits imported rows that are about to be inserted in the current
+    // transaction. Each distinct capped slot among them is locked and counted
+    // once, and rows beyond its remaining places, in list order, are refused.
+    // Returns the positions of the refused rows.
+    public BitSet reserveBatch(List<Appointment> appointments) {
+        Map<BatchSlot, List<Integer>> slots = new TreeMap<>(BATCH_SLOT_ORDER);
+        for (int i = 0; i < appointments.size(); i++) {
+            SlotRef ref = SlotRef.of(appointments.get(i));
+            if (ref == null) {
+                continue;
+            }
+            long branchId = lookupUtil.getBranchIdByBranchServiceId(ref.branchServiceId());
+            EffectiveBranchConfig config = appSettingsUtil.getEffectiveConfig(branchId);
+            if (config.maxAppointmentsPerSlot() == null) {
+                continue;
+            }
+            int slotDurationMins = config.slotDurationMins();
+            int minute = ref.time().getHour() * 60 + ref.time().getMinute();
+            BatchSlot slot = new BatchSlot(ref.branchServiceId(), ref.date(),
+                    minute / slotDurationMins * slotDurationMins, slotDurationMins, config.maxAppointmentsPerSlot());
+            slots.computeIfAbsent(slot, key -> new ArrayList<>()).add(i);
+        }
+
+        BitSet refused = new BitSet(appointments.size());
+        for (Map.Entry<BatchSlot, List<Integer>> entry : slots.entrySet()) {
+            BatchSlot slot = entry.getKey();
+            long remaining = slot.limit() - lockAndCount(slot.branchServiceId(), slot.date(), slot.slotStart(),
+                    slot.slotDurationMins(), null);
+            for (int index : entry.getValue()) {
+                if (remaining-- <= 0) {
+                    refused.set(index);
+                }
+            }
+        }
+        return refused;
+    }
+
+    // Imported days are re-read on next use
+    public void invalidateAfterCommit(Collection<Appointment> appointments) {
+        TransactionCallbacks.afterCommit(() -> {
+            for (Appointment appointment : appointments) {
+                days.invalidate(new DayKey(appointment.getBranchServiceId(), appointment.getDate()));
+            }
+        });
+    }
+
+    // Booked and remaining places per slot for every day in [from, to], read
+    // from the in-memory occupancy. Days not yet in memory are loaded with a
+    // single grouped query.
+    public AvailabilityDTO getAvailability(long branchServiceId, LocalDate from, LocalDate to) {
+        if (to.isBefore(from) || ChronoUnit.DAYS.between(from, to) >= availabilityMaxDays) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Availability range must be 1 to " + availabilityMaxDays + " days");
+        }
+        long branchId = lookupUtil.getBranchIdByBranchServiceId(branchServiceId);
+        if (branchId == LookupUtil.NO_ID) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown branch service " + branchServiceId);
+        }
+        EffectiveBranchConfig config = appSettingsUtil.getEffectiveConfig(branchId);
+        int slotDurationMins = config.slotDurationMins();
+        Integer limit = config.maxAppointmentsPerSlot();
+        Map<LocalDate, DayOccupancy> occupancy = days(branchServiceId, from, to, slotDurationMins);
+
+        List<AvailabilityDTO.Day> dayList = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            DayOccupancy day = occupancy.get(date);
+            List<AvailabilityDTO.Slot> slots = new ArrayList<>();
+            int first = (openingMinute + slotDurationMins - 1) / slotDurationMins;
+            for (int slot = first; day.slotStartMinute(slot) < closingMinute; slot++) {
+                int booked = day.counts.get(slot);
+                Integer remaining = limit == null ? null : Math.max(0, limit - booked);
+                slots.add(new AvailabilityDTO.Slot(TimeLabels.minuteLabel(day.slotStartMinute(slot)), booked, remaining));
+            }
+            dayList.add(new AvailabilityDTO.Day(date, slots));
+        }
+
+        AvailabilityDTO availability = new AvailabilityDTO();
+        availability.setBranchServiceId(branchServiceId);
+        availability.setSlotDurationMins(slotDurationMins);
+        availability.setMaxAppointmentsPerSlot(limit);
+        availability.setDays(dayList);
+        return availability;
+    }
+
+    // Drops days that have passed
+    @Scheduled(cron = "${bqomis.booking.occupancy-evict-cron:0 5 0 * * *}")
+    public void evictPastDays() {
+        LocalDate today = LocalDate.now();
+        days.asMap().keySet().removeIf(key -> key.date().isBefore(today));
+    }
+
+    DayOccupancy day(long branchServiceId, LocalDate date) {
+        DayKey key = new DayKey(branchServiceId, date);
+        int slotDurationMins = slotDurationMins(branchServiceId);
+        DayOccupancy day = days.getIfPresent(key);
+        if (day == null || day.slotDurationMins != slotDurationMins) {
+            // Loaded outside the map so a slow query does not block other keys;
+            // a racing loader simply wins
+            day = load(branchServiceId, date, slotDurationMins);
+            days.put(key, day);
+        }
+        return day;
+    }
+
+    // Current occupancy for a range of days, loading the missing or stale ones
+    // together
+    private Map<LocalDate, DayOccupancy> days(long branchServiceId, LocalDate from, LocalDate to,
+            int slotDurationMins) {
+        Map<LocalDate, DayOccupancy> result = new HashMap<>();
+        Map<LocalDate, DayOccupancy> loaded = new HashMap<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            DayOccupancy day = days.getIfPresent(new DayKey(branchServiceId, date));
+            if (day == null || day.slotDurationMins != slotDurationMins) {
+                day = new DayOccupancy(slotDurationMins);
+                loaded.put(date, day);
+            }
+            result.put(date, day);
+        }
+        if (!loaded.isEmpty()) {
+            LocalDate first = loaded.keySet().stream().min(LocalDate::compareTo).get();
+            LocalDate last = loaded.keySet().stream().max(LocalDate::compareTo).get();
+            for (SlotCountView count : appointmentRepository.countActiveByDateAndTime(branchServiceId, first, last)) {
+                DayOccupancy day = loaded.get(count.getDate());
+                if (day != null) {
+                    day.counts.addAndGet(day.slotIndex(count.getTime()), count.getCount().intValue());
+                }
+            }
+            loaded.forEach((date, day) -> days.put(new DayKey(branchServiceId, date), day));
+        }
+        return result;
+    }
+
+    int slotDurationMins(long branchServiceId) {
+        long branchId = lookupUtil.getBranchIdByBranchServiceId(branchServiceId);
+        return appSettingsUtil.getEffectiveConfig(branchId).slotDurationMins();
+    }
+
+    private DayOccupancy load(long branchServiceId, LocalDate date, int slotDurationMins) {
+        DayOccupancy day = new DayOccupancy(slotDurationMins);
+        for (SlotCountView count : appointmentRepository.countActiveByDateAndTime(branchServiceId, date, date)) {
+            day.counts.addAndGet(day.slotIndex(count.getTime()), count.getCount().intValue());
+        }
+        return day;
+    }
+
+    // Locks the slot until the transaction ends and returns its active
+    // appointments, not counting excludeId
+    private long lockAndCount(long branchServiceId, LocalDate date, int slotStart, int slotDurationMins,
+            Long excludeId) {
+        appointmentSlotRepository.lockSlot(branchServiceId, date, slotStart);
+        return appointmentSlotRepository.countActiveInSlot(branchServiceId, date, toTime(slotStart),
+                toTime(slotStart + slotDurationMins), excludeId);
+    }
+
+    private static LocalTime toTime(int minuteOfDay) {
+        return minuteOfDay >= MINUTES_PER_DAY ? LocalTime.MAX : LocalTime.of(minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    private static ResponseStatusException slotFull(SlotRef ref) {
+        return new ResponseStatusException(HttpStatus.CONFLICT, slotFullMessage(ref));
+    }
+
+    public static String slotFullMessage(SlotRef ref) {
+        return "No capacity left at " + ref.time() + " on " + ref.date() + " for branch service "
+                + ref.branchServiceId();
+    }
+}
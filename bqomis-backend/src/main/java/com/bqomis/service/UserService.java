@@ -7,6 +7,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import com.bqomis.util.MapperUtil;
+import com.bqomis.util.Paging;
+import org.springframework.data.domain.Slice;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,10 +22,9 @@ public class UserService {
     @Autowired
     private MapperUtil mapperUtil;
 
-    public List<UserDTO> findAll() {
-        return userRepository.findAll().stream()
-                .map(mapperUtil::toUserDTO)
-                .toList();
+    public Slice<UserDTO> findAll(int page, int size, Long afterId) {
+        return userRepository.findPageAfterId(Paging.afterId(afterId), Paging.byId(page, size, afterId))
+                .map(mapperUtil::toUserDTO);
     }
 
     public Optional<UserDTO> findById(Long id) {
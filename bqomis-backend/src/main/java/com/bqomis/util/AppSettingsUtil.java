@@ -1,5 +1,6 @@
 package com.bqomis.util;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,66 +17,143 @@ import com.bqomis.repository.BranchConfigurationOverridesRepository;
 @Component
 public class AppSettingsUtil {
 
+    // Used when neither the branch nor the global configuration sets a duration
+    public static final int FALLBACK_SLOT_DURATION_MINS = 30;
+
     @Autowired
     private GlobalApplicationConfigurationRepository globalConfigRepo;
 
     @Autowired
     private BranchConfigurationOverridesRepository branchConfigRepo;
 
-    private GlobalApplicationConfiguration globalConfig;
-    private List<BranchConfigurationOverrides> branchConfigOverrides;
+    // Settings are rebuilt as a whole on every change and swapped in with one
+    // volatile write, like LookupUtil's snapshot, so readers never lock and
+    // never see an override merged with a stale global configuration.
+    private volatile Settings settings = new Settings(null, List.of());
+
+    private static final class Settings {
+        final GlobalApplicationConfiguration globalConfig;
+        final List<BranchConfigurationOverrides> overrides;
+        // Branch id -> index into overrideList and effective
+        final LongLongHashMap indexByBranchId;
+        final BranchConfigurationOverrides[] overrideList;
+        final EffectiveBranchConfig[] effective;
+        // For branches without an override
+        final EffectiveBranchConfig defaults;
+
+        Settings(GlobalApplicationConfiguration globalConfig, List<BranchConfigurationOverrides> overrides) {
+            this.globalConfig = globalConfig;
+            this.overrides = List.copyOf(overrides);
+            this.indexByBranchId = new LongLongHashMap(overrides.size());
+            this.overrideList = new BranchConfigurationOverrides[overrides.size()];
+            this.effective = new EffectiveBranchConfig[overrides.size()];
+            this.defaults = EffectiveBranchConfig.merge(globalConfig, null);
+            int next = 0;
+            for (BranchConfigurationOverrides override : overrides) {
+                // The first override of a branch wins, as the linear search did
+                if (indexByBranchId.get(override.getBranchId(), -1L) >= 0) {
+                    continue;
+                }
+                indexByBranchId.put(override.getBranchId(), next);
+                overrideList[next] = override;
+                effective[next] = EffectiveBranchConfig.merge(globalConfig, override);
+                next++;
+            }
+        }
+
+        int indexOf(long branchId) {
+            return (int) indexByBranchId.get(branchId, -1L);
+        }
+    }
 
     @PostConstruct
     public void init() {
-        globalConfig = globalConfigRepo.findAll().stream().findFirst().orElse(null);
-        branchConfigOverrides = branchConfigRepo.findAll();
+        refresh();
     }
 
     public GlobalApplicationConfiguration getGlobalConfig() {
-        System.out.println("Global Config: " + globalConfig.toString());
-        return globalConfig;
+        return settings.globalConfig;
     }
 
     public List<BranchConfigurationOverrides> getBranchConfigOverrides() {
-        return branchConfigOverrides;
+        return settings.overrides;
     }
 
     public BranchConfigurationOverrides getBranchConfigOverrideByBranchId(Long branchId) {
-        return branchConfigOverrides.stream()
-                .filter(override -> override.getBranchId().equals(branchId))
-                .findFirst()
-                .orElse(null);
+        if (branchId == null) {
+            return null;
+        }
+        Settings current = settings;
+        int index = current.indexOf(branchId);
+        return index >= 0 ? current.overrideList[index] : null;
+    }
+
+    // Overrides merged over the global defaults; the global defaults for an
+    // unknown branch or LookupUtil.NO_ID. Precomputed, so this neither
+    // searches nor allocates.
+    public EffectiveBranchConfig getEffectiveConfig(long branchId) {
+        Settings current = settings;
+        int index = current.indexOf(branchId);
+        return index >= 0 ? current.effective[index] : current.defaults;
+    }
+
+    public EffectiveBranchConfig getEffectiveConfig(Long branchId) {
+        return branchId != null ? getEffectiveConfig(branchId.longValue()) : settings.defaults;
     }
 
-    public void updateGlobalConfig(GlobalApplicationConfiguration newConfig) {
-        this.globalConfig = newConfig;
+    public int getSlotDurationMins(Long branchId) {
+        return getEffectiveConfig(branchId).slotDurationMins();
+    }
+
+    // Null means no limit
+    public Integer getMaxAppointmentsPerSlot(Long branchId) {
+        return getEffectiveConfig(branchId).maxAppointmentsPerSlot();
+    }
+
+    // Max appointments per hour still counted as LOW traffic
+    public Integer getQueueThresholdLow(Long branchId) {
+        return getEffectiveConfig(branchId).queueThresholdLow();
+    }
+
+    // Max appointments per hour still counted as MODERATE traffic
+    public Integer getQueueThresholdModerate(Long branchId) {
+        return getEffectiveConfig(branchId).queueThresholdModerate();
+    }
+
+    public synchronized void updateGlobalConfig(GlobalApplicationConfiguration newConfig) {
         globalConfigRepo.save(newConfig);
+        settings = new Settings(newConfig, settings.overrides);
     }
 
-    public void updateBranchConfigOverrides(List<BranchConfigurationOverrides> newOverrides) {
-        this.branchConfigOverrides = newOverrides;
+    public synchronized void updateBranchConfigOverrides(List<BranchConfigurationOverrides> newOverrides) {
         branchConfigRepo.saveAll(newOverrides);
+        settings = new Settings(settings.globalConfig, newOverrides);
     }
 
-    public BranchConfigurationOverrides saveOrUpdateBranchConfigOverride(BranchConfigurationOverrides newOverride) {
+    public synchronized BranchConfigurationOverrides saveOrUpdateBranchConfigOverride(
+            BranchConfigurationOverrides newOverride) {
         // If an override for this branch already exists, update it; otherwise, create
         // new
-        BranchConfigurationOverrides existing = branchConfigOverrides.stream()
-                .filter(override -> override.getBranchId().equals(newOverride.getBranchId()))
-                .findFirst()
-                .orElse(null);
+        BranchConfigurationOverrides existing = getBranchConfigOverrideByBranchId(newOverride.getBranchId());
         if (existing != null) {
             newOverride.setId(existing.getId()); // preserve the existing DB id
-            branchConfigOverrides.remove(existing);
         }
-        branchConfigOverrides.add(newOverride);
-        branchConfigRepo.save(newOverride);
-        return newOverride;
+        BranchConfigurationOverrides saved = branchConfigRepo.save(newOverride);
+        // Replaced where it was, so it stays the branch's first override
+        List<BranchConfigurationOverrides> overrides = new ArrayList<>(settings.overrides);
+        int index = overrides.indexOf(existing);
+        if (index >= 0) {
+            overrides.set(index, saved);
+        } else {
+            overrides.add(saved);
+        }
+        settings = new Settings(settings.globalConfig, overrides);
+        return saved;
     }
 
-    public void refresh() {
-        globalConfig = globalConfigRepo.findAll().stream().findFirst().orElse(null);
-        branchConfigOverrides = branchConfigRepo.findAll();
+    public synchronized void refresh() {
+        GlobalApplicationConfiguration globalConfig = globalConfigRepo.findAll().stream().findFirst().orElse(null);
+        settings = new Settings(globalConfig, branchConfigRepo.findAll());
     }
 
 }
@@ -0,0 +1,8 @@
+package com.bqomis.util;
+
+// Display fields of a branch service, precomputed with each LookupUtil snapshot
+// so mapping an appointment costs one lookup. Names are null when the branch or
+// service is unknown.
+public record BranchServiceLabel(long branchId, String branchName, long serviceId, String serviceName,
+        String district) {
+}
@@ -0,0 +1,38 @@
+package com.bqomis.util;
+
+import com.bqomis.model.BranchConfigurationOverrides;
+import com.bqomis.model.GlobalApplicationConfiguration;
+
+// A branch's settings with its overrides already merged over the global
+// configuration. Built by AppSettingsUtil whenever either changes, so readers
+// get every value from one lookup. Nullable fields are unset in both places;
+// a null maxAppointmentsPerSlot means no limit.
+public record EffectiveBranchConfig(
+        int slotDurationMins,
+        Integer queueThresholdLow,
+        Integer queueThresholdModerate,
+        Integer maxAppointmentsPerSlot,
+        Integer bookingWindowDays,
+        Integer minBookingNoticeHours) {
+
+    // Branch override first, then the global default. Either may be null.
+    static EffectiveBranchConfig merge(GlobalApplicationConfiguration global,
+            BranchConfigurationOverrides override) {
+        Integer slotDuration = override != null ? override.getSlotDurationMins() : null;
+        Integer low = override != null ? override.getQueueThresholdLow() : null;
+        Integer moderate = override != null ? override.getQueueThresholdModerate() : null;
+        if (global != null) {
+            slotDuration = slotDuration != null ? slotDuration : global.getDefaultSlotDurationMins();
+            low = low != null ? low : global.getDefaultQueueThresholdLow();
+            moderate = moderate != null ? moderate : global.getDefaultQueueThresholdModerate();
+        }
+        return new EffectiveBranchConfig(
+                slotDuration != null && slotDuration > 0 ? slotDuration : AppSettingsUtil.FALLBACK_SLOT_DURATION_MINS,
+                low,
+                moderate,
+                // Only branches can cap a slot
+                override != null ? override.getMaxAppointmentsPerSlot() : null,
+                global != null ? global.getBookingWindowDays() : null,
+                global != null ? global.getMinBookingNoticeHours() : null);
+    }
+}
@@ -0,0 +1,79 @@
+package com.bqomis.util;
+
+// Open-addressing long -> long map with linear probing. Keys and values are
+// stored in parallel primitive arrays, so lookups neither box nor allocate.
+// Only filled while a LookupSnapshot or AppSettingsUtil snapshot is being built
+// and read-only afterwards.
+final class LongLongHashMap {
+
+    private static final long EMPTY = 0L;
+
+    private final long[] keys;
+    private final long[] values;
+    private final int mask;
+    // Key 0 marks an empty slot, so it is stored on the side
+    private boolean hasZeroKey;
+    private long zeroValue;
+    private int size;
+
+    LongLongHashMap(int expectedSize) {
+        // Keep the load factor at or below 0.5
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    void put(long key, long value) {
+        if (key == EMPTY) {
+            if (!hasZeroKey) {
+                size++;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= (mask + 1) / 2) {
+            throw new IllegalStateException("LongLongHashMap sized for fewer entries");
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    long get(long key, long missingValue) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        int slot = slot(key);
+        long candidate;
+        while ((candidate = keys[slot]) != EMPTY) {
+            if (candidate == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        // Murmur3 finalizer so sequential ids spread over the table
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
@@ -0,0 +1,222 @@
+package com.bqomis.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.bqomis.model.Branch;
+import com.bqomis.model.BranchService;
+import com.bqomis.model.District;
+import com.bqomis.model.Service;
+
+// Immutable view of the reference data held by LookupUtil. Every change builds
+// a new snapshot (copy-on-write) so readers never see a half-updated state.
+final class LookupSnapshot {
+
+    static final LookupSnapshot EMPTY = new LookupSnapshot(0, List.of(), List.of(), List.of(), List.of());
+
+    final long version;
+
+    // Source data, keyed by id
+    final Map<Long, District> districtMap;
+    final Map<Long, Branch> branchMap;
+    final Map<Long, Service> serviceMap;
+    final Map<Long, BranchService> branchServiceMap;
+
+    // Derived indexes
+    final Map<String, String> provinceByDistrict;
+    final LongLongHashMap branchIdByBsId;
+    final LongLongHashMap serviceIdByBsId;
+    final LongLongHashMap bsIdByBranchAndService; // key: pack(branchId, serviceId)
+    final Map<Long, List<Long>> serviceIdListByBranchId;
+    final Map<Long, BranchServiceLabel> labelByBsId;
+
+    // Inverted indexes. Lists are shared and immutable; district keys are
+    // normalised with districtKey()
+    final Map<String, List<Branch>> branchesByDistrict;
+    final Map<String, List<Long>> bsIdsByDistrict;
+    final Map<Long, List<Long>> bsIdsByBranchId;
+    final Map<Long, List<Long>> bsIdsByServiceId;
+    final Map<String, List<String>> districtsByProvince;
+    final List<String> districtNames;
+    final List<String> provinces;
+
+    LookupSnapshot(long version, Collection<District> districts, Collection<Branch> branches,
+            Collection<Service> services, Collection<BranchService> branchServices) {
+        this.version = version;
+
+        Map<Long, District> districtById = new HashMap<>();
+        Map<String, String> provinceMap = new HashMap<>();
+        Map<String, List<String>> districtNamesByProvince = new LinkedHashMap<>();
+        for (District district : districts) {
+            districtById.put(district.getId(), district);
+            provinceMap.put(district.getName(), district.getProvince());
+            districtNamesByProvince.computeIfAbsent(district.getProvince(), p -> new ArrayList<>())
+                    .add(district.getName());
+        }
+
+        Map<Long, Branch> branchById = new HashMap<>();
+        Map<String, List<Branch>> branchesByDistrictKey = new HashMap<>();
+        for (Branch branch : branches) {
+            branchById.put(branch.getId(), branch);
+            branchesByDistrictKey.computeIfAbsent(districtKey(branch.getDistrict()), d -> new ArrayList<>())
+                    .add(branch);
+        }
+
+        Map<Long, Service> serviceById = new HashMap<>();
+        for (Service service : services) {
+            serviceById.put(service.getId(), service);
+        }
+
+        Map<Long, BranchService> branchServiceById = new HashMap<>();
+        LongLongHashMap branchIds = new LongLongHashMap(branchServices.size());
+        LongLongHashMap serviceIds = new LongLongHashMap(branchServices.size());
+        LongLongHashMap bsIds = new LongLongHashMap(branchServices.size());
+        Map<Long, List<Long>> serviceIdsByBranch = new HashMap<>();
+        Map<Long, List<Long>> branchServiceIdsByBranch = new HashMap<>();
+        Map<Long, List<Long>> branchServiceIdsByService = new HashMap<>();
+        Map<String, List<Long>> branchServiceIdsByDistrict = new HashMap<>();
+        Map<Long, BranchServiceLabel> labels = new HashMap<>();
+        for (Branch branch : branches) {
+            serviceIdsByBranch.put(branch.getId(), new ArrayList<>());
+        }
+        for (BranchService bs : branchServices) {
+            branchServiceById.put(bs.getId(), bs);
+            branchServiceIdsByBranch.computeIfAbsent(bs.getBranchId(), id -> new ArrayList<>()).add(bs.getId());
+            branchServiceIdsByService.computeIfAbsent(bs.getServiceId(), id -> new ArrayList<>()).add(bs.getId());
+            Branch branch = branchById.get(bs.getBranchId());
+            if (branch != null) {
+                branchServiceIdsByDistrict.computeIfAbsent(districtKey(branch.getDistrict()), d -> new ArrayList<>())
+                        .add(bs.getId());
+            }
+            Service service = serviceById.get(bs.getServiceId());
+            labels.put(bs.getId(), new BranchServiceLabel(bs.getBranchId(),
+                    branch != null ? branch.getName() : null,
+                    bs.getServiceId(),
+                    service != null ? service.getName() : null,
+                    branch != null ? branch.getDistrict() : null));
+            branchIds.put(bs.getId(), bs.getBranchId());
+            serviceIds.put(bs.getId(), bs.getServiceId());
+            bsIds.put(pack(bs.getBranchId(), bs.getServiceId()), bs.getId());
+            List<Long> serviceIdList = serviceIdsByBranch.computeIfAbsent(bs.getBranchId(), id -> new ArrayList<>());
+            if (!serviceIdList.contains(bs.getServiceId())) {
+                serviceIdList.add(bs.getServiceId());
+            }
+        }
+        serviceIdsByBranch.replaceAll((branchId, ids) -> List.copyOf(ids));
+        branchServiceIdsByBranch.replaceAll((branchId, ids) -> List.copyOf(ids));
+        branchServiceIdsByService.replaceAll((serviceId, ids) -> List.copyOf(ids));
+        branchServiceIdsByDistrict.replaceAll((district, ids) -> List.copyOf(ids));
+        branchesByDistrictKey.replaceAll((district, list) -> List.copyOf(list));
+        districtNamesByProvince.replaceAll((province, names) -> List.copyOf(names));
+
+        this.districtMap = Collections.unmodifiableMap(districtById);
+        this.branchMap = Collections.unmodifiableMap(branchById);
+        this.serviceMap = Collections.unmodifiableMap(serviceById);
+        this.branchServiceMap = Collections.unmodifiableMap(branchServiceById);
+        this.provinceByDistrict = Collections.unmodifiableMap(provinceMap);
+        this.branchIdByBsId = branchIds;
+        this.serviceIdByBsId = serviceIds;
+        this.bsIdByBranchAndService = bsIds;
+        this.serviceIdListByBranchId = Collections.unmodifiableMap(serviceIdsByBranch);
+        this.labelByBsId = Collections.unmodifiableMap(labels);
+        this.branchesByDistrict = Collections.unmodifiableMap(branchesByDistrictKey);
+        this.bsIdsByDistrict = Collections.unmodifiableMap(branchServiceIdsByDistrict);
+        this.bsIdsByBranchId = Collections.unmodifiableMap(branchServiceIdsByBranch);
+        this.bsIdsByServiceId = Collections.unmodifiableMap(branchServiceIdsByService);
+        this.districtsByProvince = Collections.unmodifiableMap(districtNamesByProvince);
+        this.districtNames = List.copyOf(provinceMap.keySet());
+        this.provinces = List.copyOf(districtNamesByProvince.keySet());
+    }
+
+    // Districts are matched case-insensitively, as findBranchesByDistrictName always did
+    static String districtKey(String district) {
+        return district == null ? null : district.toLowerCase(Locale.ROOT);
+    }
+
+    // Packs a (branchId, serviceId) pair into one long key. Ids come from
+    // BIGSERIAL columns and must fit in 32 bits each.
+    static long pack(long branchId, long serviceId) {
+        if ((branchId >>> 32) != 0 || (serviceId >>> 32) != 0) {
+            throw new IllegalArgumentException(
+                    "Branch/service id out of range for packed key: " + branchId + ", " + serviceId);
+        }
+        return (branchId << 32) | serviceId;
+    }
+
+    static boolean packable(long branchId, long serviceId) {
+        return (branchId >>> 32) == 0 && (serviceId >>> 32) == 0;
+    }
+
+    LookupSnapshot withDistrict(District district) {
+        Map<Long, District> districts = new HashMap<>(districtMap);
+        districts.put(district.getId(), district);
+        return next(districts.values(), branchMap.values(), serviceMap.values(), branchServiceMap.values());
+    }
+
+    LookupSnapshot withoutDistrict(Long id) {
+        Map<Long, District> districts = new HashMap<>(districtMap);
+        districts.remove(id);
+        return next(districts.values(), branchMap.values(), serviceMap.values(), branchServiceMap.values());
+    }
+
+    LookupSnapshot withBranch(Branch branch) {
+        Map<Long, Branch> branches = new HashMap<>(branchMap);
+        branches.put(branch.getId(), branch);
+        return next(districtMap.values(), branches.values(), serviceMap.values(), branchServiceMap.values());
+    }
+
+    // branch_services rows cascade with their branch in the database
+    LookupSnapshot withoutBranch(Long id) {
+        Map<Long, Branch> branches = new HashMap<>(branchMap);
+        branches.remove(id);
+        return next(districtMap.values(), branches.values(), serviceMap.values(),
+                branchServicesExcept(bs -> bs.getBranchId().equals(id)));
+    }
+
+    LookupSnapshot withService(Service service) {
+        Map<Long, Service> services = new HashMap<>(serviceMap);
+        services.put(service.getId(), service);
+        return next(districtMap.values(), branchMap.values(), services.values(), branchServiceMap.values());
+    }
+
+    // branch_services rows cascade with their service in the database
+    LookupSnapshot withoutService(Long id) {
+        Map<Long, Service> services = new HashMap<>(serviceMap);
+        services.remove(id);
+        return next(districtMap.values(), branchMap.values(), services.values(),
+                branchServicesExcept(bs -> bs.getServiceId().equals(id)));
+    }
+
+    LookupSnapshot withBranchService(BranchService branchService) {
+        Map<Long, BranchService> branchServices = new HashMap<>(branchServiceMap);
+        branchServices.put(branchService.getId(), branchService);
+        return next(districtMap.values(), branchMap.values(), serviceMap.values(), branchServices.values());
+    }
+
+    LookupSnapshot withoutBranchService(Long id) {
+        return next(districtMap.values(), branchMap.values(), serviceMap.values(),
+                branchServicesExcept(bs -> bs.getId().equals(id)));
+    }
+
+    private List<BranchService> branchServicesExcept(Predicate<BranchService> removed) {
+        List<BranchService> branchServices = new ArrayList<>();
+        for (BranchService bs : branchServiceMap.values()) {
+            if (!removed.test(bs)) {
+                branchServices.add(bs);
+            }
+        }
+        return branchServices;
+    }
+
+    private LookupSnapshot next(Collection<District> districts, Collection<Branch> branches,
+            Collection<Service> services, Collection<BranchService> branchServices) {
+        return new LookupSnapshot(version + 1, districts, branches, services, branchServices);
+    }
+}
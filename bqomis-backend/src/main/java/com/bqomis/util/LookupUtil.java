@@ -12,14 +12,19 @@ import com.bqomis.repository.DistrictRepository;
 import com.bqomis.repository.ServiceRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.annotation.PostConstruct;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
 
 @Component
-public class LookupUtil {
+public class LookupUtil implements MeterBinder {
 
     @Autowired
     private BranchRepository branchRepository;
@@ -30,163 +35,153 @@ public class LookupUtil {
     @Autowired
     private BranchServiceRepository branchServiceRepository;
 
-    // Maps for quick access
-    private Map<String, String> provinceByDistrict = new HashMap<>();
-    private Map<Long, Service> serviceMap = new HashMap<>();
-    private Map<Long, Branch> branchMap = new HashMap<>();
-    // private Map<Long, Long> branchIdByBSId = new HashMap<>();
-    // private Map<Long, Long> serviceIdByBSId = new HashMap<>();
-    private Map<String, Long> bsIdByBranchIdAndServiceId = new HashMap<>(); // (branchId +"-"+serviceId)
-    private Map<Long, String> branchIdAndServiceIdByBsId = new HashMap<>(); // (branchId +"-"+serviceId)
-    private Map<Long, List<Long>> serviceIdListByBranchId = new HashMap<>();
+    // Returned by the primitive id accessors when there is no match
+    public static final long NO_ID = -1L;
 
-    @PostConstruct
-    public void initialize() {
-        // Load all districts for quick access
-        List<District> districtList = districtRepository.findAll();
+    // Reference data is swapped as a whole on every change (copy-on-write), so
+    // request threads read it without locking and never see partial updates.
+    private volatile LookupSnapshot snapshot = LookupSnapshot.EMPTY;
 
-        // Load all branches and services for quick access
-        List<Branch> branches = branchRepository.findAll();
-        List<Service> services = serviceRepository.findAll();
-        List<BranchService> branchServices = branchServiceRepository.findAll();
+    // Lookup counts, read by Micrometer only when scraped. LongAdder keeps the
+    // per-row accessors free of contended writes.
+    private final LongAdder idLookups = new LongAdder();
+    private final LongAdder idMisses = new LongAdder();
+    private final LongAdder scopeLookups = new LongAdder();
 
-        // Populate the provinceByDistrict map
-        for (District district : districtList) {
-            provinceByDistrict.put(district.getName(), district.getProvince());
-        }
+    @PostConstruct
+    public void initialize() {
+        reload();
+    }
 
-        for (Branch branch : branches) {
-            branchMap.put(branch.getId(), branch);
-        }
+    // Reloads all reference data from the database and swaps it in atomically
+    public synchronized void reload() {
+        load(districtRepository.findAll(), branchRepository.findAll(), serviceRepository.findAll(),
+                branchServiceRepository.findAll());
+    }
 
-        for (Service service : services) {
-            serviceMap.put(service.getId(), service);
-        }
+    // Replaces all reference data with the given lists
+    public synchronized void load(List<District> districts, List<Branch> branches, List<Service> services,
+            List<BranchService> branchServices) {
+        snapshot = new LookupSnapshot(snapshot.version + 1, districts, branches, services, branchServices);
+    }
 
-        for (BranchService bs : branchServices) {
-            // Create a unique string key for branch and service combination
-            String key = bs.getBranchId() + "-" + bs.getServiceId();
-            bsIdByBranchIdAndServiceId.put(key, bs.getId());
-            branchIdAndServiceIdByBsId.put(bs.getId(), key);
-        }
+    // Writers are serialised; each one publishes a fresh snapshot
+    private synchronized void apply(UnaryOperator<LookupSnapshot> change) {
+        snapshot = change.apply(snapshot);
+    }
 
-        for (Branch branch : branches) {
-            List<Long> serviceIds = new ArrayList<>();
-            for (BranchService bs : branchServices) {
-                if (bs.getBranchId().equals(branch.getId())) {
-                    serviceIds.add(bs.getServiceId());
-                }
-            }
-            serviceIdListByBranchId.put(branch.getId(), serviceIds);
-        }
+    // Incremented on every change to the reference data
+    public long getVersion() {
+        return snapshot.version;
+    }
 
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("bqomis.lookup.calls", idLookups, LongAdder::sum)
+                .description("Id lookups by branch service or branch and service")
+                .tag("kind", "id").register(registry);
+        FunctionCounter.builder("bqomis.lookup.calls", scopeLookups, LongAdder::sum)
+                .description("Branch service id lists resolved for a branch, district or service")
+                .tag("kind", "scope").register(registry);
+        FunctionCounter.builder("bqomis.lookup.misses", idMisses, LongAdder::sum)
+                .description("Id lookups that found nothing").register(registry);
+        Gauge.builder("bqomis.lookup.version", this, LookupUtil::getVersion)
+                .description("Reference data version").register(registry);
+        Gauge.builder("bqomis.lookup.branch.services", this, lookup -> lookup.snapshot.branchServiceMap.size())
+                .register(registry);
     }
 
     public String getBranchNameById(Long id) {
-        Branch branch = branchMap.get(id);
+        Branch branch = snapshot.branchMap.get(id);
         return branch != null ? branch.getName() : null;
     }
 
     public String getServiceNameById(Long id) {
-        Service service = serviceMap.get(id);
+        Service service = snapshot.serviceMap.get(id);
         return service != null ? service.getName() : null;
     }
 
     public Service getServiceById(Long id) {
-        return serviceMap.get(id);
+        return snapshot.serviceMap.get(id);
     }
 
     public String getDistrictByBranchId(Long branchId) {
-        Branch branch = branchMap.get(branchId);
+        Branch branch = snapshot.branchMap.get(branchId);
         return branch != null ? branch.getDistrict() : null;
     }
 
     public String getProvinceByDistrict(String district) {
-        return provinceByDistrict.get(district);
+        return snapshot.provinceByDistrict.get(district);
     }
 
     public Branch getBranchById(Long id) {
-        return branchMap.get(id);
+        return snapshot.branchMap.get(id);
+    }
+
+    public List<Branch> getAllBranches() {
+        return List.copyOf(snapshot.branchMap.values());
     }
 
     public List<Branch> findBranchesByDistrictName(String districtName) {
-        List<Branch> brancheList = new ArrayList<>();
-        for (Branch branch : branchMap.values()) {
-            if (branch.getDistrict().equalsIgnoreCase(districtName)) {
-                brancheList.add(branch);
-            }
-        }
-        return brancheList;
+        scopeLookups.increment();
+        return snapshot.branchesByDistrict.getOrDefault(LookupSnapshot.districtKey(districtName), List.of());
     }
 
     public void updateBranch(Branch branch) {
-        branchMap.put(branch.getId(), branch);
+        apply(current -> current.withBranch(branch));
     }
 
     public void removeBranchById(Long id) {
-        branchMap.remove(id);
+        apply(current -> current.withoutBranch(id));
     }
 
     public List<String> getAllDistrictStrings() {
-        return new ArrayList<>(provinceByDistrict.keySet());
+        return snapshot.districtNames;
     }
 
     public List<String> getDistrictsByProvince(String province) {
-        List<String> districts = new ArrayList<>();
-        for (Map.Entry<String, String> entry : provinceByDistrict.entrySet()) {
-            if (entry.getValue().equals(province)) {
-                districts.add(entry.getKey());
-            }
-        }
-        return districts;
+        return snapshot.districtsByProvince.getOrDefault(province, List.of());
     }
 
     public List<String> getProvinces() {
-        List<String> provinces = new ArrayList<>();
-        for (String province : provinceByDistrict.values()) {
-            if (!provinces.contains(province)) {
-                provinces.add(province);
-            }
-        }
-        return provinces;
+        return snapshot.provinces;
     }
 
     public void updateDistrict(District district) {
-        provinceByDistrict.put(district.getName(), district.getProvince());
+        apply(current -> current.withDistrict(district));
+    }
+
+    public void removeDistrict(Long id) {
+        apply(current -> current.withoutDistrict(id));
     }
 
     public List<Service> getAllServices() {
-        return new ArrayList<>(serviceMap.values());
+        return new ArrayList<>(snapshot.serviceMap.values());
     }
 
     public void updateService(Service service) {
-        serviceMap.put(service.getId(), service);
+        apply(current -> current.withService(service));
     }
 
     public void removeService(Long id) {
-        serviceMap.remove(id);
+        apply(current -> current.withoutService(id));
     }
 
     public void updateBranchService(BranchService branchService) {
-        // Update the branch service ID map with the new branch and service IDs
-        String key = branchService.getBranchId() + "-" + branchService.getServiceId();
-        bsIdByBranchIdAndServiceId.put(key, branchService.getId());
-        branchIdAndServiceIdByBsId.put(branchService.getId(), key);
-
-        List<Long> serviceIds = serviceIdListByBranchId.get(branchService.getBranchId());
-        if (serviceIds == null) {
-            serviceIds = new ArrayList<>();
-        }
-        serviceIds.add(branchService.getServiceId());
-        serviceIdListByBranchId.put(branchService.getBranchId(), serviceIds);
+        apply(current -> current.withBranchService(branchService));
+    }
+
+    public void removeBranchService(Long id) {
+        apply(current -> current.withoutBranchService(id));
     }
 
     public List<Service> getServiceByBranchId(Long branchId) {
+        LookupSnapshot current = snapshot;
         List<Service> services = new ArrayList<>();
-        List<Long> serviceIds = serviceIdListByBranchId.get(branchId);
+        List<Long> serviceIds = current.serviceIdListByBranchId.get(branchId);
         if (serviceIds != null) {
             for (Long serviceId : serviceIds) {
-                Service service = serviceMap.get(serviceId);
+                Service service = current.serviceMap.get(serviceId);
                 if (service != null) {
                     services.add(service);
                 }
@@ -196,32 +191,19 @@ public class LookupUtil {
     }
 
     public List<Long> getBranchServiceIdsByDistrict(String districtName) {
-        List<Long> branchServiceIds = new ArrayList<>();
-        List<Branch> branchList = findBranchesByDistrictName(districtName);
-        //
-        for (Branch branch : branchList) {
-            List<Long> serviceIds = serviceIdListByBranchId.get(branch.getId());
-            if (serviceIds != null && !serviceIds.isEmpty()) {
-                // Iterate through the service IDs and find the corresponding branch service IDs
-                for (Long serviceId : serviceIds) {
-                    String key = branch.getId() + "-" + serviceId;
-                    Long branchServiceId = bsIdByBranchIdAndServiceId.get(key);
-                    if (branchServiceId != null) {
-                        branchServiceIds.add(branchServiceId);
-                    }
-                }
-            }
-        }
-        return branchServiceIds;
+        scopeLookups.increment();
+        return snapshot.bsIdsByDistrict.getOrDefault(LookupSnapshot.districtKey(districtName), List.of());
     }
 
     public List<Long> getBranchServiceIdsByDistrictAndService(String districtName, Long serviceId) {
+        scopeLookups.increment();
+        LookupSnapshot current = snapshot;
+        List<Branch> branchList = current.branchesByDistrict.getOrDefault(LookupSnapshot.districtKey(districtName),
+                List.of());
         List<Long> branchServiceIds = new ArrayList<>();
-        List<Branch> branchList = findBranchesByDistrictName(districtName);
         for (Branch branch : branchList) {
-            String key = branch.getId() + "-" + serviceId;
-            Long branchServiceId = bsIdByBranchIdAndServiceId.get(key);
-            if (branchServiceId != null) {
+            long branchServiceId = getBranchServiceId(current, branch.getId(), serviceId);
+            if (branchServiceId != NO_ID) {
                 branchServiceIds.add(branchServiceId);
             }
         }
@@ -229,51 +211,60 @@ public class LookupUtil {
     }
 
     public List<Long> getBranchServiceIdsByBranchAndService(Long branchId, Long serviceId) {
+        scopeLookups.increment();
         List<Long> branchServiceIds = new ArrayList<>();
-        String key = branchId + "-" + serviceId;
-        Long branchServiceId = bsIdByBranchIdAndServiceId.get(key);
-        if (branchServiceId != null) {
+        long branchServiceId = getBranchServiceId(branchId, serviceId);
+        if (branchServiceId != NO_ID) {
             branchServiceIds.add(branchServiceId);
         }
         return branchServiceIds;
     }
 
     public List<Long> getBranchServiceIdsByBranchId(Long branchId) {
-        List<Long> branchServiceIds = new ArrayList<>();
-        List<Long> serviceIds = serviceIdListByBranchId.get(branchId);
-        if (serviceIds != null) {
-            for (Long serviceId : serviceIds) {
-                String key = branchId + "-" + serviceId;
-                Long branchServiceId = bsIdByBranchIdAndServiceId.get(key);
-                if (branchServiceId != null) {
-                    branchServiceIds.add(branchServiceId);
-                }
-            }
-        }
-        return branchServiceIds;
+        scopeLookups.increment();
+        return snapshot.bsIdsByBranchId.getOrDefault(branchId, List.of());
     }
 
     public List<Long> getBranchServiceIdsByServiceId(Long serviceId) {
-        List<Long> branchServiceIds = new ArrayList<>();
-        for (Map.Entry<String, Long> entry : bsIdByBranchIdAndServiceId.entrySet()) {
-            String key = entry.getKey();
-            String[] parts = key.split("-");
-            if (Long.parseLong(parts[1]) == serviceId) {
-                branchServiceIds.add(entry.getValue());
-            }
+        scopeLookups.increment();
+        return snapshot.bsIdsByServiceId.getOrDefault(serviceId, List.of());
+    }
+
+    // Primitive accessors for per-row hot paths (DTO mapping, analytics). They
+    // neither box nor allocate and return NO_ID when the id is unknown.
+
+    public long getBranchIdByBranchServiceId(long branchServiceId) {
+        return countIdLookup(snapshot.branchIdByBsId.get(branchServiceId, NO_ID));
+    }
+
+    public long getServiceIdByBranchServiceId(long branchServiceId) {
+        return countIdLookup(snapshot.serviceIdByBsId.get(branchServiceId, NO_ID));
+    }
+
+    public long getBranchServiceId(long branchId, long serviceId) {
+        return countIdLookup(getBranchServiceId(snapshot, branchId, serviceId));
+    }
+
+    // Branch and service ids and names in one lookup; null when the id is unknown
+    public BranchServiceLabel getBranchServiceLabel(long branchServiceId) {
+        BranchServiceLabel label = snapshot.labelByBsId.get(branchServiceId);
+        countIdLookup(label != null ? branchServiceId : NO_ID);
+        return label;
+    }
+
+    private long countIdLookup(long id) {
+        idLookups.increment();
+        if (id == NO_ID) {
+            idMisses.increment();
         }
-        return branchServiceIds;
+        return id;
     }
 
-    public Long[] getBranchIdAndServiceIdByBranchServiceId(Long branchServiceId) {
-        Long[] ids = new Long[2];
-        String key = branchIdAndServiceIdByBsId.get(branchServiceId);
-        if (key != null) {
-            String[] parts = key.split("-");
-            ids[0] = Long.parseLong(parts[0]); // Branch ID
-            ids[1] = Long.parseLong(parts[1]); // Service ID
+    private static long getBranchServiceId(LookupSnapshot current, long branchId, long serviceId) {
+        if (!LookupSnapshot.packable(branchId, serviceId)) {
+            return NO_ID;
         }
-        return ids;
+        return current.bsIdByBranchAndService.get(LookupSnapshot.pack(branchId, serviceId), NO_ID);
     }
 
 }
@@ -2,11 +2,14 @@ package com.bqomis.util;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import io.micrometer.core.annotation.Timed;
+
 import com.bqomis.dto.AppointmentDTO;
 import com.bqomis.dto.BranchDTO;
 import com.bqomis.dto.BranchServiceDTO;
@@ -17,6 +20,7 @@ import com.bqomis.model.Appointment;
 import com.bqomis.model.Branch;
 import com.bqomis.model.BranchService;
 import com.bqomis.model.User;
+import com.bqomis.repository.AppointmentRow;
 
 @Component
 public class MapperUtil {
@@ -60,12 +64,18 @@ public class MapperUtil {
         branchServiceDTO.setId(branchService.getId());
         branchServiceDTO.setBranchId(branchService.getBranchId());
         branchServiceDTO.setServiceId(branchService.getServiceId());
-        String branchName = lookupUtil.getBranchNameById(branchService.getBranchId());
-        String serviceName = lookupUtil.getServiceNameById(branchService.getServiceId());
-        String district = lookupUtil.getDistrictByBranchId(branchService.getBranchId());
-        branchServiceDTO.setBranchName(branchName);
-        branchServiceDTO.setServiceName(serviceName);
-        branchServiceDTO.setDistrict(district);
+        BranchServiceLabel label = branchService.getId() != null
+                ? lookupUtil.getBranchServiceLabel(branchService.getId())
+                : null;
+        if (label != null) {
+            branchServiceDTO.setBranchName(label.branchName());
+            branchServiceDTO.setServiceName(label.serviceName());
+            branchServiceDTO.setDistrict(label.district());
+        } else {
+            branchServiceDTO.setBranchName(lookupUtil.getBranchNameById(branchService.getBranchId()));
+            branchServiceDTO.setServiceName(lookupUtil.getServiceNameById(branchService.getServiceId()));
+            branchServiceDTO.setDistrict(lookupUtil.getDistrictByBranchId(branchService.getBranchId()));
+        }
 
         return branchServiceDTO;
     }
@@ -85,22 +95,18 @@ public class MapperUtil {
         if (appointment == null) {
             return null;
         }
-        AppointmentDTO appointmentDTO = new AppointmentDTO();
-        appointmentDTO.setId(appointment.getId());
-        appointmentDTO.setUserId(appointment.getUserId());
-        appointmentDTO.setBranchServiceId(appointment.getBranchServiceId());
-        Long[] branchIdAndServiceId = lookupUtil
-                .getBranchIdAndServiceIdByBranchServiceId(appointment.getBranchServiceId());
-        appointmentDTO.setBranchId(branchIdAndServiceId[0]);
-        appointmentDTO.setBranchName(lookupUtil.getBranchNameById(branchIdAndServiceId[0]));
-        appointmentDTO.setServiceId(branchIdAndServiceId[1]);
-        appointmentDTO.setServiceName(lookupUtil.getServiceNameById(branchIdAndServiceId[1]));
-        appointmentDTO.setDate(appointment.getDate().toString());
-        appointmentDTO.setTime(appointment.getTime().toString());
-        appointmentDTO.setStatus(appointment.getStatus());
-        return appointmentDTO;
+        return toAppointmentDTO(appointment.getId(), appointment.getUserId(), appointment.getBranchServiceId(),
+                appointment.getDate(), appointment.getTime(), appointment.getStatus());
     }
 
+    public AppointmentDTO toAppointmentDTO(AppointmentRow row) {
+        if (row == null) {
+            return null;
+        }
+        return toAppointmentDTO(row.id(), row.userId(), row.branchServiceId(), row.date(), row.time(), row.status());
+    }
+
+    @Timed("bqomis.mapper.appointments")
     public List<AppointmentDTO> toAppointmentDTOList(List<Appointment> appointments) {
         if (appointments == null) {
             return null;
@@ -108,6 +114,37 @@ public class MapperUtil {
         return appointments.stream().map(this::toAppointmentDTO).toList();
     }
 
+    @Timed("bqomis.mapper.appointments")
+    public List<AppointmentDTO> toAppointmentDTOs(List<AppointmentRow> rows) {
+        if (rows == null) {
+            return null;
+        }
+        List<AppointmentDTO> appointmentDTOs = new ArrayList<>(rows.size());
+        for (AppointmentRow row : rows) {
+            appointmentDTOs.add(toAppointmentDTO(row));
+        }
+        return appointmentDTOs;
+    }
+
+    private AppointmentDTO toAppointmentDTO(Long id, Long userId, Long branchServiceId, LocalDate date,
+            LocalTime time, String status) {
+        AppointmentDTO appointmentDTO = new AppointmentDTO();
+        appointmentDTO.setId(id);
+        appointmentDTO.setUserId(userId);
+        appointmentDTO.setBranchServiceId(branchServiceId);
+        BranchServiceLabel label = lookupUtil.getBranchServiceLabel(branchServiceId);
+        if (label != null) {
+            appointmentDTO.setBranchId(label.branchId());
+            appointmentDTO.setBranchName(label.branchName());
+            appointmentDTO.setServiceId(label.serviceId());
+            appointmentDTO.setServiceName(label.serviceName());
+        }
+        appointmentDTO.setDate(TimeLabels.dateLabel(date));
+        appointmentDTO.setTime(TimeLabels.timeLabel(time));
+        appointmentDTO.setStatus(status);
+        return appointmentDTO;
+    }
+
     public Appointment toAppointment(AppointmentDTO appointmentDTO) {
         if (appointmentDTO == null) {
             return null;
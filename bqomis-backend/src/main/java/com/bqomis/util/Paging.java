@@ -0,0 +1,52 @@
+package com.bqomis.util;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
+
+// Page/size and afterId (keyset) handling shared by the list endpoints. Sizes are
+// clamped server side so no single request can load a whole table.
+public final class Paging {
+
+    public static final int DEFAULT_SIZE = 100;
+    public static final int MAX_SIZE = 500;
+
+    // Set on a list response when more rows may follow; pass it back as afterId
+    public static final String NEXT_AFTER_ID_HEADER = "X-Next-After-Id";
+
+    private static final Sort BY_ID = Sort.by("id");
+
+    private Paging() {
+    }
+
+    // Rows ordered by id. With an afterId cursor the page number is ignored: the
+    // query seeks past that id instead of skipping over the earlier rows.
+    public static Pageable byId(int page, int size, Long afterId) {
+        int pageNumber = afterId != null ? 0 : Math.max(page, 0);
+        return PageRequest.of(pageNumber, clampSize(size), BY_ID);
+    }
+
+    // Ids are allocated from 1, so "after 0" is the first page
+    public static long afterId(Long afterId) {
+        return afterId != null ? afterId : 0L;
+    }
+
+    public static int clampSize(int size) {
+        return size < 1 ? DEFAULT_SIZE : Math.min(size, MAX_SIZE);
+    }
+
+    // Plain JSON array body, as before, with the next cursor in a header
+    public static <T> ResponseEntity<List<T>> toResponse(Slice<T> slice, Function<T, Long> idOf) {
+        List<T> content = slice.getContent();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (slice.hasNext() && !content.isEmpty()) {
+            response.header(NEXT_AFTER_ID_HEADER, String.valueOf(idOf.apply(content.get(content.size() - 1))));
+        }
+        return response.body(content);
+    }
+}
@@ -0,0 +1,57 @@
+package com.bqomis.util;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Preformatted "HH:mm" and ISO date strings for the appointment mappers and the
+// availability view, so list endpoints do not format the same values per row.
+// Both tables have a fixed size.
+public final class TimeLabels {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    // Dates this many days either side of startup are cached; others are formatted
+    private static final int DATE_WINDOW_DAYS = 5 * 366;
+
+    // "HH:mm" for every whole minute of the day, as LocalTime.toString() prints them
+    private static final String[] MINUTE_LABELS = new String[MINUTES_PER_DAY];
+
+    static {
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            MINUTE_LABELS[minute] = LocalTime.of(minute / 60, minute % 60).toString();
+        }
+    }
+
+    private static final long FIRST_CACHED_EPOCH_DAY = LocalDate.now().toEpochDay() - DATE_WINDOW_DAYS;
+    // Filled on first use. A racing write stores an equal string, and String is
+    // safe to publish without synchronisation.
+    private static final String[] DATE_LABELS = new String[2 * DATE_WINDOW_DAYS + 1];
+
+    private TimeLabels() {
+    }
+
+    public static String minuteLabel(int minuteOfDay) {
+        return MINUTE_LABELS[minuteOfDay];
+    }
+
+    // Slot times are whole minutes; anything finer falls back to toString()
+    public static String timeLabel(LocalTime time) {
+        if (time.getSecond() == 0 && time.getNano() == 0) {
+            return MINUTE_LABELS[time.getHour() * 60 + time.getMinute()];
+        }
+        return time.toString();
+    }
+
+    public static String dateLabel(LocalDate date) {
+        long index = date.toEpochDay() - FIRST_CACHED_EPOCH_DAY;
+        if (index < 0 || index >= DATE_LABELS.length) {
+            return date.toString();
+        }
+        String label = DATE_LABELS[(int) index];
+        if (label == null) {
+            label = date.toString();
+            DATE_LABELS[(int) index] = label;
+        }
+        return label;
+    }
+}
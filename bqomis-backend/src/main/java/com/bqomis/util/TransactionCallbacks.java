@@ -0,0 +1,37 @@
+package com.bqomis.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Defers in-memory side effects until the surrounding transaction has ended, so
+// caches and counters never reflect writes that were rolled back.
+public final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    // Runs the callbacks when the current transaction ends, or onCommit right
+    // away when there is none. Either callback may be null.
+    public static void afterCompletion(Runnable onCommit, Runnable onRollback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (onCommit != null) {
+                onCommit.run();
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED && onCommit != null) {
+                    onCommit.run();
+                } else if (status != STATUS_COMMITTED && onRollback != null) {
+                    onRollback.run();
+                }
+            }
+        });
+    }
+
+    public static void afterCommit(Runnable onCommit) {
+        afterCompletion(onCommit, null);
+    }
+}
@@ -0,0 +1,44 @@
+-- V10: Serialise ensure_appointment_partitions
+-- Every backend node calls ensure_appointment_partitions (V8) on startup and
+-- nightly. Two calls creating the same month could both see it missing and the
+-- second CREATE TABLE or ATTACH PARTITION would fail. The function now takes a
+-- transaction-scoped advisory lock first, so concurrent calls run one after
+-- another and the later one finds the partitions already there. The key is the
+-- oid of the appointments table, in the single 64-bit key space (slot locks use
+-- the two-key form, which does not overlap it).
+
+BEGIN;
+
+CREATE OR REPLACE FUNCTION ensure_appointment_partitions(from_date DATE, through_date DATE) RETURNS INT AS $$
+DECLARE
+    month_start DATE := date_trunc('month', from_date)::DATE;
+    month_end DATE;
+    partition_name TEXT;
+    created INT := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock('appointments'::regclass::oid::BIGINT);
+    WHILE month_start <= through_date LOOP
+        month_end := (month_start + INTERVAL '1 month')::DATE;
+        partition_name := 'appointments_' || to_char(month_start, 'YYYY_MM');
+        IF to_regclass(partition_name) IS NULL THEN
+            IF EXISTS (SELECT 1 FROM appointments_default WHERE date >= month_start AND date < month_end) THEN
+                -- A new partition may not overlap rows in the default partition
+                EXECUTE format('CREATE TABLE %I (LIKE appointments INCLUDING DEFAULTS INCLUDING CONSTRAINTS)',
+                        partition_name);
+                EXECUTE format('WITH moved AS (DELETE FROM appointments_default WHERE date >= %L AND date < %L '
+                        'RETURNING *) INSERT INTO %I SELECT * FROM moved', month_start, month_end, partition_name);
+                EXECUTE format('ALTER TABLE appointments ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                        partition_name, month_start, month_end);
+            ELSE
+                EXECUTE format('CREATE TABLE %I PARTITION OF appointments FOR VALUES FROM (%L) TO (%L)',
+                        partition_name, month_start, month_end);
+            END IF;
+            created := created + 1;
+        END IF;
+        month_start := month_end;
+    END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+COMMIT;
@@ -0,0 +1,26 @@
+-- V11: Upper-case appointment statuses
+-- Statuses used to be stored as sent, so some rows read 'Scheduled' or
+-- 'cancelled'. Those rows escaped every status comparison (slot capacity
+-- counts, the active-appointments partial index, branch load) while the
+-- filtered search compared case-insensitively. Existing rows are converted
+-- once, the daily rollup (V6) is merged onto the converted statuses, and a
+-- check constraint keeps new rows upper case; Appointment.setStatus converts
+-- on write.
+
+BEGIN;
+
+UPDATE appointments SET status = UPPER(status) WHERE status <> UPPER(status);
+
+INSERT INTO appointment_daily_rollup (date, branch_service_id, hour, status, appointment_count)
+SELECT date, branch_service_id, hour, UPPER(status), SUM(appointment_count)
+FROM appointment_daily_rollup
+WHERE status <> UPPER(status)
+GROUP BY 1, 2, 3, 4
+ON CONFLICT (date, branch_service_id, hour, status)
+    DO UPDATE SET appointment_count = appointment_daily_rollup.appointment_count + EXCLUDED.appointment_count;
+
+DELETE FROM appointment_daily_rollup WHERE status <> UPPER(status);
+
+ALTER TABLE appointments ADD CONSTRAINT appointments_status_upper CHECK (status = UPPER(status));
+
+COMMIT;
@@ -0,0 +1,32 @@
+-- V4: Indexes for the appointments table
+-- Every AppointmentRepository query filters on date, branch_service_id, user_id
+-- and/or status, but V1 only created the primary key.
+
+BEGIN;
+
+-- "Today" views, per-day lookups and date ranges restricted to branch services
+CREATE INDEX IF NOT EXISTS idx_appointments_bs_date_time
+    ON appointments (branch_service_id, date, time);
+
+-- Date-only ranges (peak times, filtered search without a branch) and the
+-- (date, time, id) keyset ordering used by /api/appointments/filtered
+CREATE INDEX IF NOT EXISTS idx_appointments_date_time_id
+    ON appointments (date, time, id);
+
+-- A client's appointment history
+CREATE INDEX IF NOT EXISTS idx_appointments_user_date
+    ON appointments (user_id, date);
+
+-- Appointments still occupying a slot; a small fraction of the table once
+-- history accumulates
+CREATE INDEX IF NOT EXISTS idx_appointments_active_bs_date_time
+    ON appointments (branch_service_id, date, time)
+    WHERE status IN ('SCHEDULED', 'CHECKED_IN');
+
+-- Supports the ON DELETE CASCADE from branches and branch/service lookups
+CREATE INDEX IF NOT EXISTS idx_branch_services_branch_service
+    ON branch_services (branch_id, service_id);
+
+ANALYZE appointments;
+
+COMMIT;
@@ -0,0 +1,12 @@
+-- V5: Pooled sequence ids for appointments
+-- Appointment ids are now allocated by Hibernate's pooled optimizer in blocks
+-- of 50 (allocationSize = 50 on the entity), so inserts no longer need a round
+-- trip per row and can be batched. The BIGSERIAL sequence is kept; only its
+-- increment changes, so existing ids stay as they are and new ids continue
+-- after the current value.
+
+BEGIN;
+
+ALTER SEQUENCE appointments_id_seq INCREMENT BY 50;
+
+COMMIT;
@@ -0,0 +1,28 @@
+-- V6: Daily appointment rollup
+-- Appointment counts per (date, branch service, hour, status), kept current by
+-- AppointmentService on every appointment write. /api/analytics reads from
+-- here instead of scanning appointments.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS appointment_daily_rollup (
+    date DATE NOT NULL,
+    branch_service_id BIGINT NOT NULL REFERENCES branch_services(id) ON DELETE CASCADE,
+    hour INT NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    appointment_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (date, branch_service_id, hour, status)
+);
+
+CREATE INDEX IF NOT EXISTS idx_appointment_daily_rollup_bs_date
+    ON appointment_daily_rollup (branch_service_id, date);
+
+-- Backfill from existing history
+INSERT INTO appointment_daily_rollup (date, branch_service_id, hour, status, appointment_count)
+SELECT date, branch_service_id, CAST(EXTRACT(HOUR FROM time) AS INT), status, COUNT(*)
+FROM appointments
+GROUP BY 1, 2, 3, 4
+ON CONFLICT (date, branch_service_id, hour, status)
+    DO UPDATE SET appointment_count = EXCLUDED.appointment_count;
+
+COMMIT;
@@ -0,0 +1,62 @@
+-- V7: Reference data change notifications
+-- Every write to districts, branches, services, branch_services and the two
+-- configuration tables bumps a global version and sends a NOTIFY on the
+-- reference_data channel with the table, row id and new version. Each backend
+-- node LISTENs and applies the change to its in-memory copies; a gap in the
+-- versions it receives means it missed something and reloads everything.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS reference_data_version (
+    id SMALLINT PRIMARY KEY CHECK (id = 1),
+    version BIGINT NOT NULL
+);
+
+INSERT INTO reference_data_version (id, version) VALUES (1, 0) ON CONFLICT (id) DO NOTHING;
+
+-- The version row is locked until commit, so versions are handed out in commit
+-- order and notifications (delivered at commit) arrive in version order
+CREATE OR REPLACE FUNCTION notify_reference_data_change() RETURNS trigger AS $$
+DECLARE
+    next_version BIGINT;
+    row_id BIGINT;
+BEGIN
+    UPDATE reference_data_version SET version = version + 1 WHERE id = 1 RETURNING version INTO next_version;
+    IF TG_OP = 'DELETE' THEN
+        row_id := OLD.id;
+    ELSE
+        row_id := NEW.id;
+    END IF;
+    PERFORM pg_notify('reference_data', json_build_object(
+        'entity', TG_TABLE_NAME, 'id', row_id, 'op', TG_OP, 'version', next_version)::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS districts_notify_change ON districts;
+CREATE TRIGGER districts_notify_change AFTER INSERT OR UPDATE OR DELETE ON districts
+    FOR EACH ROW EXECUTE FUNCTION notify_reference_data_change();
+
+DROP TRIGGER IF EXISTS branches_notify_change ON branches;
+CREATE TRIGGER branches_notify_change AFTER INSERT OR UPDATE OR DELETE ON branches
+    FOR EACH ROW EXECUTE FUNCTION notify_reference_data_change();
+
+DROP TRIGGER IF EXISTS services_notify_change ON services;
+CREATE TRIGGER services_notify_change AFTER INSERT OR UPDATE OR DELETE ON services
+    FOR EACH ROW EXECUTE FUNCTION notify_reference_data_change();
+
+DROP TRIGGER IF EXISTS branch_services_notify_change ON branch_services;
+CREATE TRIGGER branch_services_notify_change AFTER INSERT OR UPDATE OR DELETE ON branch_services
+    FOR EACH ROW EXECUTE FUNCTION notify_reference_data_change();
+
+DROP TRIGGER IF EXISTS branch_configuration_overrides_notify_change ON branch_configuration_overrides;
+CREATE TRIGGER branch_configuration_overrides_notify_change
+    AFTER INSERT OR UPDATE OR DELETE ON branch_configuration_overrides
+    FOR EACH ROW EXECUTE FUNCTION notify_reference_data_change();
+
+DROP TRIGGER IF EXISTS global_application_configuration_notify_change ON global_application_configuration;
+CREATE TRIGGER global_application_configuration_notify_change
+    AFTER INSERT OR UPDATE OR DELETE ON global_application_configuration
+    FOR EACH ROW EXECUTE FUNCTION notify_reference_data_change();
+
+COMMIT;
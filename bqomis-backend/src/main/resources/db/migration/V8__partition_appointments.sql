@@ -0,0 +1,97 @@
+-- V8: Monthly range partitioning of appointments
+-- appointments becomes a table partitioned by date with one partition per month
+-- (appointments_YYYY_MM) plus a default partition for anything outside them.
+-- Date-bounded queries only touch the months they cover, and an old month can
+-- be detached or dropped as a whole instead of deleted row by row.
+--
+-- The primary key has to include the partition key, so it becomes (id, date);
+-- ids still come from appointments_id_seq (INCREMENT BY 50, see V5) and stay
+-- unique, though a lookup by id alone (findById) now probes each partition's
+-- key index. Nothing references appointments by foreign key (the daily rollup
+-- references branch_services), so the table can be swapped in place. The copy
+-- holds an exclusive lock on appointments for its duration.
+
+BEGIN;
+
+ALTER TABLE appointments RENAME TO appointments_unpartitioned;
+ALTER TABLE appointments_unpartitioned RENAME CONSTRAINT appointments_pkey TO appointments_unpartitioned_pkey;
+-- Keep the sequence (and its current value) when the old table is dropped
+ALTER SEQUENCE appointments_id_seq OWNED BY NONE;
+
+CREATE TABLE appointments (
+    id BIGINT NOT NULL DEFAULT nextval('appointments_id_seq'),
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    branch_service_id BIGINT NOT NULL REFERENCES branch_services(id) ON DELETE CASCADE,
+    date DATE NOT NULL,
+    time TIME NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    CONSTRAINT appointments_pkey PRIMARY KEY (id, date)
+) PARTITION BY RANGE (date);
+
+ALTER SEQUENCE appointments_id_seq OWNED BY appointments.id;
+
+CREATE TABLE appointments_default PARTITION OF appointments DEFAULT;
+
+-- Creates the monthly partitions covering from_date..through_date that do not exist
+-- yet and returns how many were created. Rows already sitting in the default
+-- partition for a new month are moved into it. Called by AppointmentPartitionService
+-- on startup and nightly.
+CREATE OR REPLACE FUNCTION ensure_appointment_partitions(from_date DATE, through_date DATE) RETURNS INT AS $$
+DECLARE
+    month_start DATE := date_trunc('month', from_date)::DATE;
+    month_end DATE;
+    partition_name TEXT;
+    created INT := 0;
+BEGIN
+    WHILE month_start <= through_date LOOP
+        month_end := (month_start + INTERVAL '1 month')::DATE;
+        partition_name := 'appointments_' || to_char(month_start, 'YYYY_MM');
+        IF to_regclass(partition_name) IS NULL THEN
+            IF EXISTS (SELECT 1 FROM appointments_default WHERE date >= month_start AND date < month_end) THEN
+                -- A new partition may not overlap rows in the default partition
+                EXECUTE format('CREATE TABLE %I (LIKE appointments INCLUDING DEFAULTS INCLUDING CONSTRAINTS)',
+                        partition_name);
+                EXECUTE format('WITH moved AS (DELETE FROM appointments_default WHERE date >= %L AND date < %L '
+                        'RETURNING *) INSERT INTO %I SELECT * FROM moved', month_start, month_end, partition_name);
+                EXECUTE format('ALTER TABLE appointments ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                        partition_name, month_start, month_end);
+            ELSE
+                EXECUTE format('CREATE TABLE %I PARTITION OF appointments FOR VALUES FROM (%L) TO (%L)',
+                        partition_name, month_start, month_end);
+            END IF;
+            created := created + 1;
+        END IF;
+        month_start := month_end;
+    END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Every month with history, through three months ahead
+SELECT ensure_appointment_partitions(
+    LEAST(COALESCE((SELECT MIN(date) FROM appointments_unpartitioned), CURRENT_DATE), CURRENT_DATE),
+    (CURRENT_DATE + INTERVAL '3 months')::DATE);
+
+INSERT INTO appointments (id, user_id, branch_service_id, date, time, status)
+SELECT id, user_id, branch_service_id, date, time, status
+FROM appointments_unpartitioned;
+
+DROP TABLE appointments_unpartitioned;
+
+-- The V4 indexes, now created on every partition (and on future ones)
+CREATE INDEX IF NOT EXISTS idx_appointments_bs_date_time
+    ON appointments (branch_service_id, date, time);
+
+CREATE INDEX IF NOT EXISTS idx_appointments_date_time_id
+    ON appointments (date, time, id);
+
+CREATE INDEX IF NOT EXISTS idx_appointments_user_date
+    ON appointments (user_id, date);
+
+CREATE INDEX IF NOT EXISTS idx_appointments_active_bs_date_time
+    ON appointments (branch_service_id, date, time)
+    WHERE status IN ('SCHEDULED', 'CHECKED_IN');
+
+ANALYZE appointments;
+
+COMMIT;
@@ -0,0 +1,18 @@
+-- V9: Archived appointment months
+-- AppointmentArchiveService moves whole months of old appointments out of the
+-- partitioned appointments table (V8) into compressed segment files on disk and
+-- records each one here. Months are archived oldest first, so every date before
+-- the month after MAX(month) lives in segments. The daily rollup (V6) keeps its
+-- rows for archived months, so analytics is unaffected.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS appointment_archive (
+    month DATE PRIMARY KEY,
+    file_name VARCHAR(255) NOT NULL,
+    row_count BIGINT NOT NULL,
+    archived_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CHECK (month = date_trunc('month', month)::DATE)
+);
+
+COMMIT;
@@ -0,0 +1,68 @@
+package com.bqomis;
+
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.bqomis.util.LookupUtil;
+
+// Base for tests that need the real schema: one PostgreSQL container for the
+// whole run, migrated by Flyway when the first context starts. The container is
+// started once rather than per class so cached Spring contexts stay connected.
+// Skipped where Docker is not available.
+@SpringBootTest(properties = "bqomis.sync.enabled=false")
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class PostgresIntegrationTest {
+
+    @ServiceConnection
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    static {
+        if (DockerClientFactory.instance().isDockerAvailable()) {
+            POSTGRES.start();
+        }
+    }
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+    @Autowired
+    protected LookupUtil lookupUtil;
+
+    protected long anyUserId() {
+        return jdbcTemplate.queryForObject("SELECT MIN(id) FROM users", Long.class);
+    }
+
+    protected long branchId(int index) {
+        return jdbcTemplate.queryForObject("SELECT id FROM branches ORDER BY id OFFSET ? LIMIT 1", Long.class,
+                index);
+    }
+
+    protected long serviceId(int index) {
+        return jdbcTemplate.queryForObject("SELECT id FROM services ORDER BY id OFFSET ? LIMIT 1", Long.class,
+                index);
+    }
+
+    // The seed data has no branch services; tests create the ones they use
+    protected long createBranchService(long branchId, long serviceId) {
+        Long id = jdbcTemplate.queryForObject(
+                "INSERT INTO branch_services (branch_id, service_id) VALUES (?, ?) RETURNING id", Long.class,
+                branchId, serviceId);
+        lookupUtil.reload();
+        return id;
+    }
+
+    protected long insertAppointment(long userId, long branchServiceId, LocalDate date, LocalTime time,
+            String status) {
+        return jdbcTemplate.queryForObject("INSERT INTO appointments (user_id, branch_service_id, date, time, status) "
+                + "VALUES (?, ?, ?, ?, ?) RETURNING id", Long.class, userId, branchServiceId, date, Time.valueOf(time),
+                status);
+    }
+}
@@ -0,0 +1,101 @@
+package com.bqomis.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Semaphore;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DatabaseConcurrencyLimiterTest {
+
+    private DatabaseConcurrencyLimiter limiter;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new DatabaseConcurrencyLimiter();
+        ReflectionTestUtils.setField(limiter, "maxConcurrency", 1);
+        ReflectionTestUtils.setField(limiter, "acquireTimeoutMs", 50L);
+        limiter.init();
+        registry = new SimpleMeterRegistry();
+        limiter.bindTo(registry);
+    }
+
+    private double available() {
+        return registry.get("bqomis.db.permits.available").gauge().value();
+    }
+
+    @Test
+    void nestedCallsPassThroughOnTheOuterPermit() throws Throwable {
+        ProceedingJoinPoint inner = mock(ProceedingJoinPoint.class);
+        when(inner.proceed()).thenReturn("inner");
+        ProceedingJoinPoint outer = mock(ProceedingJoinPoint.class);
+        when(outer.proceed()).thenAnswer(invocation -> {
+            assertThat(available()).isZero();
+            // The only permit is held; a nested call waiting for one would time out
+            return limiter.limit(inner);
+        });
+
+        assertThat(limiter.limit(outer)).isEqualTo("inner");
+        assertThat(available()).isEqualTo(1);
+    }
+
+    @Test
+    void callsInsideATransactionPassThrough() throws Throwable {
+        ((Semaphore) ReflectionTestUtils.getField(limiter, "permits")).acquire();
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenReturn("done");
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertThat(limiter.limit(joinPoint)).isEqualTo("done");
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    @Test
+    void waitingPastTheTimeoutAnswers503() throws Throwable {
+        Semaphore permits = (Semaphore) ReflectionTestUtils.getField(limiter, "permits");
+        permits.acquire();
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+
+        assertThatThrownBy(() -> limiter.limit(joinPoint))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        verify(joinPoint, never()).proceed();
+        assertThat(registry.get("bqomis.db.permits.rejected").counter().count()).isEqualTo(1);
+
+        permits.release();
+        when(joinPoint.proceed()).thenReturn("done");
+        assertThat(limiter.limit(joinPoint)).isEqualTo("done");
+    }
+
+    @Test
+    void permitIsReleasedWhenTheCallFails() throws Throwable {
+        ProceedingJoinPoint failing = mock(ProceedingJoinPoint.class);
+        when(failing.proceed()).thenThrow(new IllegalStateException("boom"));
+
+        assertThatThrownBy(() -> limiter.limit(failing)).hasMessage("boom");
+        assertThat(available()).isEqualTo(1);
+
+        // The thread no longer counts as holding a permit: the next call takes one
+        ProceedingJoinPoint next = mock(ProceedingJoinPoint.class);
+        when(next.proceed()).thenAnswer(invocation -> available());
+        assertThat(limiter.limit(next)).isEqualTo(0.0);
+        assertThat(available()).isEqualTo(1);
+    }
+}
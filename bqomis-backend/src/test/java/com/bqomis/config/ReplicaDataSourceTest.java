@@ -0,0 +1,155 @@
+package com.bqomis.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ReplicaDataSourceTest {
+
+    private DataSource primary;
+    private DataSource replica;
+    private Connection primaryConnection;
+    private Connection replicaConnection;
+    private ReplicaDataSource replicaDataSource;
+    private DataSource dataSource;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = mock(DataSource.class);
+        replica = mock(DataSource.class);
+        primaryConnection = mock(Connection.class);
+        replicaConnection = mock(Connection.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        replicaDataSource = new ReplicaDataSource(primary, replica, 5000);
+        meterRegistry = new SimpleMeterRegistry();
+        replicaDataSource.bindTo(meterRegistry);
+        // Wired as in the application
+        dataSource = new ReplicaDataSourceConfig().dataSource(primary, replicaDataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReplicaDataSource.setReplicaTransaction(false);
+    }
+
+    private void replicaUsable(boolean usable) {
+        ReflectionTestUtils.setField(replicaDataSource, "usable", usable);
+    }
+
+    private double readConnections(String target) {
+        return meterRegistry.counter("bqomis.datasource.read.connections", "target", target).count();
+    }
+
+    // The proxy only fetches a real connection at the first statement
+    private static void use(Connection connection) throws SQLException {
+        connection.createStatement();
+    }
+
+    @Test
+    void replicaReadOnlyWorkGoesToAUsableReplica() throws SQLException {
+        replicaUsable(true);
+        ReplicaDataSource.setReplicaTransaction(true);
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setReadOnly(true);
+            use(connection);
+        }
+
+        verify(replicaConnection).createStatement();
+        verify(primaryConnection, never()).createStatement();
+        assertThat(readConnections("replica")).isEqualTo(1);
+    }
+
+    @Test
+    void otherReadOnlyWorkStaysOnThePrimary() throws SQLException {
+        // As in a repository method's own read-only transaction
+        replicaUsable(true);
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setReadOnly(true);
+            use(connection);
+        }
+
+        verify(replica, never()).getConnection();
+        verify(primaryConnection).setReadOnly(true);
+        verify(primaryConnection).createStatement();
+    }
+
+    @Test
+    void readWriteWorkStaysOnThePrimary() throws SQLException {
+        ReplicaDataSource.setReplicaTransaction(true);
+        replicaUsable(true);
+
+        try (Connection connection = dataSource.getConnection()) {
+            use(connection);
+        }
+
+        verify(primaryConnection).createStatement();
+        verify(replica, never()).getConnection();
+    }
+
+    @Test
+    void credentialsGoToThePrimary() throws SQLException {
+        when(primary.getConnection("reporting", "secret")).thenReturn(primaryConnection);
+
+        assertThat(replicaDataSource.getConnection("reporting", "secret")).isSameAs(primaryConnection);
+
+        verify(primaryConnection).setReadOnly(true);
+    }
+
+    @Test
+    void unusableReplicaFallsBackToAReadOnlyPrimaryConnection() throws SQLException {
+        ReplicaDataSource.setReplicaTransaction(true);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setReadOnly(true);
+            use(connection);
+        }
+
+        verify(replica, never()).getConnection();
+        verify(primaryConnection).setReadOnly(true);
+        verify(primaryConnection).createStatement();
+        assertThat(readConnections("primary")).isEqualTo(1);
+    }
+
+    @Test
+    void failedReplicaConnectionMarksItUnusable() throws SQLException {
+        replicaUsable(true);
+        ReplicaDataSource.setReplicaTransaction(true);
+        when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+        assertThat(replicaDataSource.getConnection()).isSameAs(primaryConnection);
+
+        verify(primaryConnection).setReadOnly(true);
+        assertThat(replicaDataSource.isUsable()).isFalse();
+        // Until the next lag check the replica is not tried again
+        replicaDataSource.getConnection();
+        verify(replica).getConnection();
+    }
+
+    @Test
+    void lagCheckWithoutThePrimaryKeepsTheLastVerdict() throws SQLException {
+        replicaUsable(true);
+        when(primary.getConnection()).thenThrow(new SQLException("Connection refused"));
+        when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+        // Without the primary's position the last verdict stands
+        replicaDataSource.checkLag();
+        assertThat(replicaDataSource.isUsable()).isTrue();
+    }
+}
@@ -0,0 +1,76 @@
+package com.bqomis.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+
+class ReplicaRoutingTransactionManagerTest {
+
+    private ReplicaRoutingTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        when(entityManagerFactory.createEntityManager()).thenAnswer(invocation -> {
+            EntityManager entityManager = mock(EntityManager.class);
+            EntityTransaction transaction = mock(EntityTransaction.class);
+            when(entityManager.getTransaction()).thenReturn(transaction);
+            when(entityManager.isOpen()).thenReturn(true);
+            return entityManager;
+        });
+        transactionManager = new ReplicaRoutingTransactionManager(entityManagerFactory);
+    }
+
+    private static DefaultTransactionAttribute readOnly(String... labels) {
+        DefaultTransactionAttribute attribute = new DefaultTransactionAttribute();
+        attribute.setReadOnly(true);
+        attribute.setLabels(List.of(labels));
+        return attribute;
+    }
+
+    @Test
+    void onlyLabelledReadOnlyTransactionsUseTheReplica() {
+        TransactionStatus replica = transactionManager.getTransaction(readOnly(ReplicaDataSource.REPLICA_LABEL));
+        assertThat(ReplicaDataSource.isReplicaTransaction()).isTrue();
+        transactionManager.commit(replica);
+        assertThat(ReplicaDataSource.isReplicaTransaction()).isFalse();
+
+        // A repository method's own read-only transaction
+        TransactionStatus plain = transactionManager.getTransaction(readOnly());
+        assertThat(ReplicaDataSource.isReplicaTransaction()).isFalse();
+        transactionManager.commit(plain);
+
+        DefaultTransactionAttribute readWrite = readOnly(ReplicaDataSource.REPLICA_LABEL);
+        readWrite.setReadOnly(false);
+        TransactionStatus write = transactionManager.getTransaction(readWrite);
+        assertThat(ReplicaDataSource.isReplicaTransaction()).isFalse();
+        transactionManager.rollback(write);
+    }
+
+    @Test
+    void markFollowsSuspensionByAnInnerTransaction() {
+        TransactionStatus outer = transactionManager.getTransaction(readOnly(ReplicaDataSource.REPLICA_LABEL));
+
+        DefaultTransactionAttribute requiresNew = new DefaultTransactionAttribute(
+                TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        TransactionStatus inner = transactionManager.getTransaction(requiresNew);
+        assertThat(ReplicaDataSource.isReplicaTransaction()).isFalse();
+        transactionManager.commit(inner);
+
+        assertThat(ReplicaDataSource.isReplicaTransaction()).isTrue();
+        transactionManager.commit(outer);
+        assertThat(ReplicaDataSource.isReplicaTransaction()).isFalse();
+    }
+}
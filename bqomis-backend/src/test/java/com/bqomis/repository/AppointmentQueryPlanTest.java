@@ -0,0 +1,256 @@
+package com.bqomis.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.test.context.TestPropertySource;
+
+import com.bqomis.PostgresIntegrationTest;
+import com.bqomis.model.Appointment;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Query-plan regression suite for AppointmentRepository. Seeds a month with a
+// few hundred thousand appointments, records the SQL Hibernate generates for
+// each repository method and EXPLAINs it with real parameter values: no method
+// may sequentially scan a populated appointments partition. A dropped or
+// unusable index (V4, recreated on the partitions by V8) fails here rather
+// than in production. Period queries must also be pruned to the monthly
+// partitions (V8) their range covers.
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.bqomis.repository.RecordingStatementInspector")
+class AppointmentQueryPlanTest extends PostgresIntegrationTest {
+
+    private static final int ROWS = 300_000;
+    private static final int BRANCH_SERVICES = 40;
+    // Partitions with more rows than this must be read through an index
+    private static final long LARGE_PARTITION_ROWS = 10_000;
+
+    private static final Pattern SQL_COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Set<String> INDEX_SCANS = Set.of("Index Scan", "Index Only Scan", "Bitmap Index Scan");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    private final LocalDate monthStart = LocalDate.now().withDayOfMonth(1);
+    private final LocalDate day = monthStart.plusDays(10);
+    private List<Long> branchServiceIds;
+    private long branchServiceId;
+    private long userId;
+
+    @BeforeAll
+    void seed() {
+        branchServiceIds = jdbcTemplate.queryForList("INSERT INTO branch_services (branch_id, service_id) "
+                + "SELECT b.id, s.id FROM branches b CROSS JOIN services s ORDER BY b.id DESC, s.id DESC LIMIT ? "
+                + "RETURNING id", Long.class, BRANCH_SERVICES);
+        lookupUtil.reload();
+        branchServiceId = branchServiceIds.get(0);
+        userId = anyUserId();
+
+        // Spread over every user and branch service, 28 days and 16 slots a day
+        jdbcTemplate.update("INSERT INTO appointments (user_id, branch_service_id, date, time, status) "
+                + "SELECT u.ids[1 + g % array_length(u.ids, 1)], b.ids[1 + (g / 7) % array_length(b.ids, 1)], "
+                + "?::DATE + (g % 28), TIME '09:00' + (g % 16) * INTERVAL '30 minutes', "
+                + "(ARRAY['SCHEDULED', 'CHECKED_IN', 'COMPLETED', 'CANCELLED', 'NO_SHOW'])[1 + g % 5] "
+                + "FROM generate_series(1, ?) g, (SELECT array_agg(id) AS ids FROM users) u, "
+                + "(SELECT ?::BIGINT[] AS ids) b",
+                monthStart, ROWS, branchServiceIds.toArray(new Long[0]));
+        jdbcTemplate.execute("ANALYZE appointments");
+    }
+
+    @AfterAll
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM appointments WHERE branch_service_id = ANY (?)",
+                (Object) branchServiceIds.toArray(new Long[0]));
+        jdbcTemplate.update("DELETE FROM branch_services WHERE id = ANY (?)",
+                (Object) branchServiceIds.toArray(new Long[0]));
+        lookupUtil.reload();
+    }
+
+    @Test
+    void dayViewForBranchServices() throws Exception {
+        assertIndexed(() -> appointmentRepository.findAppointmentsByDateAndBranchServiceIds(day,
+                List.of(branchServiceId)), day, branchServiceId);
+    }
+
+    @Test
+    void dayViewForOneBranchService() throws Exception {
+        assertIndexed(() -> appointmentRepository.findAppointmentsByDateAndBranchServiceId(day, branchServiceId),
+                day, branchServiceId);
+    }
+
+    @Test
+    void allAppointmentsOfADay() throws Exception {
+        assertIndexed(() -> appointmentRepository.findAppointmentsByDate(day), day);
+    }
+
+    @Test
+    void userHistory() throws Exception {
+        assertIndexed(() -> appointmentRepository.findAppointmentsByUserId(userId), userId);
+    }
+
+    @Test
+    void pageAfterId() throws Exception {
+        assertIndexed(() -> appointmentRepository.findPageAfterId(0L, PageRequest.of(0, 100, Sort.by("id"))), 0L);
+    }
+
+    @Test
+    void pageOfADayAfterId() throws Exception {
+        assertIndexed(() -> appointmentRepository.findPageByDateAfterId(day, 0L,
+                PageRequest.of(0, 100, Sort.by("id"))), day, 0L);
+    }
+
+    @Test
+    void pageOfAUserAfterId() throws Exception {
+        assertIndexed(() -> appointmentRepository.findPageByUserIdAfterId(userId, 0L,
+                PageRequest.of(0, 100, Sort.by("id"))), userId, 0L);
+    }
+
+    @Test
+    void weekForBranchServices() throws Exception {
+        assertIndexed(() -> appointmentRepository.findAppointmentsByPeriodAndBranchServiceIds(day, day.plusDays(6),
+                List.of(branchServiceId)), day, day.plusDays(6), branchServiceId);
+    }
+
+    @Test
+    void weekForBranchServicesTouchesOnlyItsMonth() throws Exception {
+        assertPrunedTo(() -> appointmentRepository.findAppointmentsByPeriodAndBranchServiceIds(day,
+                day.plusDays(6), List.of(branchServiceId)), Set.of(YearMonth.from(day)),
+                day, day.plusDays(6), branchServiceId);
+    }
+
+    @Test
+    void periodAcrossAMonthEndTouchesBothMonths() throws Exception {
+        LocalDate start = monthStart.plusMonths(1).minusDays(2);
+        LocalDate end = start.plusDays(4);
+        assertPrunedTo(() -> appointmentRepository.findAppointmentsByPeriod(start, end),
+                Set.of(YearMonth.from(start), YearMonth.from(end)), start, end);
+    }
+
+    @Test
+    void periodForBranchServicesAcrossAMonthEndTouchesBothMonths() throws Exception {
+        LocalDate start = monthStart.plusMonths(1).minusDays(2);
+        LocalDate end = start.plusDays(4);
+        assertPrunedTo(() -> appointmentRepository.findAppointmentsByPeriodAndBranchServiceIds(start, end,
+                List.of(branchServiceId)), Set.of(YearMonth.from(start), YearMonth.from(end)),
+                start, end, branchServiceId);
+    }
+
+    @Test
+    void activeSlotCounts() throws Exception {
+        assertIndexed(() -> appointmentRepository.countActiveByDateAndTime(branchServiceId, day, day.plusDays(30)),
+                branchServiceId, day, day.plusDays(30));
+    }
+
+    @Test
+    void filteredSearch() throws Exception {
+        Specification<Appointment> filter = Specification.allOf(
+                AppointmentSpecifications.dateOnOrAfter(day),
+                AppointmentSpecifications.dateOnOrBefore(day.plusDays(6)),
+                AppointmentSpecifications.branchServiceIdIn(List.of(branchServiceId)));
+        assertIndexed(() -> appointmentRepository.findAll(filter,
+                PageRequest.of(0, 100, AppointmentSpecifications.KEYSET_SORT)), day, day.plusDays(6), branchServiceId);
+    }
+
+    private void assertIndexed(Runnable call, Object... whereValues) throws Exception {
+        Explained explained = explain(call, whereValues);
+        Set<String> largePartitions = Set.copyOf(jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid "
+                + "WHERE i.inhparent = 'appointments'::regclass AND c.reltuples > ?", String.class,
+                LARGE_PARTITION_ROWS));
+
+        assertThat(explained.nodes())
+                .as("plan for %s:%n%s", explained.sql(), explained.plan())
+                .noneMatch(node -> "Seq Scan".equals(node.path("Node Type").asText())
+                        && largePartitions.contains(node.path("Relation Name").asText()))
+                .anyMatch(node -> INDEX_SCANS.contains(node.path("Node Type").asText()));
+    }
+
+    // The plan reads exactly the partitions of the given months, and never
+    // appointments_default
+    private void assertPrunedTo(Runnable call, Set<YearMonth> months, Object... whereValues) throws Exception {
+        Explained explained = explain(call, whereValues);
+        Set<String> expected = months.stream()
+                .map(month -> "appointments_" + PARTITION_SUFFIX.format(month))
+                .collect(Collectors.toSet());
+        Set<String> scanned = explained.nodes().stream()
+                .map(node -> node.path("Relation Name").asText())
+                .filter(name -> name.startsWith("appointments"))
+                .collect(Collectors.toSet());
+
+        assertThat(scanned).as("partitions read by %s:%n%s", explained.sql(), explained.plan())
+                .isEqualTo(expected);
+    }
+
+    private record Explained(String sql, String plan, List<JsonNode> nodes) {
+    }
+
+    // Runs the repository call, then EXPLAINs the first statement it sent with
+    // the given values for its WHERE parameters; any parameters after those
+    // (the row limit) get 100
+    private Explained explain(Runnable call, Object... whereValues) throws Exception {
+        RecordingStatementInspector.clear();
+        call.run();
+        String sql = SQL_COMMENT.matcher(RecordingStatementInspector.first()).replaceAll("").trim();
+
+        StringBuilder numbered = new StringBuilder();
+        int count = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                numbered.append('$').append(++count);
+            } else {
+                numbered.append(c);
+            }
+        }
+        assertThat(count).as("parameters of %s", sql).isGreaterThanOrEqualTo(whereValues.length);
+        List<String> literals = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Object value = i < whereValues.length ? whereValues[i] : 100;
+            literals.add(value instanceof Number ? value.toString() : "'" + value + "'");
+        }
+
+        String plan = jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PREPARE plan_check AS " + numbered);
+                try (var rs = statement.executeQuery(
+                        "EXPLAIN (FORMAT JSON) EXECUTE plan_check(" + String.join(", ", literals) + ")")) {
+                    rs.next();
+                    return rs.getString(1);
+                } finally {
+                    statement.execute("DEALLOCATE plan_check");
+                }
+            }
+        });
+
+        List<JsonNode> nodes = new ArrayList<>();
+        collect(new ObjectMapper().readTree(plan).get(0).get("Plan"), nodes);
+        return new Explained(numbered.toString(), plan, nodes);
+    }
+
+    private static void collect(JsonNode node, List<JsonNode> nodes) {
+        nodes.add(node);
+        for (JsonNode child : node.path("Plans")) {
+            collect(child, nodes);
+        }
+    }
+}
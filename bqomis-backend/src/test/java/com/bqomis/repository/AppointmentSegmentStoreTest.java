@@ -0,0 +1,103 @@
+package com.bqomis.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class AppointmentSegmentStoreTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2023, 2);
+
+    @TempDir
+    Path directory;
+
+    private AppointmentSegmentStore segmentStore;
+
+    @BeforeEach
+    void setUp() {
+        segmentStore = new AppointmentSegmentStore();
+        ReflectionTestUtils.setField(segmentStore, "directory", directory.toString());
+        // Several groups per segment
+        ReflectionTestUtils.setField(segmentStore, "rowGroupSize", 2);
+    }
+
+    private static AppointmentRow row(long id, long branchServiceId, int day, String time, String status) {
+        return new AppointmentRow(id, 100 + id, branchServiceId, MONTH.atDay(day), LocalTime.parse(time), status);
+    }
+
+    private static final List<AppointmentRow> ROWS = List.of(
+            row(7, 1, 1, "08:00", "COMPLETED"),
+            row(3, 2, 1, "08:00:30", "CANCELLED"),
+            row(12, 1, 14, "13:30", null),
+            row(5, 2, 28, "17:45", "COMPLETED"));
+
+    @Test
+    void rowsReadBackAsWritten() throws Exception {
+        String fileName = AppointmentSegmentStore.newFileName(MONTH);
+
+        assertThat(segmentStore.write(fileName, MONTH, ROWS.iterator())).isEqualTo(ROWS.size());
+
+        assertThat(segmentStore.read(fileName, null, null, null)).containsExactlyElementsOf(ROWS);
+        assertThat(segmentStore.read(fileName, LocalDate.of(2023, 2, 2), LocalDate.of(2023, 2, 28), Set.of(1L)))
+                .containsExactly(ROWS.get(2));
+        assertThat(directory.resolve(fileName + ".tmp")).doesNotExist();
+    }
+
+    @Test
+    void groupsAreDecodedOnlyAsTheRowsAreConsumed() throws Exception {
+        String fileName = AppointmentSegmentStore.newFileName(MONTH);
+        segmentStore.write(fileName, MONTH, ROWS.iterator());
+        // Cut the file inside the second group
+        Path path = directory.resolve(fileName);
+        byte[] whole = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(whole, whole.length * 2 / 3));
+
+        Iterator<AppointmentRow> rows = segmentStore.read(fileName, null, null, null).iterator();
+
+        assertThat(rows.next()).isEqualTo(ROWS.get(0));
+        assertThat(rows.next()).isEqualTo(ROWS.get(1));
+        assertThatThrownBy(rows::hasNext).isInstanceOf(UncheckedIOException.class)
+                .hasMessageContaining("segment");
+    }
+
+    @Test
+    void groupsOutsideTheDatesAreSkipped() throws Exception {
+        String fileName = AppointmentSegmentStore.newFileName(MONTH);
+        segmentStore.write(fileName, MONTH, ROWS.iterator());
+
+        assertThat(segmentStore.read(fileName, LocalDate.of(2023, 2, 20), null, null))
+                .containsExactly(ROWS.get(3));
+        assertThat(segmentStore.read(fileName, LocalDate.of(2023, 3, 1), null, null)).isEmpty();
+        assertThat(segmentStore.read(fileName, LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31), null))
+                .isEmpty();
+    }
+
+    @Test
+    void existingSegmentIsNeverReplaced() throws Exception {
+        String fileName = AppointmentSegmentStore.newFileName(MONTH);
+        segmentStore.write(fileName, MONTH, ROWS.iterator());
+        byte[] written = Files.readAllBytes(directory.resolve(fileName));
+
+        assertThatThrownBy(() -> segmentStore.write(fileName, MONTH, List.of(ROWS.get(0)).iterator()))
+                .isInstanceOf(FileAlreadyExistsException.class);
+
+        assertThat(directory.resolve(fileName)).hasBinaryContent(written);
+        assertThat(AppointmentSegmentStore.newFileName(MONTH)).isNotEqualTo(fileName);
+    }
+}
@@ -0,0 +1,32 @@
+package com.bqomis.repository;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// Keeps the SQL Hibernate sends, so tests can EXPLAIN what a repository method
+// actually runs. Enabled with hibernate.session_factory.statement_inspector.
+public class RecordingStatementInspector implements StatementInspector {
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.add(sql);
+        return sql;
+    }
+
+    public static void clear() {
+        STATEMENTS.clear();
+    }
+
+    // The first statement since clear(): the select of a paged query comes
+    // before its count
+    public static String first() {
+        if (STATEMENTS.isEmpty()) {
+            throw new IllegalStateException("No SQL recorded");
+        }
+        return STATEMENTS.get(0);
+    }
+}
@@ -0,0 +1,183 @@
+package com.bqomis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.bqomis.repository.AppointmentArchiveRepository;
+import com.bqomis.repository.AppointmentArchiveRepository.ArchivedMonth;
+import com.bqomis.repository.AppointmentExportRepository;
+import com.bqomis.repository.AppointmentRow;
+import com.bqomis.repository.AppointmentSegmentStore;
+
+class AppointmentArchiveServiceTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2023, 2);
+    private static final String ARCHIVED_FILE = "appointments_2023_02_1.seg";
+
+    @TempDir
+    Path directory;
+
+    private AppointmentArchiveService archiveService;
+    private AppointmentArchiveRepository archiveRepository;
+    private AppointmentExportRepository appointmentExportRepository;
+    private AppointmentSegmentStore segmentStore;
+
+    private static AppointmentRow row(long id, int day, String time) {
+        return new AppointmentRow(id, 1L, 2L, MONTH.atDay(day), LocalTime.parse(time), "COMPLETED");
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        archiveRepository = mock(AppointmentArchiveRepository.class);
+        appointmentExportRepository = mock(AppointmentExportRepository.class);
+        segmentStore = new AppointmentSegmentStore();
+        ReflectionTestUtils.setField(segmentStore, "directory", directory.toString());
+        ReflectionTestUtils.setField(segmentStore, "rowGroupSize", 2);
+        // Runs the callback in place of a real transaction
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(
+                invocation -> ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        archiveService = new AppointmentArchiveService();
+        ReflectionTestUtils.setField(archiveService, "archiveRepository", archiveRepository);
+        ReflectionTestUtils.setField(archiveService, "segmentStore", segmentStore);
+        ReflectionTestUtils.setField(archiveService, "appointmentExportRepository", appointmentExportRepository);
+        ReflectionTestUtils.setField(archiveService, "transactionTemplate", transactionTemplate);
+
+        // The month is already archived, and a late row has reached its recreated partition
+        segmentStore.write(ARCHIVED_FILE, MONTH, List.of(row(1, 3, "09:00"), row(2, 20, "10:00")).iterator());
+        when(archiveRepository.findByMonth(MONTH))
+                .thenReturn(Optional.of(new ArchivedMonth(MONTH, ARCHIVED_FILE, 2)));
+        when(appointmentExportRepository.stream(MONTH.atDay(1), MONTH.atEndOfMonth(), null))
+                .thenAnswer(invocation -> Stream.of(row(9, 10, "08:30")));
+    }
+
+    private List<String> segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).toList();
+        }
+    }
+
+    @Test
+    void rearchivedMonthIsMergedIntoANewSegment() throws Exception {
+        assertThat(archiveService.archiveMonth(MONTH)).isEqualTo(3);
+
+        ArgumentCaptor<String> fileName = ArgumentCaptor.forClass(String.class);
+        verify(archiveRepository).update(eq(MONTH), fileName.capture(), eq(3L));
+        verify(archiveRepository, never()).insert(any(), anyString(), anyLong());
+        verify(archiveRepository).detachAndDropPartition(MONTH);
+        assertThat(fileName.getValue()).isNotEqualTo(ARCHIVED_FILE);
+        assertThat(segmentFiles()).containsExactly(fileName.getValue());
+        assertThat(segmentStore.read(fileName.getValue(), null, null, null))
+                .extracting(AppointmentRow::id).containsExactly(1L, 9L, 2L);
+    }
+
+    @Test
+    void failedAttemptKeepsTheCatalogedSegment() throws Exception {
+        doThrow(new IllegalStateException("lock timeout")).when(archiveRepository).detachAndDropPartition(MONTH);
+
+        assertThatThrownBy(() -> archiveService.archiveMonth(MONTH)).hasMessage("lock timeout");
+
+        assertThat(segmentFiles()).containsExactly(ARCHIVED_FILE);
+        assertThat(segmentStore.read(ARCHIVED_FILE, null, null, null))
+                .extracting(AppointmentRow::id).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void segmentIsKeptWhenTheCatalogMayPointAtIt() throws Exception {
+        when(archiveRepository.findByMonth(MONTH)).thenReturn(Optional.empty());
+        doThrow(new IllegalStateException("connection lost")).when(archiveRepository).detachAndDropPartition(MONTH);
+        when(archiveRepository.isCataloged(anyString())).thenThrow(new IllegalStateException("connection lost"));
+
+        assertThatThrownBy(() -> archiveService.archiveMonth(MONTH)).hasMessage("connection lost");
+
+        verify(archiveRepository).insert(eq(MONTH), anyString(), eq(1L));
+        assertThat(segmentFiles()).hasSize(2).contains(ARCHIVED_FILE);
+    }
+
+    @Test
+    void archivedMonthsAreOpenedOnlyAsTheStreamReachesThem() throws Exception {
+        YearMonth next = MONTH.plusMonths(1);
+        when(archiveRepository.findAll()).thenReturn(List.of(new ArchivedMonth(MONTH, ARCHIVED_FILE, 2),
+                new ArchivedMonth(next, "appointments_2023_03_1.seg", 1)));
+
+        // The March segment does not exist; February's rows still come through
+        Iterator<AppointmentRow> rows = archiveService.stream(null, null, null).iterator();
+
+        assertThat(rows.next().id()).isEqualTo(1L);
+        assertThat(rows.next().id()).isEqualTo(2L);
+        assertThatThrownBy(rows::hasNext).isInstanceOf(UncheckedIOException.class);
+        // Months outside the dates are not opened at all
+        assertThat(archiveService.stream(MONTH.atDay(1), MONTH.atEndOfMonth(), null))
+                .extracting(AppointmentRow::id).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void archivingRefusesToStartWithoutADirectory() throws Exception {
+        ReflectionTestUtils.setField(segmentStore, "directory", "");
+        ReflectionTestUtils.setField(archiveService, "enabled", true);
+
+        assertThatThrownBy(archiveService::checkDirectory).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("bqomis.archive.directory");
+
+        // A node that does not archive still has to read what others archived
+        ReflectionTestUtils.setField(archiveService, "enabled", false);
+        when(archiveRepository.findAll()).thenReturn(List.of(new ArchivedMonth(MONTH, ARCHIVED_FILE, 2)));
+        assertThatThrownBy(archiveService::checkDirectory).isInstanceOf(IllegalStateException.class);
+        when(archiveRepository.findAll()).thenReturn(List.of());
+        archiveService.checkDirectory();
+    }
+
+    @Test
+    void directoryWithoutTheCatalogedSegmentsIsRefused() throws Exception {
+        ReflectionTestUtils.setField(archiveService, "enabled", true);
+        when(archiveRepository.findAll()).thenReturn(List.of(new ArchivedMonth(MONTH, ARCHIVED_FILE, 2)));
+        archiveService.checkDirectory();
+
+        // As on a node whose directory is local rather than the shared volume
+        Files.delete(directory.resolve(ARCHIVED_FILE));
+
+        assertThatThrownBy(archiveService::checkDirectory).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(ARCHIVED_FILE);
+    }
+
+    @Test
+    void newMonthIsInserted() throws Exception {
+        when(archiveRepository.findByMonth(MONTH)).thenReturn(Optional.empty());
+
+        assertThat(archiveService.archiveMonth(MONTH)).isEqualTo(1);
+
+        verify(archiveRepository).insert(eq(MONTH), anyString(), eq(1L));
+        verify(archiveRepository, never()).update(any(), anyString(), anyLong());
+        verify(appointmentExportRepository).stream(eq(MONTH.atDay(1)), eq(MONTH.atEndOfMonth()), isNull());
+        assertThat(segmentFiles()).hasSize(2).contains(ARCHIVED_FILE);
+    }
+}
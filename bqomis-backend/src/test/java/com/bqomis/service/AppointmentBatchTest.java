@@ -0,0 +1,124 @@
+package com.bqomis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.bqomis.PostgresIntegrationTest;
+import com.bqomis.dto.AppointmentDTO;
+import com.bqomis.dto.BatchAppointmentResponseDTO;
+import com.bqomis.model.Appointment;
+import com.bqomis.util.AppSettingsUtil;
+
+class AppointmentBatchTest extends PostgresIntegrationTest {
+
+    // A month nothing else writes to
+    private static final LocalDate DAY = LocalDate.of(2031, 5, 12);
+
+    @Autowired
+    private AppointmentService appointmentService;
+    @Autowired
+    private AppSettingsUtil appSettingsUtil;
+
+    private long branchServiceId;
+    private long userId;
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.update("DELETE FROM appointments WHERE date = ?", DAY);
+        branchServiceId = createBranchService(branchId(1), serviceId(1));
+        userId = anyUserId();
+    }
+
+    private AppointmentDTO row(int i, String status) {
+        AppointmentDTO appointmentDTO = new AppointmentDTO();
+        appointmentDTO.setUserId(userId);
+        appointmentDTO.setBranchServiceId(branchServiceId);
+        appointmentDTO.setDate(DAY.toString());
+        appointmentDTO.setTime(String.format("%02d:%02d", 8 + i / 60 % 10, i % 60));
+        appointmentDTO.setStatus(status);
+        return appointmentDTO;
+    }
+
+    @Test
+    void reservedIdsAreUniqueAndDoNotCollideWithEntityInserts() {
+        List<AppointmentDTO> rows = new ArrayList<>();
+        for (int i = 0; i < 2 * Appointment.ID_ALLOCATION_SIZE + 7; i++) {
+            rows.add(row(i, "COMPLETED"));
+        }
+
+        BatchAppointmentResponseDTO first = appointmentService.saveBatchAppointments(rows);
+        // An entity insert in between draws from the same sequence through Hibernate
+        AppointmentDTO single = appointmentService.save(row(0, "COMPLETED"));
+        BatchAppointmentResponseDTO second = appointmentService.saveBatchAppointments(rows);
+
+        assertThat(first.getSuccessfullyCreated()).isEqualTo(rows.size());
+        assertThat(second.getSuccessfullyCreated()).isEqualTo(rows.size());
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM appointments WHERE date = ?", Long.class, DAY);
+        assertThat(ids).hasSize(2 * rows.size() + 1).doesNotHaveDuplicates().contains(single.getId());
+    }
+
+    @Test
+    void failingChunkIsRetriedRowByRow() {
+        List<AppointmentDTO> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(row(i, "COMPLETED"));
+        }
+        // Passes validation but not the VARCHAR(50) column, failing the whole chunk
+        rows.set(4, row(4, "X".repeat(60)));
+        rows.set(7, null);
+
+        BatchAppointmentResponseDTO response = appointmentService.saveBatchAppointments(rows);
+
+        assertThat(response.getTotalSubmitted()).isEqualTo(10);
+        assertThat(response.getSuccessfullyCreated()).isEqualTo(8);
+        assertThat(response.getFailedCount()).isEqualTo(2);
+        assertThat(response.getFailures()).extracting(BatchAppointmentResponseDTO.Failure::getInputIndex)
+                .containsExactly(4, 7);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM appointments WHERE date = ?", Long.class, DAY))
+                .isEqualTo(8);
+    }
+
+    @Test
+    void rowsBeyondASlotsCapacityAreReportedAsFailures() {
+        long branchId = branchId(1);
+        jdbcTemplate.update("INSERT INTO branch_configuration_overrides (branch_id, slot_duration_mins, "
+                + "max_appointments_per_slot) VALUES (?, 30, 2)", branchId);
+        appSettingsUtil.refresh();
+        try {
+            insertAppointment(userId, branchServiceId, DAY, LocalTime.of(10, 0), "SCHEDULED");
+            List<AppointmentDTO> rows = new ArrayList<>();
+            for (String time : List.of("10:00", "10:10", "11:00", "10:20", "11:15")) {
+                AppointmentDTO appointmentDTO = row(0, "SCHEDULED");
+                appointmentDTO.setTime(time);
+                rows.add(appointmentDTO);
+            }
+            // Inactive rows take no place
+            AppointmentDTO completed = row(0, "COMPLETED");
+            completed.setTime("10:05");
+            rows.add(completed);
+
+            BatchAppointmentResponseDTO response = appointmentService.saveBatchAppointments(rows);
+
+            // 10:00-10:30 had one place left; 11:00-11:30 had two
+            assertThat(response.getSuccessfullyCreated()).isEqualTo(4);
+            assertThat(response.getFailures()).extracting(BatchAppointmentResponseDTO.Failure::getInputIndex)
+                    .containsExactly(1, 3);
+            assertThat(response.getFailures()).allSatisfy(
+                    failure -> assertThat(failure.getError()).startsWith("No capacity left"));
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM appointments WHERE date = ? "
+                    + "AND time >= '10:00' AND time < '10:30' AND status = 'SCHEDULED'", Long.class, DAY))
+                    .isEqualTo(2);
+        } finally {
+            jdbcTemplate.update("DELETE FROM branch_configuration_overrides WHERE branch_id = ?", branchId);
+            appSettingsUtil.refresh();
+        }
+    }
+}
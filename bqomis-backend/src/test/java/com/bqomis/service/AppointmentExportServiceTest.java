@@ -0,0 +1,170 @@
+package com.bqomis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.bqomis.model.Branch;
+import com.bqomis.model.BranchService;
+import com.bqomis.model.District;
+import com.bqomis.model.Service;
+import com.bqomis.repository.AppointmentExportRepository;
+import com.bqomis.repository.AppointmentRow;
+import com.bqomis.util.LookupUtil;
+import com.bqomis.util.MapperUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class AppointmentExportServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2031, 3, 4);
+    private static final String HEADER = "id,userId,branchServiceId,branchId,branchName,serviceId,serviceName,"
+            + "date,time,status";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private AppointmentExportService exportService;
+    private AppointmentExportRepository exportRepository;
+    private AppointmentArchiveService archiveService;
+
+    @BeforeEach
+    void setUp() {
+        District district = new District();
+        district.setId(1L);
+        district.setName("Gasabo");
+        district.setProvince("Kigali");
+        Branch branch = new Branch();
+        branch.setId(10L);
+        // Needs quoting in CSV
+        branch.setName("Remera, \"Main\"");
+        branch.setDistrict("Gasabo");
+        Service service = new Service();
+        service.setId(20L);
+        service.setName("Deposit");
+        BranchService branchService = new BranchService();
+        branchService.setId(100L);
+        branchService.setBranchId(10L);
+        branchService.setServiceId(20L);
+        LookupUtil lookupUtil = new LookupUtil();
+        lookupUtil.load(List.of(district), List.of(branch), List.of(service), List.of(branchService));
+
+        MapperUtil mapperUtil = new MapperUtil();
+        ReflectionTestUtils.setField(mapperUtil, "lookupUtil", lookupUtil);
+        exportRepository = mock(AppointmentExportRepository.class);
+        archiveService = mock(AppointmentArchiveService.class);
+        when(archiveService.stream(any(), any(), any())).thenAnswer(invocation -> Stream.empty());
+
+        exportService = new AppointmentExportService();
+        ReflectionTestUtils.setField(exportService, "appointmentExportRepository", exportRepository);
+        ReflectionTestUtils.setField(exportService, "appointmentArchiveService", archiveService);
+        ReflectionTestUtils.setField(exportService, "lookupUtil", lookupUtil);
+        ReflectionTestUtils.setField(exportService, "mapperUtil", mapperUtil);
+        ReflectionTestUtils.setField(exportService, "objectMapper", objectMapper);
+    }
+
+    private static AppointmentRow row(long id, long branchServiceId, String status) {
+        return new AppointmentRow(id, 7L, branchServiceId, DAY, LocalTime.of(9, 30), status);
+    }
+
+    private void rows(AppointmentRow... rows) {
+        when(exportRepository.stream(any(), any(), any())).thenAnswer(invocation -> Stream.of(rows));
+    }
+
+    private byte[] export(String format, Long branchId, boolean gzip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(format, DAY, DAY, branchId, gzip, out);
+        return out.toByteArray();
+    }
+
+    private String exportText(String format, Long branchId) throws IOException {
+        return new String(export(format, branchId, false), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void csvQuotesValuesWithSeparatorsAndQuotes() throws IOException {
+        // An unknown branch service has no labels: empty fields, not "null"
+        rows(row(1, 100, "SCHEDULED"), row(2, 999, "NO_SHOW"));
+
+        assertThat(exportText(AppointmentExportService.CSV, null)).isEqualTo(HEADER + "\n"
+                + "1,7,100,10,\"Remera, \"\"Main\"\"\",20,Deposit,2031-03-04,09:30,SCHEDULED\n"
+                + "2,7,999,,,,,2031-03-04,09:30,NO_SHOW\n");
+    }
+
+    @Test
+    void archivedRowsComeFirst() throws IOException {
+        rows(row(2, 100, "SCHEDULED"));
+        when(archiveService.stream(any(), any(), any())).thenAnswer(invocation -> Stream.of(row(1, 100, "COMPLETED")));
+
+        assertThat(exportText(AppointmentExportService.CSV, null).lines().skip(1).map(line -> line.split(",")[0]))
+                .containsExactly("1", "2");
+    }
+
+    @Test
+    void ndjsonWritesOneObjectPerLineEndingWithANewline() throws IOException {
+        rows(row(1, 100, "SCHEDULED"), row(2, 100, "CANCELLED"));
+
+        String text = exportText(AppointmentExportService.NDJSON, null);
+
+        assertThat(text).endsWith("}\n").doesNotContain("\n\n");
+        List<String> lines = text.lines().toList();
+        assertThat(lines).hasSize(2);
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertThat(first.get("id").asLong()).isEqualTo(1);
+        assertThat(first.get("branchName").asText()).isEqualTo("Remera, \"Main\"");
+        assertThat(objectMapper.readTree(lines.get(1)).get("status").asText()).isEqualTo("CANCELLED");
+    }
+
+    @Test
+    void emptyResultsWriteOnlyTheCsvHeaderAndNoNdjsonLines() throws IOException {
+        rows();
+
+        assertThat(exportText(AppointmentExportService.CSV, null)).isEqualTo(HEADER + "\n");
+        assertThat(exportText(AppointmentExportService.NDJSON, null)).isEmpty();
+    }
+
+    @Test
+    void branchWithoutServicesIsEmptyWithoutQuerying() throws IOException {
+        assertThat(exportText(AppointmentExportService.CSV, 404L)).isEqualTo(HEADER + "\n");
+        assertThat(exportText(AppointmentExportService.NDJSON, 404L)).isEmpty();
+        verify(exportRepository, never()).stream(any(), any(), any());
+    }
+
+    @Test
+    void gzipOutputIsACompleteStreamOfTheSameBytes() throws IOException {
+        rows(row(1, 100, "SCHEDULED"), row(2, 100, "CANCELLED"));
+        byte[] plain = export(AppointmentExportService.NDJSON, null, false);
+        rows(row(1, 100, "SCHEDULED"), row(2, 100, "CANCELLED"));
+
+        byte[] compressed = export(AppointmentExportService.NDJSON, null, true);
+
+        // Reading to the end fails if the trailer was not written
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertThat(in.readAllBytes()).isEqualTo(plain);
+        }
+    }
+
+    @Test
+    void gzipOfAnEmptyExportIsStillAValidStream() throws IOException {
+        byte[] compressed = export(AppointmentExportService.CSV, 404L, true);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(HEADER + "\n");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.bqomis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import com.bqomis.PostgresIntegrationTest;
+import com.bqomis.dto.AppointmentDTO;
+
+class AppointmentFilteredSearchTest extends PostgresIntegrationTest {
+
+    // A month nothing else writes to
+    private static final LocalDate DAY = LocalDate.of(2031, 3, 10);
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    private long branchId;
+    private List<Long> ids;
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.update("DELETE FROM appointments WHERE date BETWEEN ? AND ?", DAY, DAY.plusDays(1));
+        branchId = branchId(0);
+        long branchServiceId = createBranchService(branchId, serviceId(0));
+        long userId = anyUserId();
+        ids = new ArrayList<>();
+        // 7 rows over two days, in (date, time, id) order
+        for (int i = 0; i < 7; i++) {
+            LocalDate date = i < 4 ? DAY : DAY.plusDays(1);
+            ids.add(insertAppointment(userId, branchServiceId, date, LocalTime.of(9 + i % 4, 0), "SCHEDULED"));
+        }
+    }
+
+    private Slice<AppointmentDTO> search(String status, AppointmentDTO after, int page, int size) {
+        return appointmentService.findFilteredAppointments(DAY.toString(), DAY.plusDays(1).toString(), branchId,
+                null, status, null, after != null ? after.getDate() : null, after != null ? after.getTime() : null,
+                after != null ? after.getId() : null, PageRequest.of(page, size));
+    }
+
+    private Page<AppointmentDTO> offsetPage(String status, int page, int size) {
+        Slice<AppointmentDTO> slice = search(status, null, page, size);
+        assertThat(slice).isInstanceOf(Page.class);
+        return (Page<AppointmentDTO>) slice;
+    }
+
+    @Test
+    void offsetPagesFollowDateTimeIdOrder() {
+        Page<AppointmentDTO> first = offsetPage(null, 0, 3);
+        Page<AppointmentDTO> second = offsetPage(null, 1, 3);
+
+        assertThat(first.getTotalElements()).isEqualTo(7);
+        assertThat(first.getTotalPages()).isEqualTo(3);
+        assertThat(first.getContent()).extracting(AppointmentDTO::getId).containsExactlyElementsOf(ids.subList(0, 3));
+        assertThat(second.getContent()).extracting(AppointmentDTO::getId).containsExactlyElementsOf(ids.subList(3, 6));
+    }
+
+    @Test
+    void keysetPagesContinueAfterTheCursorWithoutCounting() {
+        // A cursor that is not on a page boundary
+        AppointmentDTO cursor = search(null, null, 0, 2).getContent().get(1);
+
+        // The client's page number is ignored on the keyset path
+        Slice<AppointmentDTO> next = search(null, cursor, 7, 3);
+
+        assertThat(next).isNotInstanceOf(Page.class);
+        assertThat(next.getContent()).extracting(AppointmentDTO::getId).containsExactlyElementsOf(ids.subList(2, 5));
+        assertThat(next.hasNext()).isTrue();
+
+        Slice<AppointmentDTO> last = search(null, next.getContent().get(2), 0, 3);
+        assertThat(last.getContent()).extracting(AppointmentDTO::getId).containsExactlyElementsOf(ids.subList(5, 7));
+        assertThat(last.hasNext()).isFalse();
+    }
+
+    @Test
+    void statusFilterIgnoresCase() {
+        assertThat(offsetPage("SCHEDULED", 0, 10).getTotalElements()).isEqualTo(7);
+        assertThat(offsetPage("Scheduled", 0, 10).getTotalElements()).isEqualTo(7);
+        assertThat(offsetPage("COMPLETED", 0, 10).getTotalElements()).isZero();
+    }
+}
@@ -0,0 +1,109 @@
+package com.bqomis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.bqomis.PostgresIntegrationTest;
+import com.bqomis.dto.AppointmentDTO;
+import com.bqomis.repository.AppointmentDailyRollupRepository;
+
+class AppointmentRollupTest extends PostgresIntegrationTest {
+
+    // A month nothing else writes to
+    private static final LocalDate DAY = LocalDate.of(2031, 7, 15);
+
+    @Autowired
+    private AppointmentService appointmentService;
+    @Autowired
+    private AppointmentRollupService appointmentRollupService;
+    @Autowired
+    private AppointmentDailyRollupRepository rollupRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private long branchServiceId;
+    private long userId;
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.update("DELETE FROM appointments WHERE date = ?", DAY);
+        jdbcTemplate.update("DELETE FROM appointment_daily_rollup WHERE date = ?", DAY);
+        branchServiceId = createBranchService(branchId(2), serviceId(2));
+        userId = anyUserId();
+    }
+
+    private AppointmentDTO save(String time, String status) {
+        AppointmentDTO appointmentDTO = new AppointmentDTO();
+        appointmentDTO.setUserId(userId);
+        appointmentDTO.setBranchServiceId(branchServiceId);
+        appointmentDTO.setDate(DAY.toString());
+        appointmentDTO.setTime(time);
+        appointmentDTO.setStatus(status);
+        return appointmentService.save(appointmentDTO);
+    }
+
+    // "hour/status" -> count, as kept in the rollup
+    private Map<String, Long> rollup() {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT hour, status, appointment_count FROM appointment_daily_rollup "
+                + "WHERE date = ? AND branch_service_id = ? AND appointment_count <> 0",
+                rs -> {
+                    counts.put(rs.getInt(1) + "/" + rs.getString(2), rs.getLong(3));
+                }, DAY, branchServiceId);
+        return counts;
+    }
+
+    // The same, counted from the appointments table
+    private Map<String, Long> counted() {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT CAST(EXTRACT(HOUR FROM time) AS INT), status, COUNT(*) FROM appointments "
+                + "WHERE date = ? AND branch_service_id = ? GROUP BY 1, 2",
+                rs -> {
+                    counts.put(rs.getInt(1) + "/" + rs.getString(2), rs.getLong(3));
+                }, DAY, branchServiceId);
+        return counts;
+    }
+
+    @Test
+    void serviceWritesKeepTheRollupInStep() {
+        AppointmentDTO first = save("10:00", "COMPLETED");
+        save("10:30", "COMPLETED");
+        AppointmentDTO third = save("11:00", "NO_SHOW");
+        appointmentService.updateStatus(first.getId(), "NO_SHOW");
+        appointmentService.deleteById(third.getId());
+
+        assertThat(rollup()).isEqualTo(Map.of("10/COMPLETED", 1L, "10/NO_SHOW", 1L)).isEqualTo(counted());
+    }
+
+    @Test
+    void rebuildRepairsDriftFromDirectWrites() {
+        save("10:00", "COMPLETED");
+        insertAppointment(userId, branchServiceId, DAY, LocalTime.of(10, 15), "COMPLETED");
+        insertAppointment(userId, branchServiceId, DAY, LocalTime.of(14, 0), "CANCELLED");
+        assertThat(rollup()).isNotEqualTo(counted());
+
+        appointmentRollupService.rebuild(DAY, DAY);
+
+        assertThat(rollup()).isEqualTo(Map.of("10/COMPLETED", 2L, "14/CANCELLED", 1L)).isEqualTo(counted());
+    }
+
+    @Test
+    void recountReplacesBucketsThatAlreadyExist() {
+        // As if a booking recreated the bucket between deleteByPeriod and the recount
+        save("10:00", "COMPLETED");
+        insertAppointment(userId, branchServiceId, DAY, LocalTime.of(10, 15), "COMPLETED");
+
+        transactionTemplate.executeWithoutResult(status -> rollupRepository.insertAggregatedFromAppointments(DAY, DAY));
+
+        assertThat(rollup()).isEqualTo(Map.of("10/COMPLETED", 2L));
+    }
+}
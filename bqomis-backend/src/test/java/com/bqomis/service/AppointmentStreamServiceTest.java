@@ -0,0 +1,209 @@
+package com.bqomis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.bqomis.dto.AppointmentEventDTO;
+import com.bqomis.util.LookupUtil;
+
+class AppointmentStreamServiceTest {
+
+    private AppointmentStreamService streamService;
+
+    // Records what would have been written to the client
+    private static class RecordingEmitter extends SseEmitter {
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            StringBuilder text = new StringBuilder();
+            builder.build().forEach(part -> {
+                if (part.getData() instanceof String s) {
+                    text.append(s);
+                }
+            });
+            sent.add(text.toString().trim());
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+        }
+
+        boolean received(String type) {
+            return sent.stream().anyMatch(line -> line.startsWith("event:" + type));
+        }
+    }
+
+    // Blocks in send until released, like a client that stopped reading
+    private static class StalledEmitter extends RecordingEmitter {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.send(builder);
+        }
+    }
+
+    private static class BrokenEmitter extends RecordingEmitter {
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            throw new IOException("Broken pipe");
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        LookupUtil lookupUtil = mock(LookupUtil.class);
+        when(lookupUtil.getDistrictByBranchId(10L)).thenReturn("Gasabo");
+        when(lookupUtil.getDistrictByBranchId(11L)).thenReturn("Huye");
+        streamService = new AppointmentStreamService();
+        ReflectionTestUtils.setField(streamService, "lookupUtil", lookupUtil);
+        ReflectionTestUtils.setField(streamService, "bufferSize", 4);
+        ReflectionTestUtils.setField(streamService, "senderThreads", 1);
+        ReflectionTestUtils.setField(streamService, "maxSenderThreads", 4);
+        ReflectionTestUtils.setField(streamService, "sendTimeoutMs", 100L);
+        streamService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        streamService.shutdown();
+    }
+
+    private static AppointmentEventDTO event(String type, long branchId) {
+        AppointmentEventDTO event = new AppointmentEventDTO();
+        event.setType(type);
+        event.setBranchId(branchId);
+        return event;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void eventsReachTheirBranchDistrictAndNetworkSubscribers() throws Exception {
+        RecordingEmitter branch = new RecordingEmitter();
+        RecordingEmitter otherBranch = new RecordingEmitter();
+        RecordingEmitter district = new RecordingEmitter();
+        RecordingEmitter otherDistrict = new RecordingEmitter();
+        RecordingEmitter network = new RecordingEmitter();
+        streamService.subscribe(branch, 10L, null);
+        streamService.subscribe(otherBranch, 11L, null);
+        streamService.subscribe(district, null, "gasabo");
+        streamService.subscribe(otherDistrict, null, "Huye");
+        streamService.subscribe(network, null, null);
+
+        // Without a transaction the event is published right away
+        streamService.publishAfterCommit(event(AppointmentEventDTO.CREATED, 10L), Set.of(10L));
+
+        await(() -> branch.received("CREATED") && district.received("CREATED") && network.received("CREATED"));
+        Thread.sleep(50);
+        assertThat(otherBranch.sent).isEmpty();
+        assertThat(otherDistrict.sent).isEmpty();
+    }
+
+    @Test
+    void overflowingSubscriberGetsOneResync() throws Exception {
+        StalledEmitter slow = new StalledEmitter();
+        streamService.subscribe(slow, 10L, null);
+
+        // The first event blocks the drain; the rest overflow the 4-event buffer
+        streamService.publishAfterCommit(event(AppointmentEventDTO.UPDATED, 10L), Set.of(10L));
+        assertThat(slow.blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 9; i++) {
+            streamService.publishAfterCommit(event(AppointmentEventDTO.UPDATED, 10L), Set.of(10L));
+        }
+        slow.release.countDown();
+
+        await(() -> slow.received("RESYNC"));
+        assertThat(slow.sent).filteredOn(line -> line.startsWith("event:RESYNC")).hasSize(1);
+        assertThat(slow.sent).hasSizeLessThan(10);
+    }
+
+    @Test
+    void stalledSubscriberIsDroppedWithoutHoldingUpOthers() throws Exception {
+        StalledEmitter stalled = new StalledEmitter();
+        RecordingEmitter healthy = new RecordingEmitter();
+        streamService.subscribe(stalled, 10L, null);
+        streamService.subscribe(healthy, 10L, null);
+
+        streamService.publishAfterCommit(event(AppointmentEventDTO.CREATED, 10L), Set.of(10L));
+        // One sender thread is configured; the stalled send must not take it from the healthy client
+        await(() -> healthy.received("CREATED"));
+
+        Thread.sleep(150);
+        streamService.dropStalledSubscribers();
+        assertThat(streamService.getSubscriberCount()).isEqualTo(1);
+
+        streamService.publishAfterCommit(event(AppointmentEventDTO.UPDATED, 10L), Set.of(10L));
+        await(() -> healthy.received("UPDATED"));
+
+        // The emitter is completed once the blocked write returns, and gets nothing more
+        stalled.release.countDown();
+        await(() -> stalled.completed);
+        assertThat(stalled.sent).hasSize(1);
+    }
+
+    @Test
+    void fanOutBeyondTheSenderThreadsReachesEverySubscriber() throws Exception {
+        List<RecordingEmitter> screens = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            RecordingEmitter screen = new RecordingEmitter();
+            streamService.subscribe(screen, 10L, null);
+            screens.add(screen);
+        }
+
+        streamService.publishAfterCommit(event(AppointmentEventDTO.CREATED, 10L), Set.of(10L));
+
+        // Without waiting for a heartbeat; resubmitPending runs as scheduled would
+        await(() -> {
+            streamService.resubmitPending();
+            return screens.stream().allMatch(screen -> screen.received("CREATED"));
+        });
+        assertThat(screens).allSatisfy(screen -> assertThat(screen.sent).hasSize(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void heartbeatsFindDeadClientsAndUnmapTheirBranch() throws Exception {
+        streamService.subscribe(new BrokenEmitter(), 12L, null);
+        Map<Object, Object> byBranch = (Map<Object, Object>) ReflectionTestUtils.getField(streamService, "byBranch");
+        assertThat(byBranch).containsOnlyKeys(12L);
+
+        streamService.heartbeat();
+
+        await(() -> streamService.getSubscriberCount() == 0);
+        assertThat(byBranch).isEmpty();
+    }
+}
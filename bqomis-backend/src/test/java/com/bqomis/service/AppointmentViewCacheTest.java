@@ -0,0 +1,125 @@
+package com.bqomis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.bqomis.dto.AppointmentDTO;
+import com.bqomis.model.Appointment;
+import com.bqomis.util.LookupUtil;
+
+class AppointmentViewCacheTest {
+
+    private static final LocalDate DAY = LocalDate.of(2031, 4, 1);
+
+    private LookupUtil lookupUtil;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // Branch service 100 is service 20 at branch 10 in Gasabo
+        lookupUtil = mock(LookupUtil.class);
+        when(lookupUtil.getBranchIdByBranchServiceId(100L)).thenReturn(10L);
+        when(lookupUtil.getServiceIdByBranchServiceId(100L)).thenReturn(20L);
+        when(lookupUtil.getDistrictByBranchId(10L)).thenReturn("Gasabo");
+        when(lookupUtil.getBranchIdByBranchServiceId(101L)).thenReturn(11L);
+        when(lookupUtil.getServiceIdByBranchServiceId(101L)).thenReturn(20L);
+        when(lookupUtil.getDistrictByBranchId(11L)).thenReturn("Huye");
+        jdbcTemplate = mock(JdbcTemplate.class);
+    }
+
+    // One node's cache, with every view of DAY cached
+    private AppointmentViewCache node(boolean notifyOtherNodes) {
+        AppointmentViewCache viewCache = new AppointmentViewCache();
+        ReflectionTestUtils.setField(viewCache, "cacheManager",
+                new ConcurrentMapCacheManager(AppointmentViewCache.CACHE_NAME));
+        ReflectionTestUtils.setField(viewCache, "lookupUtil", lookupUtil);
+        ReflectionTestUtils.setField(viewCache, "taskScheduler", mock(TaskScheduler.class));
+        ReflectionTestUtils.setField(viewCache, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(viewCache, "notifyOtherNodes", notifyOtherNodes);
+        ReflectionTestUtils.setField(viewCache, "replicaUrl", "");
+        viewCache.init();
+        for (String key : allKeys()) {
+            viewCache.get(key, () -> List.of(new AppointmentDTO()));
+        }
+        return viewCache;
+    }
+
+    private static List<String> allKeys() {
+        return List.of(
+                AppointmentViewCache.branchServiceKey(DAY, 100), AppointmentViewCache.branchKey(DAY, 10),
+                AppointmentViewCache.branchAndServiceKey(DAY, 10, 20), AppointmentViewCache.districtKey(DAY, "Gasabo"),
+                AppointmentViewCache.districtAndServiceKey(DAY, "gasabo", 20),
+                AppointmentViewCache.branchServiceKey(DAY, 101), AppointmentViewCache.branchKey(DAY, 11),
+                AppointmentViewCache.districtKey(DAY, "Huye"),
+                AppointmentViewCache.branchServiceKey(DAY.plusDays(1), 100));
+    }
+
+    private static List<String> cachedKeys(AppointmentViewCache viewCache) {
+        Cache cache = (Cache) ReflectionTestUtils.getField(viewCache, "cache");
+        return allKeys().stream().filter(key -> cache.get(key) != null).toList();
+    }
+
+    @Test
+    void writeEvictsEveryViewOfItsBranchServiceAndDay() {
+        AppointmentViewCache viewCache = node(false);
+
+        // Without a transaction the eviction happens right away
+        viewCache.evictAfterCommit(100L, DAY);
+
+        assertThat(cachedKeys(viewCache)).containsExactly(
+                AppointmentViewCache.branchServiceKey(DAY, 101), AppointmentViewCache.branchKey(DAY, 11),
+                AppointmentViewCache.districtKey(DAY, "Huye"),
+                AppointmentViewCache.branchServiceKey(DAY.plusDays(1), 100));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void otherNodesEvictTheSameViewsFromTheNotification() {
+        AppointmentViewCache writer = node(true);
+        AppointmentViewCache other = node(true);
+        Appointment first = new Appointment();
+        first.setBranchServiceId(100L);
+        first.setDate(DAY);
+        Appointment second = new Appointment();
+        second.setBranchServiceId(101L);
+        second.setDate(DAY);
+
+        writer.evictAfterCommit(List.of(first, second));
+
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).query(eq("SELECT pg_notify(?, ?)"), any(ResultSetExtractor.class),
+                eq(AppointmentViewCache.CHANNEL), payload.capture());
+        assertThat(cachedKeys(other)).hasSize(allKeys().size());
+
+        other.evictNotified(payload.getValue());
+
+        assertThat(cachedKeys(other)).containsExactly(AppointmentViewCache.branchServiceKey(DAY.plusDays(1), 100));
+        assertThat(cachedKeys(writer)).isEqualTo(cachedKeys(other));
+    }
+
+    @Test
+    void reconnectEvictsEverything() {
+        AppointmentViewCache viewCache = node(true);
+
+        viewCache.evictAll();
+
+        assertThat(cachedKeys(viewCache)).isEmpty();
+    }
+}
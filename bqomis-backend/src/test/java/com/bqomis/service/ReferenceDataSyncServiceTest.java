@@ -0,0 +1,149 @@
+package com.bqomis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.bqomis.model.Branch;
+import com.bqomis.repository.BranchRepository;
+import com.bqomis.util.AppSettingsUtil;
+import com.bqomis.util.LookupUtil;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ReferenceDataSyncServiceTest {
+
+    private ReferenceDataSyncService syncService;
+    private LookupUtil lookupUtil;
+    private AppSettingsUtil appSettingsUtil;
+    private BranchRepository branchRepository;
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        lookupUtil = mock(LookupUtil.class);
+        appSettingsUtil = mock(AppSettingsUtil.class);
+        branchRepository = mock(BranchRepository.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        transactionManager = mock(PlatformTransactionManager.class);
+        syncService = new ReferenceDataSyncService();
+        ReflectionTestUtils.setField(syncService, "lookupUtil", lookupUtil);
+        ReflectionTestUtils.setField(syncService, "appSettingsUtil", appSettingsUtil);
+        ReflectionTestUtils.setField(syncService, "branchRepository", branchRepository);
+        ReflectionTestUtils.setField(syncService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(syncService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(syncService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        // As after a full load at version 5
+        ReflectionTestUtils.setField(syncService, "appliedVersion", 5L);
+    }
+
+    private static String change(String entity, long id, long version) {
+        return "{\"entity\":\"" + entity + "\",\"id\":" + id + ",\"op\":\"UPDATE\",\"version\":" + version + "}";
+    }
+
+    private double notifications(String outcome) {
+        return meterRegistry.counter("bqomis.sync.notifications", "outcome", outcome).count();
+    }
+
+    @Test
+    void nextVersionReReadsTheChangedRow() {
+        Branch branch = new Branch();
+        branch.setId(10L);
+        when(branchRepository.findById(10L)).thenReturn(Optional.of(branch));
+
+        syncService.handle(change("branches", 10, 6));
+
+        verify(lookupUtil).updateBranch(branch);
+        verify(lookupUtil, never()).reload();
+        assertThat(syncService.getAppliedVersion()).isEqualTo(6);
+        assertThat(notifications("applied")).isEqualTo(1);
+    }
+
+    @Test
+    void changesAreReadInAReadWriteTransaction() {
+        when(branchRepository.findById(10L)).thenReturn(Optional.empty());
+
+        syncService.handle(change("branches", 10, 6));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(9L);
+        syncService.handle(change("branches", 10, 8));
+
+        // Read-only transactions may be served by a replica that lags behind the change
+        InOrder order = inOrder(transactionManager, branchRepository, lookupUtil);
+        order.verify(transactionManager).getTransaction(argThat(definition -> !definition.isReadOnly()));
+        order.verify(branchRepository).findById(10L);
+        order.verify(transactionManager).commit(any());
+        order.verify(transactionManager).getTransaction(argThat(definition -> !definition.isReadOnly()));
+        order.verify(lookupUtil).reload();
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void rowThatNoLongerExistsIsRemoved() {
+        when(branchRepository.findById(10L)).thenReturn(Optional.empty());
+
+        syncService.handle(change("branches", 10, 6));
+
+        verify(lookupUtil).removeBranchById(10L);
+        assertThat(syncService.getAppliedVersion()).isEqualTo(6);
+    }
+
+    @Test
+    void skippedVersionReloadsEverythingAtTheDatabaseVersion() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(9L);
+
+        syncService.handle(change("branches", 10, 8));
+
+        verify(lookupUtil).reload();
+        verify(appSettingsUtil).refresh();
+        verify(branchRepository, never()).findById(anyLong());
+        assertThat(syncService.getAppliedVersion()).isEqualTo(9);
+        assertThat(notifications("gap")).isEqualTo(1);
+
+        // Changes the reload already covered are skipped, later ones applied
+        syncService.handle(change("branches", 10, 9));
+        assertThat(notifications("skipped")).isEqualTo(1);
+        when(branchRepository.findById(11L)).thenReturn(Optional.empty());
+        syncService.handle(change("branches", 11, 10));
+        verify(lookupUtil).removeBranchById(11L);
+        assertThat(syncService.getAppliedVersion()).isEqualTo(10);
+    }
+
+    @Test
+    void configurationChangesRefreshTheSettings() {
+        syncService.handle(change("branch_configuration_overrides", 3, 6));
+
+        verify(appSettingsUtil).refresh();
+        verifyNoInteractions(lookupUtil);
+        assertThat(syncService.getAppliedVersion()).isEqualTo(6);
+    }
+
+    @Test
+    void malformedPayloadIsIgnored() {
+        syncService.handle("not json");
+
+        verifyNoInteractions(lookupUtil, appSettingsUtil, branchRepository);
+        assertThat(syncService.getAppliedVersion()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,159 @@
+package com.bqomis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.bqomis.PostgresIntegrationTest;
+import com.bqomis.dto.AppointmentDTO;
+import com.bqomis.dto.AvailabilityDTO;
+import com.bqomis.util.AppSettingsUtil;
+
+class SlotCapacityTest extends PostgresIntegrationTest {
+
+    // A month nothing else writes to
+    private static final LocalDate DAY = LocalDate.of(2031, 9, 9);
+    private static final int LIMIT = 2;
+
+    @Autowired
+    private AppointmentService appointmentService;
+    @Autowired
+    private SlotCapacityService slotCapacityService;
+    @Autowired
+    private AppSettingsUtil appSettingsUtil;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private long branchId;
+    private long branchServiceId;
+    private long userId;
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.update("DELETE FROM appointments WHERE date = ?", DAY);
+        branchId = branchId(3);
+        branchServiceId = createBranchService(branchId, serviceId(3));
+        userId = anyUserId();
+        jdbcTemplate.update("INSERT INTO branch_configuration_overrides (branch_id, slot_duration_mins, "
+                + "max_appointments_per_slot) VALUES (?, 30, ?)", branchId, LIMIT);
+        appSettingsUtil.refresh();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM branch_configuration_overrides WHERE branch_id = ?", branchId);
+        appSettingsUtil.refresh();
+    }
+
+    private AppointmentDTO book(String time) {
+        return book(time, "SCHEDULED");
+    }
+
+    private AppointmentDTO book(String time, String status) {
+        AppointmentDTO appointmentDTO = new AppointmentDTO();
+        appointmentDTO.setUserId(userId);
+        appointmentDTO.setBranchServiceId(branchServiceId);
+        appointmentDTO.setDate(DAY.toString());
+        appointmentDTO.setTime(time);
+        appointmentDTO.setStatus(status);
+        return appointmentService.save(appointmentDTO);
+    }
+
+    private int occupancy(String time) {
+        SlotCapacityService.DayOccupancy day = slotCapacityService.day(branchServiceId, DAY);
+        return day.counts.get(day.slotIndex(LocalTime.parse(time)));
+    }
+
+    @Test
+    void fullSlotIsRejected() {
+        book("10:00");
+        // Same 30-minute slot
+        book("10:15");
+
+        assertThatThrownBy(() -> book("10:20"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+        assertThat(occupancy("10:00")).isEqualTo(LIMIT);
+        // The next slot is unaffected
+        book("10:30");
+    }
+
+    @Test
+    void rolledBackBookingReleasesItsPlace() {
+        book("11:00");
+        transactionTemplate.executeWithoutResult(status -> {
+            book("11:00");
+            assertThat(occupancy("11:00")).isEqualTo(2);
+            status.setRollbackOnly();
+        });
+
+        assertThat(occupancy("11:00")).isEqualTo(1);
+        book("11:00");
+    }
+
+    @Test
+    void cancellationReleasesItsPlaceOnCommit() {
+        AppointmentDTO first = book("12:00");
+        book("12:00");
+
+        appointmentService.updateStatus(first.getId(), "CANCELLED");
+
+        assertThat(occupancy("12:00")).isEqualTo(1);
+        book("12:00");
+    }
+
+    @Test
+    void slotThatOnlyLooksFullIsConfirmedAgainstTheDatabase() {
+        AppointmentDTO first = book("13:00");
+        book("13:00");
+        // As if cancelled on another node: the local count stays at the limit
+        jdbcTemplate.update("UPDATE appointments SET status = 'CANCELLED' WHERE id = ?", first.getId());
+        assertThat(occupancy("13:00")).isEqualTo(LIMIT);
+
+        book("13:00");
+
+        assertThat(occupancy("13:00")).isEqualTo(LIMIT);
+        assertThatThrownBy(() -> book("13:00")).isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void mixedCaseStatusesAreStoredUpperCaseAndCounted() {
+        AppointmentDTO first = book("15:00", "Scheduled");
+        book("15:00", "checked_in");
+
+        assertThat(jdbcTemplate.queryForObject("SELECT status FROM appointments WHERE id = ?", String.class,
+                first.getId())).isEqualTo("SCHEDULED");
+        assertThat(slotCapacityService.getAvailability(branchServiceId, DAY, DAY).getDays()).singleElement()
+                .satisfies(day -> assertThat(day.getSlots())
+                        .filteredOn(slot -> slot.getTime().startsWith("15:00"))
+                        .extracting(AvailabilityDTO.Slot::getBooked)
+                        .containsExactly(2));
+        assertThatThrownBy(() -> book("15:00", "scheduled")).isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void availabilityShowsBookedAndRemainingPlaces() {
+        book("14:00");
+        book("14:00");
+        book("14:30");
+
+        AvailabilityDTO availability = slotCapacityService.getAvailability(branchServiceId, DAY, DAY);
+
+        assertThat(availability.getMaxAppointmentsPerSlot()).isEqualTo(LIMIT);
+        assertThat(availability.getDays()).singleElement().satisfies(day -> assertThat(day.getSlots())
+                .filteredOn(slot -> slot.getTime().startsWith("14:"))
+                .extracting(AvailabilityDTO.Slot::getBooked, AvailabilityDTO.Slot::getRemaining)
+                .containsExactly(tuple(2, 0), tuple(1, 1)));
+    }
+}
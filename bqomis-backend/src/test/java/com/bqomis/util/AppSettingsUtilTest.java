@@ -0,0 +1,149 @@
+package com.bqomis.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.bqomis.model.BranchConfigurationOverrides;
+import com.bqomis.model.GlobalApplicationConfiguration;
+import com.bqomis.repository.BranchConfigurationOverridesRepository;
+import com.bqomis.repository.GlobalApplicationConfigurationRepository;
+
+class AppSettingsUtilTest {
+
+    private AppSettingsUtil appSettingsUtil;
+    private GlobalApplicationConfigurationRepository globalConfigRepo;
+    private BranchConfigurationOverridesRepository branchConfigRepo;
+
+    static GlobalApplicationConfiguration global(int slotDurationMins, int low, int moderate) {
+        GlobalApplicationConfiguration global = new GlobalApplicationConfiguration();
+        global.setId(1L);
+        global.setDefaultSlotDurationMins(slotDurationMins);
+        global.setDefaultQueueThresholdLow(low);
+        global.setDefaultQueueThresholdModerate(moderate);
+        global.setBookingWindowDays(14);
+        global.setMinBookingNoticeHours(2);
+        return global;
+    }
+
+    static BranchConfigurationOverrides override(long id, long branchId, Integer slotDurationMins, Integer low,
+            Integer maxAppointmentsPerSlot) {
+        BranchConfigurationOverrides override = new BranchConfigurationOverrides();
+        override.setId(id);
+        override.setBranchId(branchId);
+        override.setSlotDurationMins(slotDurationMins);
+        override.setQueueThresholdLow(low);
+        override.setMaxAppointmentsPerSlot(maxAppointmentsPerSlot);
+        return override;
+    }
+
+    @BeforeEach
+    void setUp() {
+        globalConfigRepo = mock(GlobalApplicationConfigurationRepository.class);
+        branchConfigRepo = mock(BranchConfigurationOverridesRepository.class);
+        when(globalConfigRepo.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(branchConfigRepo.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        appSettingsUtil = new AppSettingsUtil();
+        ReflectionTestUtils.setField(appSettingsUtil, "globalConfigRepo", globalConfigRepo);
+        ReflectionTestUtils.setField(appSettingsUtil, "branchConfigRepo", branchConfigRepo);
+    }
+
+    private void load(GlobalApplicationConfiguration global, BranchConfigurationOverrides... overrides) {
+        when(globalConfigRepo.findAll()).thenReturn(global != null ? List.of(global) : List.of());
+        when(branchConfigRepo.findAll()).thenReturn(List.of(overrides));
+        appSettingsUtil.refresh();
+    }
+
+    @Test
+    void overridesWinOverGlobalDefaults() {
+        load(global(20, 5, 10), override(1, 10, 45, null, 3));
+
+        EffectiveBranchConfig config = appSettingsUtil.getEffectiveConfig(10L);
+
+        assertThat(config.slotDurationMins()).isEqualTo(45);
+        assertThat(config.maxAppointmentsPerSlot()).isEqualTo(3);
+        // Unset on the branch
+        assertThat(config.queueThresholdLow()).isEqualTo(5);
+        assertThat(config.queueThresholdModerate()).isEqualTo(10);
+        // Only set globally
+        assertThat(config.bookingWindowDays()).isEqualTo(14);
+        assertThat(config.minBookingNoticeHours()).isEqualTo(2);
+    }
+
+    @Test
+    void branchesWithoutAnOverrideGetTheGlobalDefaults() {
+        load(global(20, 5, 10), override(1, 10, 45, 2, 3));
+
+        EffectiveBranchConfig config = appSettingsUtil.getEffectiveConfig(11L);
+
+        assertThat(config).isEqualTo(new EffectiveBranchConfig(20, 5, 10, null, 14, 2));
+        assertThat(appSettingsUtil.getEffectiveConfig((Long) null)).isEqualTo(config);
+        assertThat(appSettingsUtil.getEffectiveConfig(LookupUtil.NO_ID)).isEqualTo(config);
+    }
+
+    @Test
+    void slotDurationFallsBackWhenNeitherSetsAUsableValue() {
+        load(null, override(1, 10, null, 4, null), override(2, 11, 0, null, null));
+
+        assertThat(appSettingsUtil.getSlotDurationMins(10L)).isEqualTo(AppSettingsUtil.FALLBACK_SLOT_DURATION_MINS);
+        assertThat(appSettingsUtil.getSlotDurationMins(11L)).isEqualTo(AppSettingsUtil.FALLBACK_SLOT_DURATION_MINS);
+        assertThat(appSettingsUtil.getSlotDurationMins(12L)).isEqualTo(AppSettingsUtil.FALLBACK_SLOT_DURATION_MINS);
+        assertThat(appSettingsUtil.getQueueThresholdLow(10L)).isEqualTo(4);
+        assertThat(appSettingsUtil.getQueueThresholdModerate(10L)).isNull();
+    }
+
+    @Test
+    void savingAnOverrideRebuildsTheSnapshot() {
+        load(global(20, 5, 10), override(1, 10, 45, null, 3));
+
+        BranchConfigurationOverrides saved = appSettingsUtil.saveOrUpdateBranchConfigOverride(
+                override(99, 10, 15, 7, null));
+        appSettingsUtil.saveOrUpdateBranchConfigOverride(override(2, 11, null, null, 4));
+
+        // Updated in place, keeping the existing row's id
+        assertThat(saved.getId()).isEqualTo(1L);
+        assertThat(appSettingsUtil.getEffectiveConfig(10L))
+                .isEqualTo(new EffectiveBranchConfig(15, 7, 10, null, 14, 2));
+        assertThat(appSettingsUtil.getEffectiveConfig(11L))
+                .isEqualTo(new EffectiveBranchConfig(20, 5, 10, 4, 14, 2));
+        assertThat(appSettingsUtil.getBranchConfigOverrides()).extracting(BranchConfigurationOverrides::getBranchId)
+                .containsExactly(10L, 11L);
+    }
+
+    @Test
+    void updatingTheGlobalConfigRebuildsEveryBranch() {
+        load(global(20, 5, 10), override(1, 10, 45, null, 3));
+
+        appSettingsUtil.updateGlobalConfig(global(25, 6, 12));
+
+        assertThat(appSettingsUtil.getEffectiveConfig(10L))
+                .isEqualTo(new EffectiveBranchConfig(45, 6, 12, 3, 14, 2));
+        assertThat(appSettingsUtil.getEffectiveConfig(11L))
+                .isEqualTo(new EffectiveBranchConfig(25, 6, 12, null, 14, 2));
+    }
+
+    @Test
+    void firstOverrideOfABranchWinsAndStaysFirstWhenSaved() {
+        load(global(20, 5, 10), override(1, 10, 45, null, 3), override(2, 10, 60, null, 8));
+
+        assertThat(appSettingsUtil.getBranchConfigOverrideByBranchId(10L).getId()).isEqualTo(1L);
+        assertThat(appSettingsUtil.getSlotDurationMins(10L)).isEqualTo(45);
+
+        appSettingsUtil.saveOrUpdateBranchConfigOverride(override(99, 10, 15, null, 2));
+
+        // The saved override replaces the first one rather than landing behind
+        // the duplicate, which would then win
+        assertThat(appSettingsUtil.getBranchConfigOverrideByBranchId(10L).getId()).isEqualTo(1L);
+        assertThat(appSettingsUtil.getSlotDurationMins(10L)).isEqualTo(15);
+        assertThat(appSettingsUtil.getMaxAppointmentsPerSlot(10L)).isEqualTo(2);
+        assertThat(appSettingsUtil.getBranchConfigOverrides()).extracting(BranchConfigurationOverrides::getId)
+                .containsExactly(1L, 2L);
+    }
+}
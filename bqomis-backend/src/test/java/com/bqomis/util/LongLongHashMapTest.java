@@ -0,0 +1,76 @@
+package com.bqomis.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+class LongLongHashMapTest {
+
+    @Test
+    void returnsStoredValuesAndTheMissingValueOtherwise() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        map.put(7, 70);
+        map.put(-3, 30);
+
+        assertThat(map.get(7, -1)).isEqualTo(70);
+        assertThat(map.get(-3, -1)).isEqualTo(30);
+        assertThat(map.get(8, -1)).isEqualTo(-1);
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    @Test
+    void putReplacesAnExistingValue() {
+        LongLongHashMap map = new LongLongHashMap(2);
+        map.put(5, 1);
+        map.put(5, 2);
+
+        assertThat(map.get(5, -1)).isEqualTo(2);
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    void keyZeroIsAnOrdinaryKey() {
+        LongLongHashMap map = new LongLongHashMap(2);
+        assertThat(map.get(0, -1)).isEqualTo(-1);
+
+        map.put(0, 42);
+        map.put(0, 43);
+
+        assertThat(map.get(0, -1)).isEqualTo(43);
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    // Sequential ids and packed (branchId, serviceId) keys that differ only in
+    // the high bits must not collide into each other's values
+    @Test
+    void holdsAsManyKeysAsItWasSizedFor() {
+        int entries = 10_000;
+        LongLongHashMap ids = new LongLongHashMap(entries);
+        LongLongHashMap packed = new LongLongHashMap(entries);
+        for (long key = 1; key <= entries; key++) {
+            ids.put(key, key * 10);
+            packed.put(key << 32 | 7, key);
+        }
+
+        for (long key = 1; key <= entries; key++) {
+            assertThat(ids.get(key, -1)).isEqualTo(key * 10);
+            assertThat(packed.get(key << 32 | 7, -1)).isEqualTo(key);
+        }
+        assertThat(ids.get(entries + 1, -1)).isEqualTo(-1);
+        assertThat(packed.get(7, -1)).isEqualTo(-1);
+    }
+
+    @Test
+    void refusesToFillPastHalfItsCapacity() {
+        // The smallest table has 8 slots: four entries fit, a fifth would
+        // exceed the load factor
+        LongLongHashMap map = new LongLongHashMap(1);
+        for (long key = 1; key <= 4; key++) {
+            map.put(key, key);
+        }
+
+        assertThatThrownBy(() -> map.put(5, 5)).isInstanceOf(IllegalStateException.class);
+        assertThat(map.get(4, -1)).isEqualTo(4);
+    }
+}
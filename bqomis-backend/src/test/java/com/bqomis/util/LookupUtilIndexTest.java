@@ -0,0 +1,70 @@
+package com.bqomis.util;
+
+import static com.bqomis.util.LookupUtilTest.branch;
+import static com.bqomis.util.LookupUtilTest.branchService;
+import static com.bqomis.util.LookupUtilTest.district;
+import static com.bqomis.util.LookupUtilTest.service;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.bqomis.model.Branch;
+
+class LookupUtilIndexTest {
+
+    private LookupUtil lookupUtil;
+
+    @BeforeEach
+    void load() {
+        lookupUtil = new LookupUtil();
+        lookupUtil.load(
+                List.of(district(1, "Gasabo", "Kigali"), district(2, "Kicukiro", "Kigali"),
+                        district(3, "Huye", "South")),
+                List.of(branch(10, "Remera", "Gasabo"), branch(11, "Kimironko", "Gasabo"),
+                        branch(12, "Huye Town", "Huye")),
+                List.of(service(20, "Deposit"), service(21, "Loans")),
+                List.of(branchService(100, 10, 20), branchService(101, 10, 21), branchService(102, 11, 20),
+                        branchService(103, 12, 21)));
+    }
+
+    @Test
+    void districtLookupsIgnoreCase() {
+        assertThat(lookupUtil.findBranchesByDistrictName("gasabo")).extracting(Branch::getId)
+                .containsExactlyInAnyOrder(10L, 11L);
+        assertThat(lookupUtil.getBranchServiceIdsByDistrict("GASABO")).containsExactlyInAnyOrder(100L, 101L, 102L);
+        assertThat(lookupUtil.getBranchServiceIdsByDistrictAndService("Gasabo", 20L))
+                .containsExactlyInAnyOrder(100L, 102L);
+        assertThat(lookupUtil.getBranchServiceIdsByDistrict("Nowhere")).isEmpty();
+    }
+
+    @Test
+    void serviceAndProvinceIndexes() {
+        assertThat(lookupUtil.getBranchServiceIdsByServiceId(21L)).containsExactlyInAnyOrder(101L, 103L);
+        assertThat(lookupUtil.getDistrictsByProvince("Kigali")).containsExactly("Gasabo", "Kicukiro");
+        assertThat(lookupUtil.getProvinces()).containsExactly("Kigali", "South");
+        assertThat(lookupUtil.getProvinceByDistrict("Huye")).isEqualTo("South");
+    }
+
+    @Test
+    void indexListsAreSharedRatherThanRebuiltPerCall() {
+        assertThat(lookupUtil.getBranchServiceIdsByDistrict("Gasabo"))
+                .isSameAs(lookupUtil.getBranchServiceIdsByDistrict("gasabo"));
+        assertThat(lookupUtil.getBranchServiceIdsByServiceId(20L))
+                .isSameAs(lookupUtil.getBranchServiceIdsByServiceId(20L));
+    }
+
+    @Test
+    void indexesFollowIncrementalChanges() {
+        // Kimironko moves to Kicukiro and gets a new service
+        lookupUtil.updateBranch(branch(11, "Kimironko", "Kicukiro"));
+        lookupUtil.updateBranchService(branchService(104, 11, 21));
+
+        assertThat(lookupUtil.getBranchServiceIdsByDistrict("Gasabo")).containsExactlyInAnyOrder(100L, 101L);
+        assertThat(lookupUtil.getBranchServiceIdsByDistrict("Kicukiro")).containsExactlyInAnyOrder(102L, 104L);
+        assertThat(lookupUtil.getBranchServiceIdsByServiceId(21L)).containsExactlyInAnyOrder(101L, 103L, 104L);
+        assertThat(lookupUtil.getBranchServiceId(11, 21)).isEqualTo(104L);
+    }
+}
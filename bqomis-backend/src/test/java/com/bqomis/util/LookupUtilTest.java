@@ -0,0 +1,137 @@
+package com.bqomis.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.bqomis.model.Branch;
+import com.bqomis.model.BranchService;
+import com.bqomis.model.District;
+import com.bqomis.model.Service;
+
+class LookupUtilTest {
+
+    private LookupUtil lookupUtil;
+
+    static District district(long id, String name, String province) {
+        District district = new District();
+        district.setId(id);
+        district.setName(name);
+        district.setProvince(province);
+        return district;
+    }
+
+    static Branch branch(long id, String name, String district) {
+        Branch branch = new Branch();
+        branch.setId(id);
+        branch.setName(name);
+        branch.setDistrict(district);
+        return branch;
+    }
+
+    static Service service(long id, String name) {
+        Service service = new Service();
+        service.setId(id);
+        service.setName(name);
+        return service;
+    }
+
+    static BranchService branchService(long id, long branchId, long serviceId) {
+        BranchService branchService = new BranchService();
+        branchService.setId(id);
+        branchService.setBranchId(branchId);
+        branchService.setServiceId(serviceId);
+        return branchService;
+    }
+
+    @BeforeEach
+    void load() {
+        lookupUtil = new LookupUtil();
+        lookupUtil.load(
+                List.of(district(1, "Gasabo", "Kigali"), district(2, "Huye", "South")),
+                List.of(branch(10, "Remera", "Gasabo"), branch(11, "Huye Town", "Huye")),
+                List.of(service(20, "Deposit"), service(21, "Loans")),
+                List.of(branchService(100, 10, 20), branchService(101, 10, 21), branchService(102, 11, 20)));
+    }
+
+    @Test
+    void everyChangePublishesANewVersion() {
+        long version = lookupUtil.getVersion();
+
+        lookupUtil.updateBranch(branch(12, "Kimironko", "Gasabo"));
+        lookupUtil.removeBranchService(102L);
+
+        assertThat(lookupUtil.getVersion()).isEqualTo(version + 2);
+        assertThat(lookupUtil.getBranchById(12L).getName()).isEqualTo("Kimironko");
+        assertThat(lookupUtil.getBranchIdByBranchServiceId(102)).isEqualTo(LookupUtil.NO_ID);
+    }
+
+    @Test
+    void removingABranchDropsItsBranchServices() {
+        lookupUtil.removeBranchById(10L);
+
+        assertThat(lookupUtil.getBranchById(10L)).isNull();
+        assertThat(lookupUtil.getBranchServiceIdsByBranchId(10L)).isEmpty();
+        assertThat(lookupUtil.getBranchServiceId(10, 20)).isEqualTo(LookupUtil.NO_ID);
+        assertThat(lookupUtil.getBranchServiceLabel(100)).isNull();
+        // Other branches are untouched
+        assertThat(lookupUtil.getBranchServiceIdsByBranchId(11L)).containsExactly(102L);
+    }
+
+    @Test
+    void removingADistrictAndAServiceInvalidatesTheirEntries() {
+        lookupUtil.removeDistrict(2L);
+        lookupUtil.removeService(21L);
+
+        assertThat(lookupUtil.getAllDistrictStrings()).containsExactly("Gasabo");
+        assertThat(lookupUtil.getServiceById(21L)).isNull();
+        assertThat(lookupUtil.getBranchServiceIdsByBranchId(10L)).containsExactly(100L);
+    }
+
+    @Test
+    void sharedListsCannotBeModified() {
+        List<Long> ids = lookupUtil.getBranchServiceIdsByBranchId(10L);
+
+        assertThatThrownBy(() -> ids.add(999L)).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    // Readers racing a writer only ever see one whole snapshot: the label of a
+    // branch service always names the branch it points at
+    @Test
+    void readersNeverSeeAHalfAppliedChange() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    BranchServiceLabel label = lookupUtil.getBranchServiceLabel(102);
+                    boolean consistent = label != null
+                            && ((label.branchId() == 10 && "Remera".equals(label.branchName()))
+                                    || (label.branchId() == 11 && "Huye Town".equals(label.branchName())));
+                    if (!consistent) {
+                        failure.compareAndSet(null, String.valueOf(label));
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (int i = 0; i < 2_000; i++) {
+            lookupUtil.updateBranchService(branchService(102, i % 2 == 0 ? 10 : 11, 20));
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertThat(failure.get()).isNull();
+    }
+}
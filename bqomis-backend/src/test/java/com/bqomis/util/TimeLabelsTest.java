@@ -0,0 +1,30 @@
+package com.bqomis.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+class TimeLabelsTest {
+
+    @Test
+    void labelsMatchJavaTimeFormatting() {
+        for (int minute = 0; minute < 24 * 60; minute += 7) {
+            LocalTime time = LocalTime.of(minute / 60, minute % 60);
+            assertThat(TimeLabels.minuteLabel(minute)).isEqualTo(time.toString());
+            assertThat(TimeLabels.timeLabel(time)).isEqualTo(time.toString());
+        }
+        assertThat(TimeLabels.timeLabel(LocalTime.of(9, 30, 15))).isEqualTo("09:30:15");
+    }
+
+    @Test
+    void datesInsideTheWindowAreCachedAndOthersStillFormatted() {
+        LocalDate today = LocalDate.now();
+
+        assertThat(TimeLabels.dateLabel(today)).isEqualTo(today.toString()).isSameAs(TimeLabels.dateLabel(today));
+        assertThat(TimeLabels.dateLabel(LocalDate.of(1900, 1, 1))).isEqualTo("1900-01-01");
+        assertThat(TimeLabels.dateLabel(LocalDate.of(2999, 12, 31))).isEqualTo("2999-12-31");
+    }
+}
@@ -1,3 +1,5 @@
+import { fetchAllPages } from './paging';
+
 const API_BASE_URL = import.meta.env.VITE_API_BASE_URL;
 
 const handleResponse = async (response) => {
@@ -81,11 +83,8 @@ export const getAppointmentsByUserId = async (userId, token) => {
   const headers = { 'Content-Type': 'application/json' };
   if (token) { headers['Authorization'] = `Bearer ${token}`; }
 
-  const response = await fetch(`${API_BASE_URL}/appointments/user/${userId}`, {
-    method: 'GET',
-    headers: headers,
-  });
-  return handleResponse(response); // Returns array of appointments for this user
+  // Paged on the backend; follow the cursor to get them all
+  return fetchAllPages(`${API_BASE_URL}/appointments/user/${userId}`, headers); // Returns array of appointments for this user
 };
 
 // GET /api/appointments with filters
@@ -1,3 +1,5 @@
+import { fetchAllPages } from './paging';
+
 const API_BASE_URL = import.meta.env.VITE_API_BASE_URL;
 
 const handleResponse = async (response) => {
@@ -13,8 +15,7 @@ const handleResponse = async (response) => {
 export const getAllBranchServiceRelationships = async (token) => {
   const headers = { 'Content-Type': 'application/json' };
   if (token) { headers['Authorization'] = `Bearer ${token}`; }
-  const response = await fetch(`${API_BASE_URL}/branch-services`, { /* ... */ });
-  return handleResponse(response);
+  return fetchAllPages(`${API_BASE_URL}/branch-services`, headers);
 };
 
 // GET relationships for a specific branch
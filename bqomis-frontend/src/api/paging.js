@@ -0,0 +1,27 @@
+// List endpoints return at most one page per request (Paging.MAX_SIZE on the
+// backend) and set X-Next-After-Id while more rows remain.
+const PAGE_SIZE = 500;
+const NEXT_AFTER_ID_HEADER = 'X-Next-After-Id';
+
+// GETs every page of a list endpoint by following the afterId cursor and
+// returns the rows as one array, ordered by id
+export const fetchAllPages = async (url, headers) => {
+  const rows = [];
+  let afterId = null;
+  do {
+    const pageUrl = new URL(url, window.location.origin);
+    pageUrl.searchParams.set('size', PAGE_SIZE);
+    if (afterId) { pageUrl.searchParams.set('afterId', afterId); }
+    const response = await fetch(pageUrl, {
+      method: 'GET',
+      headers: headers,
+    });
+    if (!response.ok) {
+      const errorData = await response.json().catch(() => ({ message: response.statusText }));
+      throw new Error(errorData.message || `HTTP error! status: ${response.status}`);
+    }
+    rows.push(...(await response.json()));
+    afterId = response.headers.get(NEXT_AFTER_ID_HEADER);
+  } while (afterId);
+  return rows;
+};
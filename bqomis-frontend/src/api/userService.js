@@ -134,11 +134,12 @@ export const registerClientUser = async (userData) => {
   return handleResponse(response); // Or specific handling for registration success/failure
 };
 
-// GET /api/users?role=TESTER
+// GET /api/users?roles=TESTER
 export const getTestUsers = async (token) => {
   const headers = { 'Content-Type': 'application/json' };
   if (token) { headers['Authorization'] = `Bearer ${token}`; }
-  const response = await fetch(`${API_BASE_URL}/users?role=TESTER`, { // Using your specified endpoint
+  // Filtered by role on the backend; the plain /users list is paged
+  const response = await fetch(`${API_BASE_URL}/users?roles=TESTER`, {
     method: 'GET',
     headers: headers,
   });
@@ -0,0 +1,133 @@
+#!/bin/bash
+
+# BQOMIS Load Test: platform vs virtual threads
+# Starts the backend jar twice against the same database, once with the default
+# profile and once with the virtual profile, runs the same load against each and
+# prints throughput, latency and pool metrics side by side.
+#
+# Needs a Java 21+ runtime, hey (https://github.com/rakyll/hey), curl, a built
+# jar (cd bqomis-backend && ./mvnw package -DskipTests) and the settings the
+# backend normally reads (DB_USERNAME, DB_PASSWORD, SPRING_DATASOURCE_URL if
+# the database is not on localhost:5432).
+#
+# Usage: ./load-test.sh
+#   BRANCH_ID, BRANCH_SERVICE_ID, USER_ID  ids that exist in the database (default 1)
+#   DURATION (default 60s), CONCURRENCY (default 500), PORT (default 8080)
+#   JAR (default bqomis-backend/target/*.jar), OUT (default load-test-results)
+
+set -e
+
+BRANCH_ID=${BRANCH_ID:-1}
+BRANCH_SERVICE_ID=${BRANCH_SERVICE_ID:-1}
+USER_ID=${USER_ID:-1}
+DURATION=${DURATION:-60s}
+CONCURRENCY=${CONCURRENCY:-500}
+PORT=${PORT:-8080}
+JAR=${JAR:-$(ls bqomis-backend/target/*.jar 2>/dev/null | grep -v '\.original$' | head -n 1)}
+OUT=${OUT:-load-test-results}
+BASE=http://localhost:$PORT
+
+echo "🚀 BQOMIS Load Test: platform vs virtual threads"
+echo "================================================"
+
+for cmd in java hey curl; do
+    if ! command -v $cmd > /dev/null 2>&1; then
+        echo "❌ $cmd not found on PATH"
+        exit 1
+    fi
+done
+
+if [ -z "$JAR" ] || [ ! -f "$JAR" ]; then
+    echo "❌ Backend jar not found. Build it with: cd bqomis-backend && ./mvnw package -DskipTests"
+    exit 1
+fi
+
+JAVA_VERSION=$(java -XshowSettings:properties -version 2>&1 | awk -F' = ' '/java.specification.version/ {print $2}')
+if [ "${JAVA_VERSION%%.*}" -lt 21 ]; then
+    echo "❌ Java $JAVA_VERSION found; the virtual profile needs Java 21 or later"
+    exit 1
+fi
+
+if curl -s -o /dev/null "$BASE/actuator/health"; then
+    echo "❌ Something is already listening on port $PORT"
+    exit 1
+fi
+
+mkdir -p "$OUT"
+
+BACKEND_PID=
+stop_backend() {
+    if [ -n "$BACKEND_PID" ]; then
+        kill "$BACKEND_PID" 2>/dev/null || true
+        wait "$BACKEND_PID" 2>/dev/null || true
+        BACKEND_PID=
+    fi
+}
+trap stop_backend EXIT
+
+# run_mode <name> <days ahead> [profile]
+run_mode() {
+    local name=$1
+    local days=$2
+    local profile=$3
+
+    # Each mode books its own free day; expect 409s once its slot fills
+    local booking_date=$(date -d "+$days days" +%F 2>/dev/null || date -v+${days}d +%F)
+    cat > "$OUT/$name-booking.json" <<EOF
+{"userId": $USER_ID, "branchServiceId": $BRANCH_SERVICE_ID, "date": "$booking_date", "time": "09:00", "status": "SCHEDULED"}
+EOF
+
+    echo "🔧 Starting backend ($name threads)..."
+    java -jar "$JAR" --server.port="$PORT" ${profile:+--spring.profiles.active=$profile} \
+        > "$OUT/$name-backend.log" 2>&1 &
+    BACKEND_PID=$!
+
+    echo "⏳ Waiting for the backend to be healthy..."
+    for i in $(seq 1 60); do
+        if curl -sf "$BASE/actuator/health" | grep -q '"UP"'; then
+            break
+        fi
+        if ! kill -0 "$BACKEND_PID" 2>/dev/null || [ "$i" -eq 60 ]; then
+            echo "❌ Backend did not start; see $OUT/$name-backend.log"
+            exit 1
+        fi
+        sleep 2
+    done
+
+    # Today view first: the backend has just started, so its day-view cache is
+    # empty and both modes read from the database
+    echo "📊 Today view for branch $BRANCH_ID ($DURATION, $CONCURRENCY connections)..."
+    hey -z "$DURATION" -c "$CONCURRENCY" "$BASE/api/appointments/today/branch/$BRANCH_ID" \
+        > "$OUT/$name-today.txt"
+
+    echo "📊 Booking burst on branch service $BRANCH_SERVICE_ID ($DURATION, $CONCURRENCY connections)..."
+    hey -z "$DURATION" -c "$CONCURRENCY" -m POST -T application/json -D "$OUT/$name-booking.json" \
+        "$BASE/api/appointments" > "$OUT/$name-booking.txt"
+
+    curl -s "$BASE/actuator/prometheus" > "$OUT/$name-metrics.txt"
+    stop_backend
+    echo "✅ $name run finished"
+}
+
+# summary <name>
+summary() {
+    local name=$1
+    echo ""
+    echo "── $name threads ──"
+    for run in today booking; do
+        echo "  $run:"
+        grep -E 'Requests/sec|99% in' "$OUT/$name-$run.txt" | sed 's/^ */    /'
+        sed -n '/Status code distribution/,/^$/p' "$OUT/$name-$run.txt" | sed 1d | sed 's/^ */    /'
+    done
+    echo "  metrics:"
+    grep -E '^(hikaricp_connections_pending|hikaricp_connections_max|bqomis_db_permits_wait_seconds_max|bqomis_db_permits_rejected_total|jvm_threads_live_threads|jvm_threads_peak_threads)[ {]' \
+        "$OUT/$name-metrics.txt" | sed 's/^/    /' || true
+}
+
+run_mode platform 60
+run_mode virtual 61 virtual
+
+summary platform
+summary virtual
+echo ""
+echo "Full output is in $OUT/"